@@ -25,12 +25,25 @@
 package com.yosanai.java.aws.console;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.configuration.Configuration;
 
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.InstanceType;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkAction;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkItem;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkListener;
+import com.yosanai.java.aws.console.ec2.EC2RateLimiter;
+import com.yosanai.java.aws.console.ec2.InstanceQuery;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener;
+import com.yosanai.java.aws.console.inventory.InstanceInventory;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
 
 /**
  * @author Saravana Perumal Shanmugam
@@ -47,8 +60,84 @@ public interface AWSConnectionProvider {
      */
     public static final String AWS_KEY = "aws.key";
 
+    /**
+     * How long, in seconds, described instances are served from memory
+     */
+    public static final String AWS_INVENTORY_TTL = "aws.inventory.ttl";
+
+    /**
+     * Calls per second allowed for each describe action
+     */
+    public static final String AWS_RATE_DESCRIBE = "aws.rate.describe";
+
+    /**
+     * Calls per second allowed for each mutating action
+     */
+    public static final String AWS_RATE_MUTATE = "aws.rate.mutate";
+
+    /**
+     * Comma separated regions to describe, the first one is the default
+     * region used to launch instances
+     */
+    public static final String AWS_REGIONS = "aws.regions";
+
+    /**
+     * Name of the credential profile, clients are pooled per profile so
+     * switching back to a profile used before reuses its clients
+     */
+    public static final String AWS_PROFILE = "aws.profile";
+
+    /**
+     * Path of the file the last known inventory is saved to, defaults to a
+     * file per profile in the user's home directory
+     */
+    public static final String AWS_SNAPSHOT = "aws.snapshot";
+
+    /**
+     * Whether the instances are refreshed on their own, true by default
+     */
+    public static final String AWS_REFRESH_AUTO = "aws.refresh.auto";
+
+    /**
+     * Seconds between refreshes while instances are changing state
+     */
+    public static final String AWS_REFRESH_FAST = "aws.refresh.fast";
+
+    /**
+     * Seconds between refreshes while no instance is changing state
+     */
+    public static final String AWS_REFRESH_SLOW = "aws.refresh.slow";
+
+    /**
+     * EC2 calls per minute the console may make before refreshing on its own
+     * is held back, to be lowered when several consoles share an account
+     */
+    public static final String AWS_REFRESH_BUDGET = "aws.refresh.budget";
+
+    /**
+     * Calls of a bulk action in flight at once
+     */
+    public static final String AWS_BULK_PARALLELISM = "aws.bulk.parallelism";
+
+    /**
+     * Instances per call of a bulk action, at most
+     * {@link BulkActionPipeline#MAX_CHUNK_SIZE}
+     */
+    public static final String AWS_BULK_CHUNK = "aws.bulk.chunk";
+
     public AmazonEC2 getConnection();
 
+    /**
+     * @param region
+     * @return the client of the region, null if the region is not configured
+     */
+    public AmazonEC2 getConnection(String region);
+
+    /**
+     * @return the configured regions, default region first
+     */
+    public List<String> getRegions();
+
     public void updateEC2Config(boolean reuseExisting, Configuration config) throws Exception;
 
     public void startInstances(String... instanceIds) throws Exception;
@@ -61,6 +150,82 @@ public interface AWSConnectionProvider {
 
     public boolean getApiTermination(String instanceId) throws Exception;
 
+    /**
+     * Runs the action on the instances in concurrent chunks, see
+     * {@link BulkActionPipeline}. Items that already succeeded are skipped, so
+     * passing the items of an earlier run again retries only the others.
+     * 
+     * @param action
+     * @param items
+     * @param listener
+     *            notified as each chunk is done, may be null
+     * @return the items with their outcome
+     * @throws Exception
+     */
+    public List<BulkItem> runBulkAction(BulkAction action, List<BulkItem> items, BulkListener listener)
+            throws Exception;
+
+    /**
+     * Resolves the API termination flag of the given instances in the
+     * background, notifying the listener as each one becomes available.
+     * Results are cached until {@link #setApiTermination(boolean, String...)}
+     * is called for the instance.
+     * 
+     * @param instanceIds
+     * @param listener
+     */
+    public void prefetchApiTermination(Collection<String> instanceIds, ApiTerminationListener listener);
+
+    /**
+     * @param refresh
+     *            true to bypass the inventory and describe the instances again
+     * @param instanceIds
+     *            the instances to describe, all of them if empty
+     * @return the instances
+     * @throws Exception
+     */
+    public List<InstanceRecord> getInstanceRecords(boolean refresh, String... instanceIds) throws Exception;
+
+    /**
+     * Describes the instances matching the query, letting EC2 do as much of
+     * the filtering as it can. Served from the inventory when it is complete
+     * and the query can be evaluated in memory.
+     * 
+     * @param query
+     * @return the matching instances
+     * @throws Exception
+     */
+    public List<InstanceRecord> getInstanceRecords(InstanceQuery query) throws Exception;
+
+    /**
+     * Describes every instance of the account a page at a time, feeding the
+     * inventory as pages arrive
+     * 
+     * @param pageSize
+     * @return the pages, each one is only fetched when asked for
+     */
+    public Iterator<List<InstanceRecord>> getInstancePages(int pageSize);
+
+    public InstanceInventory getInventory();
+
+    /**
+     * Reads the inventory saved by a previous session, the records are only
+     * meant to be shown until live ones replace them
+     * 
+     * @param apiTermination
+     *            receives the saved API termination flags, may be null
+     * @return the last known instances, empty if none were saved
+     */
+    public List<InstanceRecord> getSnapshot(Map<String, Boolean> apiTermination);
+
+    public EC2RateLimiter getRateLimiter();
+
+    /**
+     * @return the waiter following the instances started, stopped or
+     *         terminated through this provider
+     */
+    public InstanceStateWaiter getStateWaiter();
+
     public String getInstanceDetails(String property, String separator, String... instanceIds) throws Exception;
 
     public Collection<String> getSecurityGroups() throws Exception;
@@ -70,4 +235,26 @@ public interface AWSConnectionProvider {
     public void launchInstance(String amiId, InstanceType instanceType, int instanceCount, String keyName,
             Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags) throws Exception;
 
+    /**
+     * Launches the instances in concurrent chunks, see {@link LaunchPipeline}
+     * 
+     * @param amiId
+     * @param instanceType
+     * @param instanceCount
+     * @param keyName
+     * @param securityGroups
+     * @param terminateViaAPI
+     * @param tags
+     * @param clientToken
+     *            identifies the launch, calling again with the same token
+     *            only launches the chunks that failed
+     * @param listener
+     *            notified as each chunk is done, may be null
+     * @return the chunks of the launch
+     * @throws Exception
+     */
+    public List<LaunchChunk> launchInstances(String amiId, InstanceType instanceType, int instanceCount,
+            String keyName, Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags,
+            String clientToken, LaunchListener listener) throws Exception;
+
 }
@@ -135,6 +135,9 @@ public class AWSConsole extends javax.swing.JFrame {
             try {
                 config.save();
                 awsConnectionProvider.updateEC2Config(false, config);
+                if (null != console) {
+                    console.updateConfig(config);
+                }
             } catch (Exception ex) {
                 Logger.getLogger(AWSConsole.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -166,6 +169,7 @@ public class AWSConsole extends javax.swing.JFrame {
             console = new MainAWSPanel();
             console.setParentFrame(this);
             console.setAwsConnectionProvider(awsConnectionProvider);
+            console.updateConfig(config);
             getContentPane().add(console, BorderLayout.CENTER);
             invalidate();
             validate();
@@ -0,0 +1,99 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.amazonaws.services.ec2.model.InstanceType;
+import com.yosanai.java.aws.console.ec2.InstanceQuery;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+
+/**
+ * Non blocking variants of the {@link AWSConnectionProvider} calls. Each call
+ * runs on the configured executor and returns a future that can be cancelled,
+ * calls still running after the timeout are cancelled. The callback, which
+ * may be null, is notified once the call finishes either way.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public interface AsyncAWSConnectionProvider extends AWSConnectionProvider {
+
+    /**
+     * How long, in seconds, an asynchronous call may run before it is
+     * cancelled, 0 to never time out
+     */
+    public static final String AWS_ASYNC_TIMEOUT = "aws.async.timeout";
+
+    public ExecutorService getExecutorService();
+
+    public void setExecutorService(ExecutorService executorService);
+
+    public long getAsyncTimeout();
+
+    /**
+     * @param asyncTimeout
+     *            in milliseconds, 0 to never time out
+     */
+    public void setAsyncTimeout(long asyncTimeout);
+
+    public Future<Void> startInstancesAsync(AsyncCallback<Void> callback, String... instanceIds);
+
+    public Future<Void> stopInstancesAsync(AsyncCallback<Void> callback, String... instanceIds);
+
+    public Future<Void> terminateInstancesAsync(AsyncCallback<Void> callback, String... instanceIds);
+
+    public Future<Void> setApiTerminationAsync(boolean enable, AsyncCallback<Void> callback, String... instanceIds);
+
+    public Future<Boolean> getApiTerminationAsync(String instanceId, AsyncCallback<Boolean> callback);
+
+    public Future<List<InstanceRecord>> getInstanceRecordsAsync(boolean refresh,
+            AsyncCallback<List<InstanceRecord>> callback, String... instanceIds);
+
+    public Future<List<InstanceRecord>> getInstanceRecordsAsync(InstanceQuery query,
+            AsyncCallback<List<InstanceRecord>> callback);
+
+    public Future<String> getInstanceDetailsAsync(String property, String separator, AsyncCallback<String> callback,
+            String... instanceIds);
+
+    public Future<Collection<String>> getSecurityGroupsAsync(AsyncCallback<Collection<String>> callback);
+
+    public Future<Collection<String>> getKeyPairNamesAsync(AsyncCallback<Collection<String>> callback);
+
+    public Future<Void> launchInstanceAsync(String amiId, InstanceType instanceType, int instanceCount,
+            String keyName, Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags,
+            AsyncCallback<Void> callback);
+
+    public Future<List<LaunchChunk>> launchInstancesAsync(String amiId, InstanceType instanceType, int instanceCount,
+            String keyName, Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags,
+            String clientToken, LaunchListener listener, AsyncCallback<List<LaunchChunk>> callback);
+
+}
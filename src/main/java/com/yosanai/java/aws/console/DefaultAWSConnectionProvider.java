@@ -24,46 +24,84 @@
  */
 package com.yosanai.java.aws.console;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.lang.StringUtils;
-import org.springframework.beans.BeanWrapper;
-import org.springframework.beans.BeanWrapperImpl;
 
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.ec2.AmazonEC2;
-import com.amazonaws.services.ec2.AmazonEC2Client;
-import com.amazonaws.services.ec2.model.CreateTagsRequest;
 import com.amazonaws.services.ec2.model.DescribeInstanceAttributeRequest;
 import com.amazonaws.services.ec2.model.DescribeInstanceAttributeResult;
-import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
-import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.DescribeKeyPairsResult;
 import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
+import com.amazonaws.services.ec2.model.Filter;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.InstanceType;
 import com.amazonaws.services.ec2.model.KeyPairInfo;
-import com.amazonaws.services.ec2.model.ModifyInstanceAttributeRequest;
-import com.amazonaws.services.ec2.model.Reservation;
 import com.amazonaws.services.ec2.model.RunInstancesRequest;
-import com.amazonaws.services.ec2.model.RunInstancesResult;
 import com.amazonaws.services.ec2.model.SecurityGroup;
-import com.amazonaws.services.ec2.model.StartInstancesRequest;
-import com.amazonaws.services.ec2.model.StopInstancesRequest;
 import com.amazonaws.services.ec2.model.Tag;
-import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkAction;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkItem;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkListener;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.Status;
+import com.yosanai.java.aws.console.ec2.ClientPool;
+import com.yosanai.java.aws.console.ec2.ConnectionSet;
+import com.yosanai.java.aws.console.ec2.DescribeInstancesPager;
+import com.yosanai.java.aws.console.ec2.EC2RateLimiter;
+import com.yosanai.java.aws.console.ec2.InstanceQuery;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener;
+import com.yosanai.java.aws.console.ec2.ParallelPageIterator;
+import com.yosanai.java.aws.console.ec2.RequestCoalescer;
+import com.yosanai.java.aws.console.inventory.InstanceInventory;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+import com.yosanai.java.aws.console.inventory.InventoryStore;
+import com.yosanai.java.aws.console.inventory.PropertyAccessors;
+import com.yosanai.java.aws.console.inventory.PropertyAccessors.Accessor;
 
 /**
  * @author Saravana Perumal Shanmugam
  * 
  */
-public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
+public class DefaultAWSConnectionProvider implements AsyncAWSConnectionProvider {
 
     /**
      * 
@@ -95,70 +133,919 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
      */
     public static final String STATE_TERMINATED = "terminated";
 
-    protected AmazonEC2 amazonEC2;
+    /**
+     * 
+     */
+    public static final int DEFAULT_ATTRIBUTE_PARALLELISM = 8;
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_ASYNC_PARALLELISM = 4;
+
+    /**
+     * 
+     */
+    public static final long DEFAULT_ASYNC_TIMEOUT = 5 * 60 * 1000L;
+
+    /**
+     * 
+     */
+    public static final String DEFAULT_REGION = "us-east-1";
+
+    /**
+     * 
+     */
+    public static final String DEFAULT_PROFILE = "default";
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_LAUNCH_PARALLELISM = 4;
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_BULK_PARALLELISM = 4;
+
+    /**
+     * 
+     */
+    public static final String SNAPSHOT_PREFIX = ".yosanai-aws-inventory-";
+
+    protected final AtomicReference<ConnectionSet> connections = new AtomicReference<ConnectionSet>();
+
+    protected ClientPool clientPool = new ClientPool();
+
+    protected ExecutorService regionExecutor;
+
+    protected ExecutorService launchExecutor;
+
+    protected ExecutorService snapshotExecutor;
+
+    protected volatile InventoryStore inventoryStore;
+
+    protected final AtomicBoolean snapshotPending = new AtomicBoolean();
 
     protected Object lock = new Object();
 
+    protected int attributeParallelism = DEFAULT_ATTRIBUTE_PARALLELISM;
+
+    protected ExecutorService attributeExecutor;
+
+    protected int bulkParallelism = DEFAULT_BULK_PARALLELISM;
+
+    protected int bulkChunkSize = BulkActionPipeline.DEFAULT_CHUNK_SIZE;
+
+    protected ExecutorService bulkExecutor;
+
+    protected ExecutorService executorService;
+
+    protected ScheduledExecutorService timeoutScheduler;
+
+    protected volatile long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+
+    protected InstanceInventory inventory = new InstanceInventory();
+
+    protected EC2RateLimiter rateLimiter = new EC2RateLimiter();
+
+    protected RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+    protected InstanceStateWaiter stateWaiter = new InstanceStateWaiter(this);
+
+    protected ConcurrentHashMap<String, Boolean> apiTerminationCache = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * The instances per region in the snapshot, by id length, sizing the
+     * first load of the session
+     */
+    protected ConcurrentHashMap<String, int[]> snapshotCounts = new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * Orders lookups of the API termination flag against invalidations, so a
+     * lookup started before an invalidation never caches its older answer
+     */
+    protected final AtomicLong apiTerminationGeneration = new AtomicLong();
+
+    protected ConcurrentHashMap<String, Long> apiTerminationInvalidated = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * The lookups of the API termination flag running, the invalidations
+     * are only needed while there are some
+     */
+    protected final AtomicInteger apiTerminationLookups = new AtomicInteger();
+
+    protected volatile long apiTerminationCleared;
+
+    /**
+     * @return the attributeParallelism
+     */
+    public int getAttributeParallelism() {
+        return attributeParallelism;
+    }
+
+    /**
+     * @param attributeParallelism
+     *            the maximum number of DescribeInstanceAttribute calls in
+     *            flight at once, takes effect on the next prefetch
+     */
+    public void setAttributeParallelism(int attributeParallelism) {
+        synchronized (lock) {
+            this.attributeParallelism = Math.max(1, attributeParallelism);
+            if (null != attributeExecutor) {
+                attributeExecutor.shutdown();
+                attributeExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * @return the bulkParallelism
+     */
+    public int getBulkParallelism() {
+        return bulkParallelism;
+    }
+
+    /**
+     * @param bulkParallelism
+     *            the maximum number of calls of bulk actions in flight at
+     *            once, takes effect on the next bulk action
+     */
+    public void setBulkParallelism(int bulkParallelism) {
+        synchronized (lock) {
+            if (Math.max(1, bulkParallelism) != this.bulkParallelism) {
+                this.bulkParallelism = Math.max(1, bulkParallelism);
+                if (null != bulkExecutor) {
+                    bulkExecutor.shutdown();
+                    bulkExecutor = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the bulkChunkSize
+     */
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    /**
+     * @param bulkChunkSize
+     *            the most instances in one call of a bulk action
+     */
+    public void setBulkChunkSize(int bulkChunkSize) {
+        this.bulkChunkSize = Math.max(1, Math.min(BulkActionPipeline.MAX_CHUNK_SIZE, bulkChunkSize));
+    }
+
+    protected ExecutorService getBulkExecutor() {
+        ExecutorService ret = null;
+        synchronized (lock) {
+            if (null == bulkExecutor) {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(bulkParallelism, bulkParallelism, 60,
+                        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("aws-bulk"));
+                executor.allowCoreThreadTimeOut(true);
+                bulkExecutor = executor;
+            }
+            ret = bulkExecutor;
+        }
+        return ret;
+    }
+
+    protected ExecutorService getAttributeExecutor() {
+        ExecutorService ret = null;
+        synchronized (lock) {
+            if (null == attributeExecutor) {
+                attributeExecutor = Executors.newFixedThreadPool(attributeParallelism, new NamedThreadFactory(
+                        "aws-attribute"));
+            }
+            ret = attributeExecutor;
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getExecutorService
+     * ()
+     */
+    @Override
+    public ExecutorService getExecutorService() {
+        ExecutorService ret = null;
+        synchronized (lock) {
+            if (null == executorService) {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_ASYNC_PARALLELISM,
+                        DEFAULT_ASYNC_PARALLELISM, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new NamedThreadFactory("aws-async"));
+                executor.allowCoreThreadTimeOut(true);
+                executorService = executor;
+            }
+            ret = executorService;
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#setExecutorService
+     * (java.util.concurrent.ExecutorService)
+     */
+    @Override
+    public void setExecutorService(ExecutorService executorService) {
+        synchronized (lock) {
+            this.executorService = executorService;
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getAsyncTimeout()
+     */
+    @Override
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#setAsyncTimeout
+     * (long)
+     */
+    @Override
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = Math.max(0, asyncTimeout);
+    }
+
+    protected ExecutorService getLaunchExecutor() {
+        ExecutorService ret = null;
+        synchronized (lock) {
+            if (null == launchExecutor) {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_LAUNCH_PARALLELISM,
+                        DEFAULT_LAUNCH_PARALLELISM, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new NamedThreadFactory("aws-launch"));
+                executor.allowCoreThreadTimeOut(true);
+                launchExecutor = executor;
+            }
+            ret = launchExecutor;
+        }
+        return ret;
+    }
+
+    protected ExecutorService getSnapshotExecutor() {
+        ExecutorService ret = null;
+        synchronized (lock) {
+            if (null == snapshotExecutor) {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("aws-snapshot"));
+                executor.allowCoreThreadTimeOut(true);
+                snapshotExecutor = executor;
+            }
+            ret = snapshotExecutor;
+        }
+        return ret;
+    }
+
+    protected ExecutorService getRegionExecutor() {
+        ExecutorService ret = null;
+        synchronized (lock) {
+            if (null == regionExecutor) {
+                regionExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("aws-region"));
+            }
+            ret = regionExecutor;
+        }
+        return ret;
+    }
+
+    protected ScheduledExecutorService getTimeoutScheduler() {
+        ScheduledExecutorService ret = null;
+        synchronized (lock) {
+            if (null == timeoutScheduler) {
+                timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("aws-timeout"));
+            }
+            ret = timeoutScheduler;
+        }
+        return ret;
+    }
+
+    /**
+     * Runs the call on the executor, cancelling it once it runs past the
+     * timeout and notifying the callback when it is done. The timeout is
+     * cancelled and lets go of the call as soon as the call is done, so the
+     * scheduler does not keep finished calls and their results around.
+     * 
+     * @param callable
+     * @param callback
+     * @return the future of the call
+     */
+    protected <T> Future<T> submit(Callable<T> callable, final AsyncCallback<T> callback) {
+        final AtomicReference<Future<T>> timeoutTarget = new AtomicReference<Future<T>>();
+        final AtomicReference<ScheduledFuture<?>> timeoutTask = new AtomicReference<ScheduledFuture<?>>();
+        final FutureTask<T> ret = new FutureTask<T>(callable) {
+
+            @Override
+            protected void done() {
+                timeoutTarget.set(null);
+                ScheduledFuture<?> timeout = timeoutTask.getAndSet(null);
+                if (null != timeout) {
+                    timeout.cancel(false);
+                }
+                if (null != callback) {
+                    try {
+                        callback.completed(get());
+                    } catch (ExecutionException ex) {
+                        callback.failed(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+                    } catch (CancellationException ex) {
+                        callback.failed(ex);
+                    } catch (InterruptedException ex) {
+                        callback.failed(ex);
+                    }
+                }
+            }
+        };
+        timeoutTarget.set(ret);
+        getExecutorService().execute(ret);
+        long timeout = asyncTimeout;
+        if (0 < timeout && !ret.isDone()) {
+            ScheduledFuture<?> scheduled = getTimeoutScheduler().schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    Future<T> target = timeoutTarget.getAndSet(null);
+                    if (null != target) {
+                        target.cancel(true);
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            timeoutTask.set(scheduled);
+            if (ret.isDone() && timeoutTask.compareAndSet(scheduled, null)) {
+                scheduled.cancel(false);
+            }
+        }
+        return ret;
+    }
+
     /*
      * (non-Jsdoc)
      * 
      * @see com.yosanai.java.aws.console.AWSConnectionProvider#getConnection()
      */
-    @Override
-    public AmazonEC2 getConnection() {
-        AmazonEC2 ret = null;
-        synchronized (lock) {
-            ret = amazonEC2;
+    @Override
+    public AmazonEC2 getConnection() {
+        ConnectionSet current = connections.get();
+        return null == current ? null : current.getConnection();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getConnection(java
+     * .lang.String)
+     */
+    @Override
+    public AmazonEC2 getConnection(String region) {
+        ConnectionSet current = connections.get();
+        return null == current ? null : current.getConnection(region);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see com.yosanai.java.aws.console.AWSConnectionProvider#getRegions()
+     */
+    @Override
+    public List<String> getRegions() {
+        ConnectionSet current = connections.get();
+        return null == current ? new ArrayList<String>() : current.getRegions();
+    }
+
+    protected List<String> getRegions(Configuration config) {
+        List<String> ret = new ArrayList<String>();
+        for (String region : config.getStringArray(AWS_REGIONS)) {
+            if (StringUtils.isNotBlank(region) && !ret.contains(region.trim())) {
+                ret.add(region.trim());
+            }
+        }
+        if (ret.isEmpty()) {
+            ret.add(DEFAULT_REGION);
+        }
+        return ret;
+    }
+
+    /**
+     * @param instanceId
+     * @return the region the instance lives in, looking it up in every region
+     *         if the inventory has not seen it yet
+     * @throws Exception
+     */
+    protected String getRegion(String instanceId) throws Exception {
+        return getRegions(Collections.singletonList(instanceId)).get(instanceId);
+    }
+
+    /**
+     * @param instanceIds
+     * @return the region of every instance, describing the ones the inventory
+     *         has not seen yet in one call per region
+     * @throws Exception
+     */
+    protected Map<String, String> getRegions(Collection<String> instanceIds) throws Exception {
+        Map<String, String> ret = new HashMap<String, String>();
+        List<String> missing = new ArrayList<String>();
+        for (String instanceId : instanceIds) {
+            String region = inventory.getRegion(instanceId);
+            if (null == region) {
+                missing.add(instanceId);
+            } else {
+                ret.put(instanceId, region);
+            }
+        }
+        if (!missing.isEmpty()) {
+            if (1 < getRegions().size()) {
+                getInstanceRecords(false, missing.toArray(new String[missing.size()]));
+            }
+            ConnectionSet current = connections.get();
+            String defaultRegion = null == current ? DEFAULT_REGION : current.getDefaultRegion();
+            for (String instanceId : missing) {
+                String region = inventory.getRegion(instanceId);
+                ret.put(instanceId, null == region ? defaultRegion : region);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Runs one call per region in parallel and waits for all of them, so the
+     * whole takes about as long as the slowest region
+     * 
+     * @param calls
+     *            keyed by region
+     * @return the results keyed by region
+     * @throws Exception
+     *             the first failure, once every call is done
+     */
+    protected <T> Map<String, T> invokeAll(Map<String, Callable<T>> calls) throws Exception {
+        Map<String, T> ret = new LinkedHashMap<String, T>();
+        if (1 == calls.size()) {
+            Map.Entry<String, Callable<T>> entry = calls.entrySet().iterator().next();
+            ret.put(entry.getKey(), entry.getValue().call());
+        } else if (!calls.isEmpty()) {
+            Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+            try {
+                for (Map.Entry<String, Callable<T>> entry : calls.entrySet()) {
+                    futures.put(entry.getKey(), getRegionExecutor().submit(entry.getValue()));
+                }
+                Exception failure = null;
+                for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+                    try {
+                        ret.put(entry.getKey(), entry.getValue().get());
+                    } catch (ExecutionException ex) {
+                        Logger.getLogger(DefaultAWSConnectionProvider.class.getName()).log(Level.SEVERE,
+                                "Call to " + entry.getKey() + " failed", ex.getCause());
+                        if (null == failure) {
+                            failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                        }
+                    }
+                }
+                if (null != failure) {
+                    throw failure;
+                }
+            } finally {
+                for (Future<T> future : futures.values()) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#updateEC2Config(boolean
+     * , org.apache.commons.configuration.Configuration)
+     */
+    @Override
+    public void updateEC2Config(boolean reuseExisting, Configuration config) throws Exception {
+        inventory.setTtl(1000L * config.getLong(AWS_INVENTORY_TTL, InstanceInventory.DEFAULT_TTL / 1000L));
+        setAsyncTimeout(1000L * config.getLong(AWS_ASYNC_TIMEOUT, DEFAULT_ASYNC_TIMEOUT / 1000L));
+        rateLimiter.setDescribeRate(config.getDouble(AWS_RATE_DESCRIBE, EC2RateLimiter.DEFAULT_DESCRIBE_RATE));
+        rateLimiter.setMutateRate(config.getDouble(AWS_RATE_MUTATE, EC2RateLimiter.DEFAULT_MUTATE_RATE));
+        setBulkParallelism(config.getInt(AWS_BULK_PARALLELISM, DEFAULT_BULK_PARALLELISM));
+        setBulkChunkSize(config.getInt(AWS_BULK_CHUNK, BulkActionPipeline.DEFAULT_CHUNK_SIZE));
+        if (StringUtils.isNotBlank(config.getString(AWS_KEY))) {
+            if (null == connections.get() || !reuseExisting) {
+                String profile = config.getString(AWS_PROFILE, DEFAULT_PROFILE);
+                BasicAWSCredentials credentials = new BasicAWSCredentials(config.getString(AWS_KEY, ""),
+                        config.getString(AWS_SECRET, ""));
+                List<String> regions = getRegions(config);
+                Map<String, AmazonEC2> clients = new LinkedHashMap<String, AmazonEC2>();
+                ConnectionSet next = null;
+                try {
+                    for (String region : regions) {
+                        String scope = profile + "/" + region;
+                        clients.put(region, requestCoalescer.wrap(
+                                rateLimiter.wrap(clientPool.get(profile, credentials, region), scope), scope));
+                    }
+                    next = new ConnectionSet(profile, clients);
+                    next.getConnection().describeInstances();
+                } catch (Exception ex) {
+                    clientPool.discard(profile);
+                    throw ex;
+                }
+                connections.set(next);
+                clientPool.commit(profile);
+                inventoryStore = new InventoryStore(getSnapshotFile(config, profile));
+                snapshotCounts.clear();
+                clientPool.retain(profile, regions);
+                stateWaiter.cancelAll();
+                clearApiTermination();
+                inventory.invalidateAll();
+            }
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getInventory()
+     */
+    @Override
+    public InstanceInventory getInventory() {
+        return inventory;
+    }
+
+    protected File getSnapshotFile(Configuration config, String profile) {
+        String path = config.getString(AWS_SNAPSHOT);
+        return StringUtils.isBlank(path) ? new File(System.getProperty("user.home"), SNAPSHOT_PREFIX + profile)
+                : new File(path);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getSnapshot(java.util
+     * .Map)
+     */
+    @Override
+    public List<InstanceRecord> getSnapshot(Map<String, Boolean> apiTermination) {
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        InventoryStore store = inventoryStore;
+        if (null != store) {
+            try {
+                ret = store.load(apiTermination);
+                Map<String, List<String>> regionIds = new HashMap<String, List<String>>();
+                for (InstanceRecord record : ret) {
+                    List<String> instanceIds = regionIds.get(record.getRegion());
+                    if (null == instanceIds) {
+                        instanceIds = new ArrayList<String>();
+                        regionIds.put(record.getRegion(), instanceIds);
+                    }
+                    instanceIds.add(record.getInstanceId());
+                }
+                for (Map.Entry<String, List<String>> entry : regionIds.entrySet()) {
+                    snapshotCounts.put(entry.getKey(), DescribeInstancesPager.countIds(entry.getValue()));
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(DefaultAWSConnectionProvider.class.getName()).log(Level.WARNING,
+                        "Ignoring unreadable " + store.getFile(), ex);
+                store.delete();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Saves the inventory in the background once it is complete, a save
+     * requested while one is queued is folded into it
+     */
+    protected void saveSnapshot() {
+        final InventoryStore store = inventoryStore;
+        if (null != store && snapshotPending.compareAndSet(false, true)) {
+            getSnapshotExecutor().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    snapshotPending.set(false);
+                    List<InstanceRecord> records = inventory.getAll();
+                    if (null != records) {
+                        try {
+                            store.save(records, new HashMap<String, Boolean>(apiTerminationCache));
+                        } catch (IOException ex) {
+                            Logger.getLogger(DefaultAWSConnectionProvider.class.getName()).log(Level.WARNING,
+                                    "Failed to save " + store.getFile(), ex);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getRateLimiter()
+     */
+    @Override
+    public EC2RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getStateWaiter()
+     */
+    @Override
+    public InstanceStateWaiter getStateWaiter() {
+        return stateWaiter;
+    }
+
+    /**
+     * @return the clientPool
+     */
+    public ClientPool getClientPool() {
+        return clientPool;
+    }
+
+    /**
+     * @return the requestCoalescer
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getInstanceRecords
+     * (boolean, java.lang.String[])
+     */
+    @Override
+    public List<InstanceRecord> getInstanceRecords(boolean refresh, String... instanceIds) throws Exception {
+        List<InstanceRecord> ret = null;
+        if (null == instanceIds || 0 == instanceIds.length) {
+            if (!refresh) {
+                ret = inventory.getAll();
+            }
+            if (null == ret) {
+                ret = new ArrayList<InstanceRecord>();
+                InventoryPages pages = getInventoryPages(DescribeInstancesPager.DEFAULT_PAGE_SIZE);
+                try {
+                    while (pages.hasNext()) {
+                        ret.addAll(pages.next());
+                    }
+                } finally {
+                    pages.close();
+                }
+                if (!pages.isCompleted()) {
+                    throw new InterruptedException("Interrupted while describing the instances");
+                }
+            }
+        } else {
+            List<String> missing = new ArrayList<String>();
+            if (refresh) {
+                missing.addAll(new LinkedHashSet<String>(Arrays.asList(instanceIds)));
+                ret = new ArrayList<InstanceRecord>();
+            } else {
+                ret = inventory.get(Arrays.asList(instanceIds), missing);
+            }
+            if (!missing.isEmpty()) {
+                Map<String, Callable<List<InstanceRecord>>> calls = new LinkedHashMap<String, Callable<List<InstanceRecord>>>();
+                for (final String region : getRegions()) {
+                    final List<String> regionIds = new ArrayList<String>();
+                    for (String instanceId : missing) {
+                        String instanceRegion = inventory.getRegion(instanceId);
+                        if (null == instanceRegion || region.equals(instanceRegion)) {
+                            regionIds.add(instanceId);
+                        }
+                    }
+                    if (!regionIds.isEmpty()) {
+                        final AmazonEC2 connection = getConnection(region);
+                        calls.put(region, new Callable<List<InstanceRecord>>() {
+
+                            @Override
+                            public List<InstanceRecord> call() throws Exception {
+                                List<InstanceRecord> records = new ArrayList<InstanceRecord>();
+                                DescribeInstancesPager pager = DescribeInstancesPager.byIds(connection, region,
+                                        regionIds, DescribeInstancesPager.DEFAULT_PAGE_SIZE);
+                                while (pager.hasNext()) {
+                                    records.addAll(pager.next());
+                                }
+                                return records;
+                            }
+                        });
+                    }
+                }
+                for (List<InstanceRecord> records : invokeAll(calls).values()) {
+                    inventory.put(records);
+                    ret.addAll(records);
+                }
+            }
+        }
+        Logger.getLogger(DefaultAWSConnectionProvider.class.getName()).log(Level.FINE, inventory.toString());
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getInstanceRecords
+     * (com.yosanai.java.aws.console.ec2.InstanceQuery)
+     */
+    @Override
+    public List<InstanceRecord> getInstanceRecords(final InstanceQuery query) throws Exception {
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        List<InstanceRecord> all = query.isLocal() ? inventory.find(query.getEqualityTerms()) : null;
+        if (null == all) {
+            List<DescribeInstancesPager> pagers = new ArrayList<DescribeInstancesPager>();
+            for (String region : getRegions()) {
+                if (query.acceptsRegion(region)) {
+                    pagers.add(getPager(region, DescribeInstancesPager.DEFAULT_PAGE_SIZE, query.getFilters()));
+                }
+            }
+            ParallelPageIterator<InstanceRecord> pages = new ParallelPageIterator<InstanceRecord>(pagers,
+                    getRegionExecutor(), ParallelPageIterator.DEFAULT_CAPACITY);
+            try {
+                while (pages.hasNext()) {
+                    List<InstanceRecord> records = pages.next();
+                    inventory.put(records);
+                    for (InstanceRecord record : records) {
+                        if (query.matches(record)) {
+                            ret.add(record);
+                        }
+                    }
+                }
+            } finally {
+                pages.close();
+            }
+            if (!pages.isComplete()) {
+                throw new InterruptedException("Interrupted while describing the instances");
+            }
+        } else {
+            for (InstanceRecord record : all) {
+                if (query.matchesAll(record)) {
+                    ret.add(record);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#getInstancePages(int)
+     */
+    @Override
+    public Iterator<List<InstanceRecord>> getInstancePages(int pageSize) {
+        return getInventoryPages(pageSize);
+    }
+
+    /**
+     * @param pageSize
+     * @return the pages of every region, fed into the inventory as they are
+     *         read
+     */
+    protected InventoryPages getInventoryPages(int pageSize) {
+        List<DescribeInstancesPager> pagers = new ArrayList<DescribeInstancesPager>();
+        for (String region : getRegions()) {
+            pagers.add(getPager(region, pageSize, Collections.<Filter> emptyList()));
+        }
+        return new InventoryPages(new ParallelPageIterator<InstanceRecord>(pagers, getRegionExecutor(),
+                ParallelPageIterator.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @param region
+     * @param pageSize
+     * @param filters
+     * @return a pager over the instances of the region split by id prefix
+     *         according to the instances the region is expected to have, a
+     *         single call if the filters already pick instances by id
+     */
+    protected DescribeInstancesPager getPager(String region, int pageSize, List<Filter> filters) {
+        int[] expected = null;
+        for (Filter filter : filters) {
+            if ("instance-id".equals(filter.getName())) {
+                expected = new int[2];
+            }
+        }
+        if (null == expected) {
+            expected = getExpectedCounts(region, pageSize);
+        }
+        return DescribeInstancesPager.byPrefix(getConnection(region), region, expected[0], expected[1], pageSize,
+                filters);
+    }
+
+    /**
+     * @param region
+     * @param pageSize
+     * @return how many instances with 8 and 17 digit ids the region is
+     *         expected to have, from the last full load or else from the
+     *         snapshot. A region nothing is known about is split once.
+     */
+    protected int[] getExpectedCounts(String region, int pageSize) {
+        int[] ret = null;
+        if (inventory.isLoaded()) {
+            ret = DescribeInstancesPager.countIds(inventory.getInstanceIds(region));
+        } else {
+            ret = snapshotCounts.get(region);
+        }
+        if (null == ret) {
+            ret = new int[] { 0, pageSize + 1 };
         }
         return ret;
     }
 
-    /*
-     * (non-Jsdoc)
-     * 
-     * @see
-     * com.yosanai.java.aws.console.AWSConnectionProvider#updateEC2Config(boolean
-     * , org.apache.commons.configuration.Configuration)
+    /**
+     * Feeds the pages of all the regions into the inventory as they are read,
+     * marking it complete once every region is done
      */
-    @Override
-    public void updateEC2Config(boolean reuseExisting, Configuration config) throws Exception {
-        if (StringUtils.isNotBlank(config.getString(AWS_KEY))) {
-            if (null == amazonEC2 || !reuseExisting) {
-                synchronized (lock) {
-                    if (null != amazonEC2) {
-                        amazonEC2.shutdown();
-                        amazonEC2 = null;
-                    }
-                    amazonEC2 = new AmazonEC2Client(new BasicAWSCredentials(config.getString(AWS_KEY, ""),
-                            config.getString(AWS_SECRET, "")));
-                    amazonEC2.describeInstances();
-                }
+    protected class InventoryPages implements Iterator<List<InstanceRecord>>, Closeable {
+
+        protected final ParallelPageIterator<InstanceRecord> pages;
+
+        protected final Set<String> seen = new HashSet<String>();
+
+        protected boolean completed;
+
+        public InventoryPages(ParallelPageIterator<InstanceRecord> pages) {
+            super();
+            this.pages = pages;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean ret = pages.hasNext();
+            if (!ret && !completed && pages.isComplete()) {
+                completed = true;
+                inventory.complete(seen);
+                saveSnapshot();
+            }
+            return ret;
+        }
+
+        @Override
+        public List<InstanceRecord> next() {
+            List<InstanceRecord> ret = pages.next();
+            inventory.put(ret);
+            for (InstanceRecord record : ret) {
+                seen.add(record.getInstanceId());
             }
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            pages.close();
+        }
+
+        /**
+         * @return true once every page was read and the inventory marked
+         *         complete
+         */
+        public boolean isCompleted() {
+            return completed;
         }
     }
 
-    protected List<String> getInstances(String state, boolean include, String... instanceIds) {
+    protected List<String> getInstances(String state, boolean include, String... instanceIds) throws Exception {
         List<String> ret = new ArrayList<String>();
         if (null == state) {
             if (null != instanceIds) {
                 ret.addAll(Arrays.asList(instanceIds));
             }
         } else {
-            DescribeInstancesRequest describeInstancesRequest = new DescribeInstancesRequest();
-            if (null != instanceIds) {
-                describeInstancesRequest.setInstanceIds(Arrays.asList(instanceIds));
-            }
-            DescribeInstancesResult describeInstancesResult = getConnection().describeInstances(
-                    describeInstancesRequest);
-            for (Reservation reservation : describeInstancesResult.getReservations()) {
-                for (Instance instance : reservation.getInstances()) {
-                    if (include) {
-                        if (state.equals(instance.getState().getName())) {
-                            ret.add(instance.getInstanceId());
-                        }
-                    } else if (!state.equals(instance.getState())) {
-                        ret.add(instance.getInstanceId());
-                    }
+            List<InstanceRecord> records = null;
+            if (null == instanceIds || 0 == instanceIds.length) {
+                records = getInstanceRecords(InstanceQuery.parse((include ? "state=" : "state!=") + state));
+            } else {
+                records = getInstanceRecords(false, instanceIds);
+            }
+            for (InstanceRecord record : records) {
+                if (include == state.equals(record.getStateName())) {
+                    ret.add(record.getInstanceId());
                 }
             }
         }
@@ -174,12 +1061,7 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
      */
     @Override
     public void startInstances(String... instanceIds) throws Exception {
-        List<String> instanceIdsFiltered = getInstances(STATE_STOPPED, true, instanceIds);
-        if (!instanceIdsFiltered.isEmpty()) {
-            StartInstancesRequest startInstancesRequest = new StartInstancesRequest();
-            startInstancesRequest.setInstanceIds(instanceIdsFiltered);
-            getConnection().startInstances(startInstancesRequest);
-        }
+        runBulkAction(BulkAction.START, getInstances(STATE_STOPPED, true, instanceIds));
     }
 
     /*
@@ -191,12 +1073,7 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
      */
     @Override
     public void stopInstances(String... instanceIds) throws Exception {
-        List<String> instanceIdsFiltered = getInstances(STATE_RUNNING, true, instanceIds);
-        if (!instanceIdsFiltered.isEmpty()) {
-            StopInstancesRequest stopInstancesRequest = new StopInstancesRequest();
-            stopInstancesRequest.setInstanceIds(instanceIdsFiltered);
-            getConnection().stopInstances(stopInstancesRequest);
-        }
+        runBulkAction(BulkAction.STOP, getInstances(STATE_RUNNING, true, instanceIds));
     }
 
     /*
@@ -208,12 +1085,7 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
      */
     @Override
     public void terminateInstances(String... instanceIds) throws Exception {
-        List<String> instanceIdsFiltered = getInstances(STATE_TERMINATED, false, instanceIds);
-        if (!instanceIdsFiltered.isEmpty()) {
-            TerminateInstancesRequest terminateInstancesRequest = new TerminateInstancesRequest();
-            terminateInstancesRequest.setInstanceIds(instanceIdsFiltered);
-            getConnection().terminateInstances(terminateInstancesRequest);
-        }
+        runBulkAction(BulkAction.TERMINATE, getInstances(STATE_TERMINATED, false, instanceIds));
     }
 
     /*
@@ -226,17 +1098,100 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
     @Override
     public void setApiTermination(boolean enable, String... instanceIds) throws Exception {
         if (null != instanceIds) {
-            List<String> instances = Arrays.asList(instanceIds);
-            if (!instances.isEmpty()) {
-                for (String instance : instances) {
-                    ModifyInstanceAttributeRequest modifyInstanceAttributeRequest = new ModifyInstanceAttributeRequest();
-                    modifyInstanceAttributeRequest.setInstanceId(instance);
-                    modifyInstanceAttributeRequest.setAttribute(DISABLE_API_TERMINATION);
-                    modifyInstanceAttributeRequest.setValue("" + !enable);
-                    getConnection().modifyInstanceAttribute(modifyInstanceAttributeRequest);
+            runBulkAction(enable ? BulkAction.ENABLE_API_TERMINATION : BulkAction.DISABLE_API_TERMINATION,
+                    Arrays.asList(instanceIds));
+        }
+    }
+
+    /**
+     * Runs the action on the instances, throwing the first failure once all
+     * of them are done. Any instance that did not succeed counts as failed.
+     * 
+     * @param action
+     * @param instanceIds
+     * @throws Exception
+     */
+    protected void runBulkAction(BulkAction action, Collection<String> instanceIds) throws Exception {
+        if (!instanceIds.isEmpty()) {
+            List<BulkItem> items = runBulkAction(action, BulkActionPipeline.toItems(instanceIds), null);
+            int failed = 0;
+            Exception failure = null;
+            for (BulkItem item : items) {
+                if (Status.SUCCEEDED != item.getStatus()) {
+                    failed++;
+                    if (null == failure) {
+                        failure = null == item.getFailure() ? new IllegalStateException("No outcome for "
+                                + item.getInstanceId()) : item.getFailure();
+                    }
+                }
+            }
+            if (null != failure) {
+                throw new Exception(action.getTitle() + " failed for " + failed + " of " + items.size()
+                        + " instances: " + failure.getLocalizedMessage(), failure);
+            }
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#runBulkAction(com.
+     * yosanai.java.aws.console.ec2.BulkActionPipeline.BulkAction,
+     * java.util.List,
+     * com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkListener)
+     */
+    @Override
+    public List<BulkItem> runBulkAction(BulkAction action, List<BulkItem> items, BulkListener listener)
+            throws Exception {
+        ConnectionSet current = connections.get();
+        if (null == current) {
+            throw new Exception("Not connected");
+        }
+        List<BulkItem> pending = new ArrayList<BulkItem>();
+        List<String> unknown = new ArrayList<String>();
+        for (BulkItem item : items) {
+            if (Status.SUCCEEDED != item.getStatus()) {
+                if (null == item.getRegion()) {
+                    unknown.add(item.getInstanceId());
+                }
+                pending.add(item);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            Map<String, String> regions = getRegions(unknown);
+            for (BulkItem item : pending) {
+                if (null == item.getRegion()) {
+                    item.setRegion(regions.get(item.getInstanceId()));
+                }
+            }
+        }
+        BulkActionPipeline pipeline = new BulkActionPipeline(current, getBulkExecutor());
+        pipeline.setChunkSize(bulkChunkSize);
+        try {
+            pipeline.run(action, items, listener);
+        } finally {
+            List<String> done = new ArrayList<String>();
+            for (BulkItem item : pending) {
+                if (Status.SUCCEEDED == item.getStatus()) {
+                    done.add(item.getInstanceId());
+                    invalidateApiTermination(item.getInstanceId(),
+                            BulkAction.ENABLE_API_TERMINATION == action ? Boolean.TRUE
+                                    : (BulkAction.DISABLE_API_TERMINATION == action ? Boolean.FALSE : null));
+                }
+            }
+            if (!done.isEmpty()) {
+                inventory.invalidate(done.toArray(new String[done.size()]));
+                if (BulkAction.START == action) {
+                    stateWaiter.watch(done, STATE_RUNNING);
+                } else if (BulkAction.STOP == action) {
+                    stateWaiter.watch(done, STATE_STOPPED);
+                } else if (BulkAction.TERMINATE == action) {
+                    stateWaiter.watch(done, STATE_TERMINATED);
                 }
             }
         }
+        return items;
     }
 
     /*
@@ -250,18 +1205,137 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
     public boolean getApiTermination(String instanceId) throws Exception {
         boolean ret = false;
         if (StringUtils.isNotBlank(instanceId)) {
-            DescribeInstanceAttributeResult describeInstanceAttributeResult = getConnection()
-                    .describeInstanceAttribute(
-                            new DescribeInstanceAttributeRequest(instanceId, DISABLE_API_TERMINATION));
-            ret = !describeInstanceAttributeResult.getInstanceAttribute().getDisableApiTermination();
+            Boolean cached = apiTerminationCache.get(instanceId);
+            if (null == cached) {
+                apiTerminationLookups.incrementAndGet();
+                try {
+                    long generation = apiTerminationGeneration.get();
+                    DescribeInstanceAttributeResult describeInstanceAttributeResult = getConnection(
+                            getRegion(instanceId)).describeInstanceAttribute(
+                                    new DescribeInstanceAttributeRequest(instanceId, DISABLE_API_TERMINATION));
+                    ret = !describeInstanceAttributeResult.getInstanceAttribute().getDisableApiTermination();
+                    cacheApiTermination(instanceId, ret, generation);
+                } finally {
+                    endApiTerminationLookup();
+                }
+            } else {
+                ret = cached;
+            }
         }
         return ret;
     }
 
+    /**
+     * Caches a flag looked up from EC2 unless the flag of the instance was
+     * invalidated since the lookup started
+     * 
+     * @param instanceId
+     * @param apiTermination
+     * @param generation
+     *            {@link #apiTerminationGeneration} when the lookup started
+     */
+    protected void cacheApiTermination(String instanceId, boolean apiTermination, long generation) {
+        if (!isApiTerminationInvalidated(instanceId, generation)) {
+            apiTerminationCache.put(instanceId, apiTermination);
+            if (isApiTerminationInvalidated(instanceId, generation)) {
+                apiTerminationCache.remove(instanceId, apiTermination);
+            }
+        }
+    }
+
+    /**
+     * Forgets the invalidations once the last running lookup is done, as
+     * any lookup starting later reads a newer generation than all of them
+     */
+    protected void endApiTerminationLookup() {
+        long generation = apiTerminationGeneration.get();
+        if (0 == apiTerminationLookups.decrementAndGet()) {
+            for (Map.Entry<String, Long> entry : apiTerminationInvalidated.entrySet()) {
+                if (entry.getValue() <= generation) {
+                    apiTerminationInvalidated.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    protected boolean isApiTerminationInvalidated(String instanceId, long generation) {
+        Long invalidated = apiTerminationInvalidated.get(instanceId);
+        return generation < apiTerminationCleared || (null != invalidated && invalidated > generation);
+    }
+
+    /**
+     * @param instanceId
+     * @param known
+     *            the flag the instance now has, null if not known
+     */
+    protected void invalidateApiTermination(String instanceId, Boolean known) {
+        apiTerminationInvalidated.put(instanceId, apiTerminationGeneration.incrementAndGet());
+        if (null == known) {
+            apiTerminationCache.remove(instanceId);
+        } else {
+            apiTerminationCache.put(instanceId, known);
+        }
+    }
+
+    protected void clearApiTermination() {
+        apiTerminationCleared = apiTerminationGeneration.incrementAndGet();
+        apiTerminationCache.clear();
+        apiTerminationInvalidated.clear();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#prefetchApiTermination
+     * (java.util.Collection,
+     * com.yosanai.java.aws.console.ApiTerminationListener)
+     */
+    @Override
+    public void prefetchApiTermination(Collection<String> instanceIds, final ApiTerminationListener listener) {
+        if (null != instanceIds) {
+            ExecutorService executor = null;
+            for (final String instanceId : new HashSet<String>(instanceIds)) {
+                if (StringUtils.isBlank(instanceId)) {
+                    continue;
+                }
+                Boolean cached = apiTerminationCache.get(instanceId);
+                if (null != cached) {
+                    if (null != listener) {
+                        listener.apiTerminationLoaded(instanceId, cached);
+                    }
+                } else {
+                    if (null == executor) {
+                        executor = getAttributeExecutor();
+                    }
+                    executor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                boolean apiTermination = getApiTermination(instanceId);
+                                if (null != listener) {
+                                    listener.apiTerminationLoaded(instanceId, apiTermination);
+                                }
+                            } catch (Exception ex) {
+                                if (null != listener) {
+                                    listener.apiTerminationFailed(instanceId, ex);
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
     protected String getInstanceDetail(String property, Instance instance) throws Exception {
+        return getInstanceDetail(PropertyAccessors.INSTANCE.get(property), instance);
+    }
+
+    protected String getInstanceDetail(Accessor accessor, Instance instance) throws Exception {
         String ret = null;
-        BeanWrapper beanWrapper = new BeanWrapperImpl(instance);
-        Object value = beanWrapper.getPropertyValue(property);
+        Object value = accessor.get(instance);
         if (null != value) {
             ret = value.toString();
         }
@@ -280,19 +1354,14 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
         StringBuilder ret = new StringBuilder();
         List<String> instances = getInstances(null, false, instanceIds);
         if (!instances.isEmpty()) {
-            HashSet<String> instanceIdsSet = new HashSet<String>(instances);
-            DescribeInstancesResult result = getConnection().describeInstances();
-            for (Reservation reservation : result.getReservations()) {
-                for (Instance instance : reservation.getInstances()) {
-                    if (instanceIdsSet.contains(instance.getInstanceId())) {
-                        String value = getInstanceDetail(property, instance);
-                        if (StringUtils.isNotBlank(value)) {
-                            if (0 < ret.length()) {
-                                ret.append(separator);
-                            }
-                            ret.append(value);
-                        }
+            Accessor accessor = PropertyAccessors.INSTANCE.get(property);
+            for (InstanceRecord record : getInstanceRecords(false, instances.toArray(new String[instances.size()]))) {
+                String value = getInstanceDetail(accessor, record.getInstance());
+                if (StringUtils.isNotBlank(value)) {
+                    if (0 < ret.length()) {
+                        ret.append(separator);
                     }
+                    ret.append(value);
                 }
             }
         }
@@ -345,27 +1414,308 @@ public class DefaultAWSConnectionProvider implements AWSConnectionProvider {
     @Override
     public void launchInstance(String amiId, InstanceType instanceType, int instanceCount, String keyName,
             Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags) throws Exception {
+        List<LaunchChunk> chunks = launchInstances(amiId, instanceType, instanceCount, keyName, securityGroups,
+                terminateViaAPI, tags, UUID.randomUUID().toString(), null);
+        int launched = 0;
+        Exception failure = null;
+        for (LaunchChunk chunk : chunks) {
+            launched += chunk.getInstanceIds().size();
+            if (null == failure) {
+                failure = chunk.getFailure();
+            }
+        }
+        if (null != failure) {
+            throw new Exception("Launched " + launched + " of " + instanceCount + " instances: "
+                    + failure.getLocalizedMessage(), failure);
+        }
+        if (launched < instanceCount) {
+            throw new Exception("Launched " + launched + " of " + instanceCount + " instances");
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AWSConnectionProvider#launchInstances(java
+     * .lang.String, com.amazonaws.services.ec2.model.InstanceType, int,
+     * java.lang.String, java.util.Collection, boolean, java.util.Map,
+     * java.lang.String,
+     * com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener)
+     */
+    @Override
+    public List<LaunchChunk> launchInstances(String amiId, InstanceType instanceType, int instanceCount,
+            String keyName, Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags,
+            String clientToken, LaunchListener listener) throws Exception {
         if (1 > instanceCount) { throw new Exception("Invalid instanceCount " + instanceCount); }
         if (null == instanceType) { throw new Exception("Invalid instanceType"); }
         if (StringUtils.isBlank(amiId)) { throw new Exception("Invalid amiId"); }
+        if (StringUtils.isBlank(clientToken)) { throw new Exception("Invalid clientToken"); }
         RunInstancesRequest runInstancesRequest = new RunInstancesRequest(amiId, instanceCount, instanceCount);
         runInstancesRequest.setKeyName(keyName);
         runInstancesRequest.setSecurityGroups(securityGroups);
         runInstancesRequest.setDisableApiTermination(!terminateViaAPI);
         runInstancesRequest.setInstanceType(instanceType.toString());
-        RunInstancesResult result = getConnection().runInstances(runInstancesRequest);
-        if (null != tags && !tags.isEmpty()) {
-            List<Tag> tagList = new ArrayList<Tag>();
+        List<Tag> tagList = new ArrayList<Tag>();
+        if (null != tags) {
             for (String key : tags.keySet()) {
                 tagList.add(new Tag(key, tags.get(key)));
             }
-            List<String> resources = new ArrayList<String>();
-            Reservation reservation = result.getReservation();
-            for (Instance instance : reservation.getInstances()) {
-                resources.add(instance.getInstanceId());
-            }
-            getConnection().createTags(new CreateTagsRequest(resources, tagList));
         }
+        LaunchPipeline pipeline = new LaunchPipeline(getConnection(), getLaunchExecutor());
+        List<LaunchChunk> ret = null;
+        try {
+            ret = pipeline.launch(runInstancesRequest, instanceCount, clientToken, tagList, listener);
+        } finally {
+            inventory.invalidate();
+        }
+        List<String> launched = new ArrayList<String>();
+        for (LaunchChunk chunk : ret) {
+            launched.addAll(chunk.getInstanceIds());
+        }
+        stateWaiter.watch(launched, STATE_RUNNING);
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#startInstancesAsync
+     * (com.yosanai.java.aws.console.AsyncCallback, java.lang.String[])
+     */
+    @Override
+    public Future<Void> startInstancesAsync(AsyncCallback<Void> callback, final String... instanceIds) {
+        return submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                startInstances(instanceIds);
+                return null;
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#stopInstancesAsync
+     * (com.yosanai.java.aws.console.AsyncCallback, java.lang.String[])
+     */
+    @Override
+    public Future<Void> stopInstancesAsync(AsyncCallback<Void> callback, final String... instanceIds) {
+        return submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                stopInstances(instanceIds);
+                return null;
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#terminateInstancesAsync
+     * (com.yosanai.java.aws.console.AsyncCallback, java.lang.String[])
+     */
+    @Override
+    public Future<Void> terminateInstancesAsync(AsyncCallback<Void> callback, final String... instanceIds) {
+        return submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                terminateInstances(instanceIds);
+                return null;
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#setApiTerminationAsync
+     * (boolean, com.yosanai.java.aws.console.AsyncCallback,
+     * java.lang.String[])
+     */
+    @Override
+    public Future<Void> setApiTerminationAsync(final boolean enable, AsyncCallback<Void> callback,
+            final String... instanceIds) {
+        return submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                setApiTermination(enable, instanceIds);
+                return null;
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getApiTerminationAsync
+     * (java.lang.String, com.yosanai.java.aws.console.AsyncCallback)
+     */
+    @Override
+    public Future<Boolean> getApiTerminationAsync(final String instanceId, AsyncCallback<Boolean> callback) {
+        return submit(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return getApiTermination(instanceId);
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getInstanceRecordsAsync
+     * (boolean, com.yosanai.java.aws.console.AsyncCallback,
+     * java.lang.String[])
+     */
+    @Override
+    public Future<List<InstanceRecord>> getInstanceRecordsAsync(final boolean refresh,
+            AsyncCallback<List<InstanceRecord>> callback, final String... instanceIds) {
+        return submit(new Callable<List<InstanceRecord>>() {
+
+            @Override
+            public List<InstanceRecord> call() throws Exception {
+                return getInstanceRecords(refresh, instanceIds);
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getInstanceRecordsAsync
+     * (com.yosanai.java.aws.console.ec2.InstanceQuery,
+     * com.yosanai.java.aws.console.AsyncCallback)
+     */
+    @Override
+    public Future<List<InstanceRecord>> getInstanceRecordsAsync(final InstanceQuery query,
+            AsyncCallback<List<InstanceRecord>> callback) {
+        return submit(new Callable<List<InstanceRecord>>() {
+
+            @Override
+            public List<InstanceRecord> call() throws Exception {
+                return getInstanceRecords(query);
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getInstanceDetailsAsync
+     * (java.lang.String, java.lang.String,
+     * com.yosanai.java.aws.console.AsyncCallback, java.lang.String[])
+     */
+    @Override
+    public Future<String> getInstanceDetailsAsync(final String property, final String separator,
+            AsyncCallback<String> callback, final String... instanceIds) {
+        return submit(new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return getInstanceDetails(property, separator, instanceIds);
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getSecurityGroupsAsync
+     * (com.yosanai.java.aws.console.AsyncCallback)
+     */
+    @Override
+    public Future<Collection<String>> getSecurityGroupsAsync(AsyncCallback<Collection<String>> callback) {
+        return submit(new Callable<Collection<String>>() {
+
+            @Override
+            public Collection<String> call() throws Exception {
+                return getSecurityGroups();
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#getKeyPairNamesAsync
+     * (com.yosanai.java.aws.console.AsyncCallback)
+     */
+    @Override
+    public Future<Collection<String>> getKeyPairNamesAsync(AsyncCallback<Collection<String>> callback) {
+        return submit(new Callable<Collection<String>>() {
+
+            @Override
+            public Collection<String> call() throws Exception {
+                return getKeyPairNames();
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#launchInstancesAsync
+     * (java.lang.String, com.amazonaws.services.ec2.model.InstanceType, int,
+     * java.lang.String, java.util.Collection, boolean, java.util.Map,
+     * java.lang.String,
+     * com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener,
+     * com.yosanai.java.aws.console.AsyncCallback)
+     */
+    @Override
+    public Future<List<LaunchChunk>> launchInstancesAsync(final String amiId, final InstanceType instanceType,
+            final int instanceCount, final String keyName, final Collection<String> securityGroups,
+            final boolean terminateViaAPI, final Map<String, String> tags, final String clientToken,
+            final LaunchListener listener, AsyncCallback<List<LaunchChunk>> callback) {
+        return submit(new Callable<List<LaunchChunk>>() {
+
+            @Override
+            public List<LaunchChunk> call() throws Exception {
+                return launchInstances(amiId, instanceType, instanceCount, keyName, securityGroups, terminateViaAPI,
+                        tags, clientToken, listener);
+            }
+        }, callback);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.AsyncAWSConnectionProvider#launchInstanceAsync
+     * (java.lang.String, com.amazonaws.services.ec2.model.InstanceType, int,
+     * java.lang.String, java.util.Collection, boolean, java.util.Map,
+     * com.yosanai.java.aws.console.AsyncCallback)
+     */
+    @Override
+    public Future<Void> launchInstanceAsync(final String amiId, final InstanceType instanceType,
+            final int instanceCount, final String keyName, final Collection<String> securityGroups,
+            final boolean terminateViaAPI, final Map<String, String> tags, AsyncCallback<Void> callback) {
+        return submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                launchInstance(amiId, instanceType, instanceCount, keyName, securityGroups, terminateViaAPI, tags);
+                return null;
+            }
+        }, callback);
     }
 
 }
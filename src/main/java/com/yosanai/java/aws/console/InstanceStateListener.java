@@ -0,0 +1,49 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console;
+
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+
+/**
+ * Receives the state changes of instances watched by
+ * {@link InstanceStateWaiter}, on the thread of the waiter
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public interface InstanceStateListener {
+
+    public void instanceStateChanged(InstanceRecord record);
+
+    /**
+     * @param instanceId
+     * @param state
+     *            the last state seen, null if the instance was never seen
+     * @param reached
+     *            false if the wait timed out or was cancelled
+     */
+    public void instanceWaitFinished(String instanceId, String state, boolean reached);
+
+}
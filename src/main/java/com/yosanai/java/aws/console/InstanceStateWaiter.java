@@ -0,0 +1,286 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+
+/**
+ * Follows instances through state transitions after they were started,
+ * stopped or terminated. All the watched instances are described together in
+ * one batch per poll, the delay between polls doubles up to a maximum while
+ * nothing new is watched, and every state change is pushed to the listeners.
+ * Polling stops once every watched instance reached its target state.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceStateWaiter {
+
+    /**
+     * 
+     */
+    public static final long DEFAULT_INITIAL_DELAY = 1000L;
+
+    /**
+     * 
+     */
+    public static final long DEFAULT_MAX_DELAY = 20 * 1000L;
+
+    /**
+     * 
+     */
+    public static final long DEFAULT_TIMEOUT = 15 * 60 * 1000L;
+
+    /**
+     * What a watched instance is waiting for
+     */
+    protected static class Target {
+
+        protected final Set<String> states;
+
+        protected final long deadline;
+
+        protected String lastState;
+
+        public Target(Set<String> states, long deadline, String lastState) {
+            super();
+            this.states = states;
+            this.deadline = deadline;
+            this.lastState = lastState;
+        }
+    }
+
+    protected final AWSConnectionProvider awsConnectionProvider;
+
+    protected final List<InstanceStateListener> listeners = new CopyOnWriteArrayList<InstanceStateListener>();
+
+    protected final Map<String, Target> targets = new HashMap<String, Target>();
+
+    protected ScheduledExecutorService scheduler;
+
+    protected ScheduledFuture<?> next;
+
+    protected long nextAt;
+
+    protected long delay = DEFAULT_INITIAL_DELAY;
+
+    protected long initialDelay = DEFAULT_INITIAL_DELAY;
+
+    protected long maxDelay = DEFAULT_MAX_DELAY;
+
+    protected long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * @param awsConnectionProvider
+     */
+    public InstanceStateWaiter(AWSConnectionProvider awsConnectionProvider) {
+        super();
+        this.awsConnectionProvider = awsConnectionProvider;
+    }
+
+    public void addListener(InstanceStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(InstanceStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param initialDelay
+     *            the delay before the first poll after new instances are
+     *            watched
+     * @param maxDelay
+     *            the delay between polls never grows past this
+     * @param timeout
+     *            how long an instance is watched at most
+     */
+    public synchronized void setDelays(long initialDelay, long maxDelay, long timeout) {
+        this.initialDelay = Math.max(1, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Watches the instances until each one is in one of the target states or
+     * terminated. Instances already watched get the new targets.
+     * 
+     * @param instanceIds
+     * @param states
+     *            the target states
+     */
+    public synchronized void watch(Collection<String> instanceIds, String... states) {
+        if (null != instanceIds && !instanceIds.isEmpty()) {
+            Set<String> targetStates = new HashSet<String>(Arrays.asList(states));
+            targetStates.add(DefaultAWSConnectionProvider.STATE_TERMINATED);
+            long deadline = System.currentTimeMillis() + timeout;
+            for (String instanceId : instanceIds) {
+                Target previous = targets.get(instanceId);
+                targets.put(instanceId, new Target(targetStates, deadline, null == previous ? null
+                        : previous.lastState));
+            }
+            delay = initialDelay;
+            schedule(initialDelay);
+        }
+    }
+
+    /**
+     * @return the instances being watched
+     */
+    public synchronized Set<String> getWatched() {
+        return new HashSet<String>(targets.keySet());
+    }
+
+    /**
+     * Stops watching every instance, notifying the listeners the waits did
+     * not finish
+     */
+    public void cancelAll() {
+        Map<String, Target> cancelled = null;
+        synchronized (this) {
+            cancelled = new HashMap<String, Target>(targets);
+            targets.clear();
+            if (null != next) {
+                next.cancel(false);
+                next = null;
+            }
+        }
+        for (Map.Entry<String, Target> entry : cancelled.entrySet()) {
+            fireFinished(entry.getKey(), entry.getValue().lastState, false);
+        }
+    }
+
+    protected synchronized void schedule(long wait) {
+        long at = System.currentTimeMillis() + wait;
+        if (null == next || next.isDone() || at < nextAt) {
+            if (null != next) {
+                next.cancel(false);
+            }
+            if (null == scheduler) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("aws-waiter"));
+            }
+            nextAt = at;
+            next = scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    poll();
+                }
+            }, wait, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected void poll() {
+        Set<String> instanceIds = getWatched();
+        if (instanceIds.isEmpty()) {
+            return;
+        }
+        List<InstanceRecord> records = null;
+        try {
+            records = awsConnectionProvider.getInstanceRecords(true,
+                    instanceIds.toArray(new String[instanceIds.size()]));
+        } catch (Exception ex) {
+            Logger.getLogger(InstanceStateWaiter.class.getName()).log(Level.WARNING,
+                    "Failed to poll " + instanceIds.size() + " instances", ex);
+            records = new ArrayList<InstanceRecord>();
+        }
+        List<InstanceRecord> changed = new ArrayList<InstanceRecord>();
+        Map<String, String> finished = new HashMap<String, String>();
+        Map<String, String> timedOut = new HashMap<String, String>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (InstanceRecord record : records) {
+                Target target = targets.get(record.getInstanceId());
+                if (null != target) {
+                    String state = record.getStateName();
+                    if (null != state && !state.equals(target.lastState)) {
+                        target.lastState = state;
+                        changed.add(record);
+                    }
+                    if (target.states.contains(state)) {
+                        targets.remove(record.getInstanceId());
+                        finished.put(record.getInstanceId(), state);
+                    }
+                }
+            }
+            for (String instanceId : new ArrayList<String>(targets.keySet())) {
+                Target target = targets.get(instanceId);
+                if (target.deadline <= now) {
+                    targets.remove(instanceId);
+                    timedOut.put(instanceId, target.lastState);
+                }
+            }
+            next = null;
+            if (!targets.isEmpty()) {
+                delay = Math.min(maxDelay, 2 * delay);
+                schedule(delay);
+            }
+        }
+        for (InstanceRecord record : changed) {
+            for (InstanceStateListener listener : listeners) {
+                listener.instanceStateChanged(record);
+            }
+        }
+        for (Map.Entry<String, String> entry : finished.entrySet()) {
+            fireFinished(entry.getKey(), entry.getValue(), true);
+        }
+        for (Map.Entry<String, String> entry : timedOut.entrySet()) {
+            fireFinished(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    protected void fireFinished(String instanceId, String state, boolean reached) {
+        for (InstanceStateListener listener : listeners) {
+            listener.instanceWaitFinished(instanceId, state, reached);
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        return "InstanceStateWaiter [watched=" + targets.size() + ", delay=" + delay + "]";
+    }
+
+}
@@ -22,21 +22,76 @@
 
 package com.yosanai.java.aws.console;
 
+import java.awt.Frame;
+import java.awt.event.WindowEvent;
+import java.awt.event.WindowStateListener;
+
 import javax.swing.JFrame;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.yosanai.java.aws.console.panel.TaskExecutor;
 
 /**
  * 
  * @author Saravana Perumal Shanmugam
  */
+@SuppressWarnings("serial")
 public class MainAWSPanel extends javax.swing.JPanel implements AWSAware {
 
     protected AWSConnectionProvider awsConnectionProvider;
 
     protected JFrame parentFrame;
 
+    protected TaskExecutor taskExecutor = new TaskExecutor();
+
+    protected WindowStateListener windowStateListener = new WindowStateListener() {
+
+        @Override
+        public void windowStateChanged(WindowEvent e) {
+            updateAutoRefresh();
+        }
+    };
+
     /** Creates new form MainAWSPanel */
     public MainAWSPanel() {
         initComponents();
+        statusBar.setTaskExecutor(taskExecutor);
+        instancesPanel.setTaskExecutor(taskExecutor);
+        tabMain.addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateAutoRefresh();
+            }
+        });
+    }
+
+    /**
+     * Pauses the auto refresh of the instances while their tab is not
+     * selected or the window is minimized
+     */
+    protected void updateAutoRefresh() {
+        boolean minimized = null != parentFrame && 0 != (parentFrame.getExtendedState() & Frame.ICONIFIED);
+        instancesPanel.setAutoRefreshActive(!minimized && instancesPanel == tabMain.getSelectedComponent());
+    }
+
+    /**
+     * Applies the settings of the panels
+     * 
+     * @param config
+     */
+    public void updateConfig(Configuration config) {
+        instancesPanel.updateConfig(config);
+    }
+
+    /**
+     * @return the executor shared by the panels for their background work
+     */
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
     }
 
     /**
@@ -51,8 +106,15 @@ public class MainAWSPanel extends javax.swing.JPanel implements AWSAware {
      *            the parentFrame to set
      */
     public void setParentFrame(JFrame parentFrame) {
+        if (null != this.parentFrame) {
+            this.parentFrame.removeWindowStateListener(windowStateListener);
+        }
         this.parentFrame = parentFrame;
         instancesPanel.setParentFrame(parentFrame);
+        if (null != parentFrame) {
+            parentFrame.addWindowStateListener(windowStateListener);
+        }
+        updateAutoRefresh();
     }
 
     /**
@@ -81,12 +143,14 @@ public class MainAWSPanel extends javax.swing.JPanel implements AWSAware {
 
         tabMain = new javax.swing.JTabbedPane();
         instancesPanel = new com.yosanai.java.aws.console.panel.InstancesPanel();
+        statusBar = new com.yosanai.java.aws.console.panel.StatusBar();
 
         setLayout(new java.awt.BorderLayout());
 
         tabMain.addTab("Instances", instancesPanel);
 
         add(tabMain, java.awt.BorderLayout.CENTER);
+        add(statusBar, java.awt.BorderLayout.PAGE_END);
     }// </editor-fold>//GEN-END:initComponents
 
     private void btnRefreshActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_btnRefreshActionPerformed
@@ -95,6 +159,8 @@ public class MainAWSPanel extends javax.swing.JPanel implements AWSAware {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private com.yosanai.java.aws.console.panel.InstancesPanel instancesPanel;
 
+    private com.yosanai.java.aws.console.panel.StatusBar statusBar;
+
     private javax.swing.JTabbedPane tabMain;
 
     // End of variables declaration//GEN-END:variables
@@ -0,0 +1,448 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.InstanceStateChange;
+import com.amazonaws.services.ec2.model.ModifyInstanceAttributeRequest;
+import com.amazonaws.services.ec2.model.StartInstancesRequest;
+import com.amazonaws.services.ec2.model.StopInstancesRequest;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+
+/**
+ * Runs an action on many instances as chunks run concurrently, one call per
+ * chunk of instances of a region, or one call per instance for attributes
+ * EC2 changes one instance at a time. Every instance gets its own outcome: a
+ * chunk the service rejects as a whole because of some of its instances is
+ * split in halves until those are found, so running the action again on the
+ * same items only redoes the instances that failed.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class BulkActionPipeline {
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * The most instances EC2 takes in one call
+     */
+    public static final int MAX_CHUNK_SIZE = 1000;
+
+    protected static final String DISABLE_API_TERMINATION = "disableApiTermination";
+
+    public enum BulkAction {
+        START("Start", true), STOP("Stop", true), TERMINATE("Terminate", true), ENABLE_API_TERMINATION(
+                "Enable API termination", false), DISABLE_API_TERMINATION("Disable API termination", false);
+
+        protected final String title;
+
+        protected final boolean batched;
+
+        private BulkAction(String title, boolean batched) {
+            this.title = title;
+            this.batched = batched;
+        }
+
+        /**
+         * @return the title
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return whether one call takes many instances
+         */
+        public boolean isBatched() {
+            return batched;
+        }
+
+        /**
+         * @param state
+         *            the state of an instance, null if unknown
+         * @return whether the action changes anything for an instance in
+         *         the state
+         */
+        public boolean appliesTo(String state) {
+            boolean ret = true;
+            if (null != state) {
+                if (START == this) {
+                    ret = "stopped".equals(state);
+                } else if (STOP == this) {
+                    ret = "running".equals(state);
+                } else if (TERMINATE == this) {
+                    ret = !"terminated".equals(state);
+                }
+            }
+            return ret;
+        }
+    }
+
+    public enum Status {
+        PENDING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * Receives the items of every chunk once they have their outcome, on the
+     * thread that ran it
+     */
+    public interface BulkListener {
+
+        public void itemsDone(List<BulkItem> items);
+    }
+
+    /**
+     * One instance of a bulk action
+     */
+    public static class BulkItem {
+
+        protected final String instanceId;
+
+        protected volatile String region;
+
+        protected volatile Status status = Status.PENDING;
+
+        protected volatile String state;
+
+        protected volatile Exception failure;
+
+        public BulkItem(String instanceId) {
+            super();
+            this.instanceId = instanceId;
+        }
+
+        /**
+         * @return the instanceId
+         */
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        /**
+         * @return the region, null until known
+         */
+        public String getRegion() {
+            return region;
+        }
+
+        /**
+         * @param region
+         */
+        public void setRegion(String region) {
+            this.region = region;
+        }
+
+        /**
+         * @return the status
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the state EC2 reported once the action went through, null
+         *         for attributes
+         */
+        public String getState() {
+            return state;
+        }
+
+        /**
+         * @return the failure, null unless the item failed
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "BulkItem [instanceId=" + instanceId + ", region=" + region + ", status=" + status
+                    + (null == failure ? "" : ", failure=" + failure.getMessage()) + "]";
+        }
+    }
+
+    protected final ConnectionSet connections;
+
+    protected final Executor executor;
+
+    protected int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * @param connections
+     *            the clients of the regions of the instances
+     * @param executor
+     *            runs the chunks, its size bounds the chunks in flight
+     */
+    public BulkActionPipeline(ConnectionSet connections, Executor executor) {
+        super();
+        this.connections = connections;
+        this.executor = executor;
+    }
+
+    /**
+     * @param chunkSize
+     *            the most instances in one call, capped at
+     *            {@link #MAX_CHUNK_SIZE}
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, chunkSize));
+    }
+
+    /**
+     * @param instanceIds
+     * @return a pending item for each instance
+     */
+    public static List<BulkItem> toItems(Collection<String> instanceIds) {
+        List<BulkItem> ret = new ArrayList<BulkItem>();
+        for (String instanceId : instanceIds) {
+            ret.add(new BulkItem(instanceId));
+        }
+        return ret;
+    }
+
+    /**
+     * @param action
+     * @param items
+     * @return the items grouped into the chunks they are sent in
+     */
+    public List<List<BulkItem>> plan(BulkAction action, Collection<BulkItem> items) {
+        Map<String, List<BulkItem>> byRegion = new LinkedHashMap<String, List<BulkItem>>();
+        for (BulkItem item : items) {
+            List<BulkItem> regionItems = byRegion.get(item.region);
+            if (null == regionItems) {
+                regionItems = new ArrayList<BulkItem>();
+                byRegion.put(item.region, regionItems);
+            }
+            regionItems.add(item);
+        }
+        int size = action.isBatched() ? chunkSize : 1;
+        List<List<BulkItem>> ret = new ArrayList<List<BulkItem>>();
+        for (List<BulkItem> regionItems : byRegion.values()) {
+            for (int index = 0; index < regionItems.size(); index += size) {
+                ret.add(regionItems.subList(index, Math.min(index + size, regionItems.size())));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Runs the action on the items that did not succeed yet and waits for
+     * every chunk. Failures are recorded on the items, not thrown, so the
+     * same items can be run again to retry only the failed ones.
+     * 
+     * @param action
+     * @param items
+     * @param listener
+     *            may be null
+     * @return the items
+     * @throws InterruptedException
+     *             if interrupted while chunks were running, the items of
+     *             chunks not started yet stay pending
+     */
+    public List<BulkItem> run(final BulkAction action, List<BulkItem> items, final BulkListener listener)
+            throws InterruptedException {
+        List<BulkItem> pending = new ArrayList<BulkItem>();
+        for (BulkItem item : items) {
+            if (Status.SUCCEEDED != item.status) {
+                item.status = Status.PENDING;
+                item.failure = null;
+                pending.add(item);
+            }
+        }
+        CompletionService<List<BulkItem>> completionService = new ExecutorCompletionService<List<BulkItem>>(executor);
+        Map<Future<List<BulkItem>>, List<BulkItem>> futures = new LinkedHashMap<Future<List<BulkItem>>, List<BulkItem>>();
+        try {
+            for (final List<BulkItem> chunk : plan(action, pending)) {
+                futures.put(completionService.submit(new Callable<List<BulkItem>>() {
+
+                    @Override
+                    public List<BulkItem> call() throws Exception {
+                        runChunk(action, chunk, listener);
+                        return chunk;
+                    }
+                }), chunk);
+            }
+            for (int done = 0; done < futures.size(); done++) {
+                Future<List<BulkItem>> future = completionService.take();
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = null == ex.getCause() ? ex : ex.getCause();
+                    failPending(futures.get(future), cause instanceof Exception ? (Exception) cause : ex, listener);
+                }
+            }
+        } finally {
+            for (Future<List<BulkItem>> future : futures.keySet()) {
+                future.cancel(false);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Marks the items of a chunk that died before recording an outcome as
+     * failed, so they are retried and never reported as done
+     * 
+     * @param chunk
+     * @param failure
+     * @param listener
+     *            may be null
+     */
+    protected void failPending(List<BulkItem> chunk, Exception failure, BulkListener listener) {
+        List<BulkItem> failed = new ArrayList<BulkItem>();
+        for (BulkItem item : chunk) {
+            if (Status.PENDING == item.status) {
+                item.failure = failure;
+                item.status = Status.FAILED;
+                failed.add(item);
+            }
+        }
+        if (null != listener && !failed.isEmpty()) {
+            listener.itemsDone(failed);
+        }
+    }
+
+    /**
+     * Sends the chunk, splitting it when the service rejects it for some of
+     * its instances
+     * 
+     * @param action
+     * @param chunk
+     * @param listener
+     * @throws InterruptedException
+     */
+    protected void runChunk(BulkAction action, List<BulkItem> chunk, BulkListener listener)
+            throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        Exception failure = null;
+        boolean split = false;
+        try {
+            call(action, chunk);
+        } catch (AmazonServiceException ex) {
+            split = 1 < chunk.size() && ErrorType.Client == ex.getErrorType()
+                    && !EC2RateLimiter.THROTTLE_CODES.contains(ex.getErrorCode());
+            failure = ex;
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+        if (split) {
+            runChunk(action, chunk.subList(0, chunk.size() / 2), listener);
+            runChunk(action, chunk.subList(chunk.size() / 2, chunk.size()), listener);
+        } else {
+            if (null != failure) {
+                for (BulkItem item : chunk) {
+                    item.failure = failure;
+                    item.status = Status.FAILED;
+                }
+            }
+            if (null != listener) {
+                listener.itemsDone(chunk);
+            }
+        }
+    }
+
+    protected void call(BulkAction action, List<BulkItem> chunk) {
+        String region = chunk.get(0).region;
+        AmazonEC2 amazonEC2 = connections.getConnection(region);
+        if (null == amazonEC2) {
+            throw new IllegalStateException("Not connected to region " + region);
+        }
+        List<String> instanceIds = new ArrayList<String>();
+        for (BulkItem item : chunk) {
+            instanceIds.add(item.instanceId);
+        }
+        List<InstanceStateChange> changes = null;
+        switch (action) {
+        case START:
+            StartInstancesRequest startInstancesRequest = new StartInstancesRequest();
+            startInstancesRequest.setInstanceIds(instanceIds);
+            changes = amazonEC2.startInstances(startInstancesRequest).getStartingInstances();
+            break;
+        case STOP:
+            StopInstancesRequest stopInstancesRequest = new StopInstancesRequest();
+            stopInstancesRequest.setInstanceIds(instanceIds);
+            changes = amazonEC2.stopInstances(stopInstancesRequest).getStoppingInstances();
+            break;
+        case TERMINATE:
+            TerminateInstancesRequest terminateInstancesRequest = new TerminateInstancesRequest();
+            terminateInstancesRequest.setInstanceIds(instanceIds);
+            changes = amazonEC2.terminateInstances(terminateInstancesRequest).getTerminatingInstances();
+            break;
+        default:
+            for (BulkItem item : chunk) {
+                ModifyInstanceAttributeRequest modifyInstanceAttributeRequest = new ModifyInstanceAttributeRequest();
+                modifyInstanceAttributeRequest.setInstanceId(item.instanceId);
+                modifyInstanceAttributeRequest.setAttribute(DISABLE_API_TERMINATION);
+                modifyInstanceAttributeRequest.setValue("" + (BulkAction.DISABLE_API_TERMINATION == action));
+                amazonEC2.modifyInstanceAttribute(modifyInstanceAttributeRequest);
+                item.status = Status.SUCCEEDED;
+            }
+            break;
+        }
+        if (null != changes) {
+            Map<String, String> states = new HashMap<String, String>();
+            for (InstanceStateChange change : changes) {
+                states.put(change.getInstanceId(), null == change.getCurrentState() ? null : change
+                        .getCurrentState().getName());
+            }
+            for (BulkItem item : chunk) {
+                if (states.containsKey(item.instanceId)) {
+                    item.state = states.get(item.instanceId);
+                    item.status = Status.SUCCEEDED;
+                } else {
+                    item.failure = new IllegalStateException("No state change reported for " + item.instanceId);
+                    item.status = Status.FAILED;
+                }
+            }
+        }
+    }
+
+}
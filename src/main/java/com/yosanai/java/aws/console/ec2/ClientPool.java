@@ -0,0 +1,279 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Client;
+
+/**
+ * EC2 clients keyed by credential profile and region, so switching between
+ * profiles does not rebuild clients. Clients handed out are reference
+ * counted: a retired client keeps serving the calls already in flight and is
+ * shut down once the last of them returns. Clients created for new
+ * credentials stay pending until {@link #commit(String)}, so the clients in
+ * use are only replaced once the new ones proved to work.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class ClientPool {
+
+    protected final ConcurrentHashMap<String, PooledClient> clients = new ConcurrentHashMap<String, PooledClient>();
+
+    protected final ConcurrentHashMap<String, PooledClient> pending = new ConcurrentHashMap<String, PooledClient>();
+
+    /**
+     * A client shared by every caller of the pool, shut down when it is
+     * retired and no call is using it
+     */
+    protected static class PooledClient implements InvocationHandler {
+
+        protected final AWSCredentials credentials;
+
+        protected final AmazonEC2 amazonEC2;
+
+        protected final AmazonEC2 handle;
+
+        /**
+         * One reference for the pool plus one for every call in flight
+         */
+        protected final AtomicInteger references = new AtomicInteger(1);
+
+        protected final AtomicBoolean retired = new AtomicBoolean();
+
+        public PooledClient(AWSCredentials credentials, AmazonEC2 amazonEC2) {
+            super();
+            this.credentials = credentials;
+            this.amazonEC2 = amazonEC2;
+            handle = (AmazonEC2) Proxy.newProxyInstance(AmazonEC2.class.getClassLoader(),
+                    new Class<?>[] { AmazonEC2.class }, this);
+        }
+
+        public boolean matches(AWSCredentials other) {
+            return ObjectUtils.equals(credentials.getAWSAccessKeyId(), other.getAWSAccessKeyId())
+                    && ObjectUtils.equals(credentials.getAWSSecretKey(), other.getAWSSecretKey());
+        }
+
+        protected boolean acquire() {
+            boolean ret = false;
+            for (int count = references.get(); 0 < count && !ret; count = references.get()) {
+                ret = references.compareAndSet(count, count + 1);
+            }
+            return ret;
+        }
+
+        protected void release() {
+            if (0 == references.decrementAndGet()) {
+                amazonEC2.shutdown();
+            }
+        }
+
+        /**
+         * Drops the reference of the pool, the client shuts down as soon as
+         * the calls in flight are done
+         */
+        public void retire() {
+            if (retired.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        public boolean isShutdown() {
+            return 0 == references.get();
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+         * java.lang.reflect.Method, java.lang.Object[])
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object ret = null;
+            if (Object.class == method.getDeclaringClass()) {
+                ret = method.invoke(this, args);
+            } else if (!"shutdown".equals(method.getName())) {
+                if (!acquire()) {
+                    throw new AmazonClientException("The client was shut down after a configuration change");
+                }
+                try {
+                    ret = method.invoke(amazonEC2, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                } finally {
+                    release();
+                }
+            }
+            return ret;
+        }
+    }
+
+    protected String getKey(String profile, String region) {
+        return profile + "|" + region;
+    }
+
+    protected AmazonEC2 createClient(AWSCredentials credentials, String region) {
+        AmazonEC2Client ret = new AmazonEC2Client(credentials);
+        ret.setEndpoint("https://ec2." + region + ".amazonaws.com");
+        return ret;
+    }
+
+    /**
+     * @param profile
+     * @param credentials
+     * @param region
+     * @return the pooled client of the profile for the region, a pending new
+     *         one if there was none or the credentials of the profile
+     *         changed, which replaces the pooled one on
+     *         {@link #commit(String)}. Shutting the returned client down has
+     *         no effect, the pool owns it.
+     */
+    public AmazonEC2 get(String profile, AWSCredentials credentials, String region) {
+        String key = getKey(profile, region);
+        PooledClient ret = clients.get(key);
+        if (null == ret || !ret.matches(credentials) || ret.isShutdown()) {
+            ret = pending.get(key);
+            if (null == ret || !ret.matches(credentials)) {
+                PooledClient created = new PooledClient(credentials, createClient(credentials, region));
+                PooledClient previous = pending.put(key, created);
+                if (null != previous) {
+                    previous.retire();
+                }
+                ret = created;
+            }
+        }
+        return ret.handle;
+    }
+
+    /**
+     * Puts the pending clients of the profile in use, retiring the ones they
+     * replace
+     * 
+     * @param profile
+     */
+    public void commit(String profile) {
+        for (Map.Entry<String, PooledClient> entry : pending.entrySet()) {
+            if (entry.getKey().startsWith(profile + "|") && pending.remove(entry.getKey(), entry.getValue())) {
+                PooledClient previous = clients.put(entry.getKey(), entry.getValue());
+                if (null != previous) {
+                    Logger.getLogger(ClientPool.class.getName()).log(Level.FINE, "Replacing client " + entry.getKey());
+                    previous.retire();
+                }
+            }
+        }
+    }
+
+    /**
+     * Retires the pending clients of the profile, leaving the ones in use
+     * alone
+     * 
+     * @param profile
+     */
+    public void discard(String profile) {
+        for (Map.Entry<String, PooledClient> entry : pending.entrySet()) {
+            if (entry.getKey().startsWith(profile + "|") && pending.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().retire();
+            }
+        }
+    }
+
+    /**
+     * Retires the clients of the profile for regions no longer in use
+     * 
+     * @param profile
+     * @param regions
+     */
+    public void retain(String profile, Collection<String> regions) {
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            if (entry.getKey().startsWith(profile + "|")
+                    && !regions.contains(entry.getKey().substring(profile.length() + 1))) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Retires every client of the profile
+     * 
+     * @param profile
+     */
+    public void retire(String profile) {
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            if (entry.getKey().startsWith(profile + "|")) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public void retireAll() {
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            retire(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, PooledClient> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().retire();
+            }
+        }
+    }
+
+    protected void retire(String key, PooledClient client) {
+        if (clients.remove(key, client)) {
+            Logger.getLogger(ClientPool.class.getName()).log(Level.FINE, "Retiring client " + key);
+            client.retire();
+        }
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ClientPool [clients=" + clients.keySet() + ", pending=" + pending.keySet() + "]";
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+
+/**
+ * Immutable set of the clients of one profile, one per region. Readers grab
+ * the current set without locking and a reconfiguration swaps in a whole new
+ * set.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class ConnectionSet {
+
+    protected final String profile;
+
+    protected final Map<String, AmazonEC2> connections;
+
+    protected final String defaultRegion;
+
+    /**
+     * @param profile
+     * @param connections
+     *            keyed by region, the first one being the default region
+     */
+    public ConnectionSet(String profile, Map<String, AmazonEC2> connections) {
+        super();
+        if (connections.isEmpty()) {
+            throw new IllegalArgumentException("No regions for profile " + profile);
+        }
+        this.profile = profile;
+        this.connections = Collections.unmodifiableMap(new LinkedHashMap<String, AmazonEC2>(connections));
+        defaultRegion = connections.keySet().iterator().next();
+    }
+
+    /**
+     * @return the profile
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the defaultRegion
+     */
+    public String getDefaultRegion() {
+        return defaultRegion;
+    }
+
+    /**
+     * @return the client of the default region
+     */
+    public AmazonEC2 getConnection() {
+        return connections.get(defaultRegion);
+    }
+
+    /**
+     * @param region
+     * @return the client of the region, null if the region is not part of
+     *         the set
+     */
+    public AmazonEC2 getConnection(String region) {
+        return null == region ? getConnection() : connections.get(region);
+    }
+
+    /**
+     * @return the regions, default region first
+     */
+    public List<String> getRegions() {
+        return new ArrayList<String>(connections.keySet());
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ConnectionSet [profile=" + profile + ", regions=" + connections.keySet() + "]";
+    }
+
+}
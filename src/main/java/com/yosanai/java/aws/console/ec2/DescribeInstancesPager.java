@@ -0,0 +1,279 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+
+/**
+ * Walks the instances of an account one page at a time. DescribeInstances
+ * cannot paginate, so pages are carved out either by explicit instance ids or
+ * by instance id prefix filters, which keeps each response, and the memory it
+ * takes, close to the page size. The 8 digit ids are random from their first
+ * digit (<code>i-0*</code> ... <code>i-f*</code>) while the 17 digit ones all
+ * start with <code>i-0</code> and are split on the digits after it. Prefixes
+ * expected to be small share a request, and accounts expected to fit in a
+ * page are described in a single unfiltered call.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class DescribeInstancesPager implements Iterator<List<InstanceRecord>> {
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * 
+     */
+    public static final int MAX_PREFIX_DEPTH = 3;
+
+    /**
+     * The length of the 8 digit instance ids, longer ones have 17 digits
+     */
+    public static final int SHORT_ID_LENGTH = 10;
+
+    /**
+     * 
+     */
+    public static final int MAX_FILTER_VALUES = 200;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    protected final AmazonEC2 amazonEC2;
+
+    protected final String region;
+
+    protected final Iterator<DescribeInstancesRequest> requests;
+
+    /**
+     * @param amazonEC2
+     * @param region
+     *            the region <code>amazonEC2</code> talks to
+     * @param requests
+     *            one request per page
+     */
+    public DescribeInstancesPager(AmazonEC2 amazonEC2, String region, Collection<DescribeInstancesRequest> requests) {
+        super();
+        this.amazonEC2 = amazonEC2;
+        this.region = region;
+        this.requests = new ArrayList<DescribeInstancesRequest>(requests).iterator();
+    }
+
+    /**
+     * @param amazonEC2
+     * @param region
+     * @param instanceIds
+     * @param pageSize
+     * @return a pager over the given instances, <code>pageSize</code> ids per
+     *         call. Ids are passed as a filter so ids that do not exist in the
+     *         region are skipped instead of failing the call.
+     */
+    public static DescribeInstancesPager byIds(AmazonEC2 amazonEC2, String region, Collection<String> instanceIds,
+            int pageSize) {
+        List<DescribeInstancesRequest> requests = new ArrayList<DescribeInstancesRequest>();
+        List<String> page = new ArrayList<String>();
+        for (String instanceId : instanceIds) {
+            page.add(instanceId);
+            if (page.size() >= pageSize) {
+                requests.add(byIds(page));
+                page = new ArrayList<String>();
+            }
+        }
+        if (!page.isEmpty()) {
+            requests.add(byIds(page));
+        }
+        return new DescribeInstancesPager(amazonEC2, region, requests);
+    }
+
+    /**
+     * @param instanceIds
+     * @return a request for the given instances that does not fail on unknown
+     *         ids
+     */
+    public static DescribeInstancesRequest byIds(Collection<String> instanceIds) {
+        return new DescribeInstancesRequest().withFilters(new Filter("instance-id").withValues(instanceIds));
+    }
+
+    /**
+     * @param instanceIds
+     * @return the number of 8 digit and of 17 digit ids, in that order
+     */
+    public static int[] countIds(Collection<String> instanceIds) {
+        int[] ret = new int[2];
+        for (String instanceId : instanceIds) {
+            ret[SHORT_ID_LENGTH < instanceId.length() ? 1 : 0]++;
+        }
+        return ret;
+    }
+
+    /**
+     * @param amazonEC2
+     * @param region
+     * @param shortCount
+     *            roughly how many instances with 8 digit ids the region has,
+     *            e.g. from the last refresh
+     * @param longCount
+     *            roughly how many instances with 17 digit ids the region has
+     * @param pageSize
+     * @param filters
+     *            applied to every request, may be empty
+     * @return a pager over every instance of the region, a single page if the
+     *         expected counts fit in one, else split by id prefix deep enough
+     *         to keep pages near <code>pageSize</code>
+     */
+    public static DescribeInstancesPager byPrefix(AmazonEC2 amazonEC2, String region, int shortCount,
+            int longCount, int pageSize, Collection<Filter> filters) {
+        List<DescribeInstancesRequest> requests = new ArrayList<DescribeInstancesRequest>();
+        if ((long) shortCount + longCount <= pageSize) {
+            requests.add(new DescribeInstancesRequest().withFilters(filters));
+        } else {
+            List<String> prefixes = new ArrayList<String>();
+            List<Double> sizes = new ArrayList<Double>();
+            if (0 < longCount) {
+                double expected = longCount + shortCount / (double) HEX.length;
+                addPrefixes(prefixes, sizes, "i-0", getDepth(expected, pageSize), expected);
+                double perDigit = shortCount / (double) HEX.length;
+                for (int digit = 1; digit < HEX.length; digit++) {
+                    addPrefixes(prefixes, sizes, "i-" + HEX[digit], getDepth(perDigit, pageSize), perDigit);
+                }
+            } else {
+                addPrefixes(prefixes, sizes, "i-", getDepth(shortCount, pageSize), shortCount);
+            }
+            List<String> values = new ArrayList<String>();
+            double size = 0;
+            for (int index = 0; index < prefixes.size(); index++) {
+                if (!values.isEmpty()
+                        && (size + sizes.get(index) > pageSize || MAX_FILTER_VALUES <= values.size())) {
+                    requests.add(byPrefixes(values, filters));
+                    values = new ArrayList<String>();
+                    size = 0;
+                }
+                values.add(prefixes.get(index) + "*");
+                size += sizes.get(index);
+            }
+            requests.add(byPrefixes(values, filters));
+        }
+        return new DescribeInstancesPager(amazonEC2, region, requests);
+    }
+
+    /**
+     * @param expected
+     * @param pageSize
+     * @return the number of hex digits to split <code>expected</code>
+     *         instances on to get pages of <code>pageSize</code>
+     */
+    protected static int getDepth(double expected, int pageSize) {
+        int ret = 0;
+        double pages = 1;
+        while (ret < MAX_PREFIX_DEPTH && expected > pages * pageSize) {
+            ret++;
+            pages *= HEX.length;
+        }
+        return ret;
+    }
+
+    /**
+     * Adds every extension of the prefix by <code>depth</code> hex digits
+     * along with the number of instances each is expected to match
+     */
+    protected static void addPrefixes(List<String> prefixes, List<Double> sizes, String prefix, int depth,
+            double expected) {
+        List<String> level = new ArrayList<String>();
+        level.add(prefix);
+        for (int digit = 0; digit < depth; digit++) {
+            List<String> next = new ArrayList<String>();
+            for (String current : level) {
+                for (char hex : HEX) {
+                    next.add(current + hex);
+                }
+            }
+            level = next;
+        }
+        for (String current : level) {
+            prefixes.add(current);
+            sizes.add(expected / level.size());
+        }
+    }
+
+    protected static DescribeInstancesRequest byPrefixes(List<String> values, Collection<Filter> filters) {
+        List<Filter> requestFilters = new ArrayList<Filter>(filters);
+        requestFilters.add(new Filter("instance-id").withValues(values));
+        return new DescribeInstancesRequest().withFilters(requestFilters);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.util.Iterator#hasNext()
+     */
+    @Override
+    public boolean hasNext() {
+        return requests.hasNext();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.util.Iterator#next()
+     */
+    @Override
+    public List<InstanceRecord> next() {
+        if (!requests.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        long now = System.currentTimeMillis();
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        List<Reservation> reservations = amazonEC2.describeInstances(requests.next()).getReservations();
+        if (null != reservations) {
+            for (Reservation reservation : reservations) {
+                ret.addAll(InstanceRecord.fromReservation(reservation, region, now));
+            }
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.util.Iterator#remove()
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+}
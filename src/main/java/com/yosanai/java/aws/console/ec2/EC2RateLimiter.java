@@ -0,0 +1,342 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ec2.AmazonEC2;
+
+/**
+ * Client side rate limiting for EC2. Every API action gets its own
+ * {@link TokenBucket}, throttled calls are retried after an exponential,
+ * jittered back off and the bucket of the action slows down until calls go
+ * through again.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class EC2RateLimiter {
+
+    /**
+     * 
+     */
+    public static final double DEFAULT_DESCRIBE_RATE = 10;
+
+    /**
+     * 
+     */
+    public static final double DEFAULT_MUTATE_RATE = 5;
+
+    /**
+     * 
+     */
+    public static final double MIN_RATE = 0.2;
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_MAX_RETRIES = 5;
+
+    /**
+     * 
+     */
+    public static final long BASE_BACKOFF = 200;
+
+    /**
+     * 
+     */
+    public static final long MAX_BACKOFF = 20 * 1000L;
+
+    protected static final Set<String> THROTTLE_CODES = new HashSet<String>(Arrays.asList("RequestLimitExceeded",
+            "Throttling", "ThrottlingException"));
+
+    protected static final Set<String> UNLIMITED_METHODS = new HashSet<String>(Arrays.asList("setEndpoint",
+            "shutdown", "getCachedResponseMetadata"));
+
+    protected final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+    protected final Random random = new Random();
+
+    protected volatile double describeRate = DEFAULT_DESCRIBE_RATE;
+
+    protected volatile double mutateRate = DEFAULT_MUTATE_RATE;
+
+    protected volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    protected final AtomicLong calls = new AtomicLong();
+
+    protected final AtomicLong throttles = new AtomicLong();
+
+    protected final AtomicLong waits = new AtomicLong();
+
+    protected final AtomicLong waitMillis = new AtomicLong();
+
+    protected final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param amazonEC2
+     * @return a client that goes through this limiter before every call to
+     *         <code>amazonEC2</code>
+     */
+    public AmazonEC2 wrap(AmazonEC2 amazonEC2) {
+        return wrap(amazonEC2, null);
+    }
+
+    /**
+     * @param amazonEC2
+     * @param scope
+     *            EC2 limits each region on its own, clients wrapped with
+     *            different scopes get their own buckets
+     * @return a client that goes through this limiter before every call to
+     *         <code>amazonEC2</code>
+     */
+    public AmazonEC2 wrap(final AmazonEC2 amazonEC2, final String scope) {
+        return (AmazonEC2) Proxy.newProxyInstance(AmazonEC2.class.getClassLoader(),
+                new Class<?>[] { AmazonEC2.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object ret = null;
+                        if (Object.class == method.getDeclaringClass()
+                                || UNLIMITED_METHODS.contains(method.getName())) {
+                            ret = invokeDirect(amazonEC2, method, args);
+                        } else {
+                            ret = invokeLimited(amazonEC2, scope, method, args);
+                        }
+                        return ret;
+                    }
+                });
+    }
+
+    protected Object invokeDirect(AmazonEC2 amazonEC2, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(amazonEC2, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    protected Object invokeLimited(AmazonEC2 amazonEC2, String scope, Method method, Object[] args)
+            throws Throwable {
+        TokenBucket bucket = getBucket(scope, method.getName());
+        for (int attempt = 0;; attempt++) {
+            long wait = bucket.reserve();
+            if (0 < wait) {
+                waits.incrementAndGet();
+                waitMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(wait));
+                pause(wait);
+            }
+            calls.incrementAndGet();
+            try {
+                Object ret = method.invoke(amazonEC2, args);
+                bucket.onSuccess();
+                return ret;
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+                if (!isThrottled(cause)) {
+                    throw cause;
+                }
+                throttles.incrementAndGet();
+                bucket.onThrottle();
+                if (attempt >= maxRetries) {
+                    throw cause;
+                }
+                retries.incrementAndGet();
+                long backoff = getBackoff(attempt);
+                Logger.getLogger(EC2RateLimiter.class.getName()).log(Level.FINE,
+                        method.getName() + " throttled, retrying in " + backoff + "ms");
+                pause(TimeUnit.MILLISECONDS.toNanos(backoff));
+            }
+        }
+    }
+
+    /**
+     * Waits on behalf of a call to EC2, whose methods cannot throw
+     * {@link InterruptedException}
+     * 
+     * @param nanos
+     * @throws AmazonClientException
+     *             caused by the {@link InterruptedException} if the thread is
+     *             interrupted, which stays interrupted
+     */
+    protected void pause(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting to call EC2", ex);
+        }
+    }
+
+    protected boolean isThrottled(Throwable ex) {
+        return ex instanceof AmazonServiceException
+                && THROTTLE_CODES.contains(((AmazonServiceException) ex).getErrorCode());
+    }
+
+    /**
+     * @param attempt
+     * @return a random back off between zero and the exponential back off of
+     *         the attempt
+     */
+    protected long getBackoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 16));
+        synchronized (random) {
+            return 1 + (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    protected TokenBucket getBucket(String scope, String action) {
+        String key = null == scope ? action : scope + "/" + action;
+        TokenBucket ret = buckets.get(key);
+        if (null == ret) {
+            buckets.putIfAbsent(key, new TokenBucket(isReadOnly(action) ? describeRate : mutateRate, MIN_RATE));
+            ret = buckets.get(key);
+        }
+        return ret;
+    }
+
+    protected boolean isReadOnly(String action) {
+        return action.startsWith("describe") || action.startsWith("get");
+    }
+
+    /**
+     * Applies a new maximum rate to the buckets of one kind of action, which
+     * keep the rate throttling brought them down to
+     * 
+     * @param readOnly
+     * @param rate
+     */
+    protected void updateBuckets(boolean readOnly, double rate) {
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            if (readOnly == isReadOnly(entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1))) {
+                entry.getValue().setMaxRate(rate);
+            }
+        }
+    }
+
+    /**
+     * @param describeRate
+     *            calls per second allowed for each describe action
+     */
+    public void setDescribeRate(double describeRate) {
+        if (this.describeRate != describeRate) {
+            this.describeRate = describeRate;
+            updateBuckets(true, describeRate);
+        }
+    }
+
+    /**
+     * @param mutateRate
+     *            calls per second allowed for each mutating action
+     */
+    public void setMutateRate(double mutateRate) {
+        if (this.mutateRate != mutateRate) {
+            this.mutateRate = mutateRate;
+            updateBuckets(false, mutateRate);
+        }
+    }
+
+    /**
+     * @param maxRetries
+     *            the number of times a throttled call is retried
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the number of calls sent to EC2, retries included
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * @return the number of calls EC2 throttled
+     */
+    public long getThrottleCount() {
+        return throttles.get();
+    }
+
+    /**
+     * @return the number of calls that had to wait for a token
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    /**
+     * @return the total time spent waiting for tokens
+     */
+    public long getWaitMillis() {
+        return waitMillis.get();
+    }
+
+    /**
+     * @return the number of throttled calls that were retried
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return the current rate of every action used so far
+     */
+    public Map<String, Double> getRates() {
+        Map<String, Double> ret = new TreeMap<String, Double>();
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            ret.put(entry.getKey(), entry.getValue().getRate());
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "EC2RateLimiter [calls=" + calls + ", throttles=" + throttles + ", waits=" + waits + ", waitMillis="
+                + waitMillis + ", retries=" + retries + "]";
+    }
+
+}
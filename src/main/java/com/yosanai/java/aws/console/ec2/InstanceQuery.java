@@ -0,0 +1,366 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.amazonaws.services.ec2.model.Filter;
+import com.yosanai.java.aws.console.inventory.InstanceIndex;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+
+/**
+ * A compiled instance filter expression such as
+ * <code>state=running AND tag:env=prod AND az=us-east-1a</code>.
+ * <p>
+ * Terms are <code>key=value</code> or <code>key!=value</code> joined by
+ * <code>AND</code>. A value may list alternatives separated by commas, be
+ * quoted and use the <code>*</code> and <code>?</code> wildcards. Keys are
+ * the short names below, <code>tag:&lt;name&gt;</code>, <code>region</code>
+ * or any EC2 DescribeInstances filter name.
+ * <p>
+ * Positive terms become EC2 {@link Filter}s so only matching instances come
+ * back over the wire, the rest (negations and <code>region</code>) are
+ * evaluated locally on what EC2 returned.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceQuery {
+
+    /**
+     * 
+     */
+    public static final String REGION = "region";
+
+    /**
+     * 
+     */
+    public static final String TAG_PREFIX = "tag:";
+
+    protected static final Map<String, String> FILTER_NAMES = new HashMap<String, String>();
+
+    protected static final Map<String, String> ALIASES = new HashMap<String, String>();
+
+    protected static final Pattern TOKEN = Pattern.compile("(?:\"[^\"]*\"|[^\\s\"])+");
+
+    protected static final Pattern VALUE = Pattern.compile("(?:\"[^\"]*\"|[^,\"])+");
+
+    static {
+        FILTER_NAMES.put("state", "instance-state-name");
+        FILTER_NAMES.put("id", "instance-id");
+        FILTER_NAMES.put("type", "instance-type");
+        FILTER_NAMES.put("az", "availability-zone");
+        FILTER_NAMES.put("key", "key-name");
+        FILTER_NAMES.put("image", "image-id");
+        FILTER_NAMES.put("group", "group-name");
+        FILTER_NAMES.put("ip", "ip-address");
+        FILTER_NAMES.put("private-ip", "private-ip-address");
+        FILTER_NAMES.put("dns", "dns-name");
+        FILTER_NAMES.put("private-dns", "private-dns-name");
+        for (Map.Entry<String, String> entry : FILTER_NAMES.entrySet()) {
+            ALIASES.put(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * A single <code>key=value</code> or <code>key!=value</code> term
+     */
+    protected static class Term {
+
+        protected final String key;
+
+        protected final String filterName;
+
+        protected final boolean negated;
+
+        protected final List<String> values;
+
+        protected final List<Pattern> patterns = new ArrayList<Pattern>();
+
+        public Term(String key, String filterName, boolean negated, List<String> values) {
+            super();
+            this.key = key;
+            this.filterName = filterName;
+            this.negated = negated;
+            this.values = values;
+            for (String value : values) {
+                patterns.add(toPattern(value));
+            }
+        }
+
+        /**
+         * @return true if the term can be evaluated on a record in memory
+         */
+        public boolean isLocal() {
+            return REGION.equals(key) || key.startsWith(TAG_PREFIX) || FILTER_NAMES.containsKey(key);
+        }
+
+        public boolean matches(InstanceRecord record) {
+            boolean found = false;
+            for (String value : getValues(key, record)) {
+                found |= find(value);
+            }
+            return negated != found;
+        }
+
+        public boolean matches(String value) {
+            return negated != find(value);
+        }
+
+        protected boolean find(String value) {
+            boolean ret = false;
+            for (int index = 0; null != value && !ret && index < patterns.size(); index++) {
+                ret = patterns.get(index).matcher(value).matches();
+            }
+            return ret;
+        }
+
+        @Override
+        public String toString() {
+            return key + (negated ? "!=" : "=") + StringUtils.join(values, ",");
+        }
+    }
+
+    protected final String expression;
+
+    protected final List<Term> serverTerms = new ArrayList<Term>();
+
+    protected final List<Term> localTerms = new ArrayList<Term>();
+
+    protected InstanceQuery(String expression) {
+        super();
+        this.expression = expression;
+    }
+
+    /**
+     * @param expression
+     * @return the compiled query, matching everything if the expression is
+     *         blank
+     * @throws IllegalArgumentException
+     *             if the expression cannot be parsed
+     */
+    public static InstanceQuery parse(String expression) {
+        InstanceQuery ret = new InstanceQuery(StringUtils.trimToEmpty(expression));
+        Set<String> filterNames = new HashSet<String>();
+        List<String> tokens = new ArrayList<String>();
+        Matcher matcher = TOKEN.matcher(ret.expression);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        tokens.add("AND");
+        StringBuilder term = new StringBuilder();
+        for (String token : tokens) {
+            if ("AND".equalsIgnoreCase(token)) {
+                if (0 == term.length()) {
+                    if (1 < tokens.size()) {
+                        throw new IllegalArgumentException("Missing term around AND in " + expression);
+                    }
+                } else {
+                    Term compiled = compile(term.toString());
+                    if (!compiled.negated && !REGION.equals(compiled.key) && filterNames.add(compiled.filterName)) {
+                        ret.serverTerms.add(compiled);
+                    } else if (compiled.isLocal()) {
+                        ret.localTerms.add(compiled);
+                    } else {
+                        throw new IllegalArgumentException("Cannot evaluate " + compiled + " locally, use one of "
+                                + FILTER_NAMES.keySet() + ", " + TAG_PREFIX + "<name> or " + REGION);
+                    }
+                    term.setLength(0);
+                }
+            } else {
+                term.append(token);
+            }
+        }
+        return ret;
+    }
+
+    protected static Term compile(String term) {
+        int equals = term.indexOf('=');
+        if (1 > equals) {
+            throw new IllegalArgumentException("Expected key=value instead of " + term);
+        }
+        boolean negated = '!' == term.charAt(equals - 1);
+        String key = term.substring(0, negated ? equals - 1 : equals).trim();
+        if (!key.regionMatches(true, 0, TAG_PREFIX, 0, TAG_PREFIX.length())) {
+            key = key.toLowerCase();
+            if (ALIASES.containsKey(key)) {
+                key = ALIASES.get(key);
+            }
+        } else {
+            key = TAG_PREFIX + key.substring(TAG_PREFIX.length());
+        }
+        List<String> values = new ArrayList<String>();
+        Matcher matcher = VALUE.matcher(term.substring(equals + 1));
+        while (matcher.find()) {
+            values.add(StringUtils.remove(matcher.group(), '"'));
+        }
+        if (StringUtils.isBlank(key) || values.isEmpty()) {
+            throw new IllegalArgumentException("Expected key=value instead of " + term);
+        }
+        String filterName = FILTER_NAMES.containsKey(key) ? FILTER_NAMES.get(key) : key;
+        return new Term(key, filterName, negated, values);
+    }
+
+    /**
+     * @param value
+     * @return a pattern matching the value the way EC2 filters do,
+     *         <code>*</code> and <code>?</code> being wildcards
+     */
+    protected static Pattern toPattern(String value) {
+        StringBuilder ret = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char ch : value.toCharArray()) {
+            if ('*' == ch || '?' == ch) {
+                if (0 < literal.length()) {
+                    ret.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                ret.append('*' == ch ? ".*" : ".");
+            } else {
+                literal.append(ch);
+            }
+        }
+        if (0 < literal.length()) {
+            ret.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(ret.toString(), Pattern.DOTALL);
+    }
+
+    protected static List<String> getValues(String key, InstanceRecord record) {
+        return InstanceIndex.getValues(key, record);
+    }
+
+    /**
+     * @return the EC2 filters for the terms EC2 can evaluate
+     */
+    public List<Filter> getFilters() {
+        List<Filter> ret = new ArrayList<Filter>();
+        for (Term term : serverTerms) {
+            ret.add(new Filter(term.filterName).withValues(term.values));
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if every term, the ones sent to EC2 included, can be
+     *         evaluated on records in memory
+     */
+    public boolean isLocal() {
+        boolean ret = true;
+        for (Term term : serverTerms) {
+            ret &= term.isLocal();
+        }
+        return ret;
+    }
+
+    /**
+     * @param record
+     *            as returned by a describe call using {@link #getFilters()}
+     * @return true if the record passes the terms EC2 could not evaluate
+     */
+    public boolean matches(InstanceRecord record) {
+        boolean ret = true;
+        for (int index = 0; ret && index < localTerms.size(); index++) {
+            ret = localTerms.get(index).matches(record);
+        }
+        return ret;
+    }
+
+    /**
+     * @param record
+     *            any record, only valid if {@link #isLocal()}
+     * @return true if the record passes every term
+     */
+    public boolean matchesAll(InstanceRecord record) {
+        boolean ret = matches(record);
+        for (int index = 0; ret && index < serverTerms.size(); index++) {
+            ret = serverTerms.get(index).matches(record);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the accepted values of each positive term without wildcards,
+     *         keyed by dimension, for an {@link InstanceIndex} lookup. The
+     *         records found still have to pass {@link #matchesAll}.
+     */
+    public Map<String, List<String>> getEqualityTerms() {
+        Map<String, List<String>> ret = new LinkedHashMap<String, List<String>>();
+        List<Term> terms = new ArrayList<Term>(serverTerms);
+        terms.addAll(localTerms);
+        for (Term term : terms) {
+            boolean exact = !term.negated && !ret.containsKey(term.key);
+            for (String value : term.values) {
+                exact &= -1 == StringUtils.indexOfAny(value, "*?");
+            }
+            if (exact) {
+                ret.put(term.key, term.values);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param region
+     * @return false if the query rules out every instance of the region
+     */
+    public boolean acceptsRegion(String region) {
+        boolean ret = true;
+        for (Term term : localTerms) {
+            if (REGION.equals(term.key)) {
+                ret &= term.matches(region);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if the query matches everything
+     */
+    public boolean isEmpty() {
+        return serverTerms.isEmpty() && localTerms.isEmpty();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+}
@@ -0,0 +1,320 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.RunInstancesRequest;
+import com.amazonaws.services.ec2.model.RunInstancesResult;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * Launches large instance counts as chunks run concurrently. Each chunk has
+ * its own client token derived from the token of the launch, so sending a
+ * chunk again, or running the whole launch again with the same token, never
+ * starts instances twice. A chunk asks for all of its instances or none, so
+ * a capacity shortfall fails the chunk, which can then be retried, instead of
+ * passing for a smaller launch. Each chunk is tagged as soon as it is created
+ * and reported to the listener.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class LaunchPipeline {
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 50;
+
+    /**
+     * 
+     */
+    public static final int MAX_TAG_ATTEMPTS = 5;
+
+    /**
+     * 
+     */
+    public static final long TAG_RETRY_DELAY = 1000L;
+
+    /**
+     * Receives the outcome of every chunk, on the thread that ran it
+     */
+    public interface LaunchListener {
+
+        public void chunkLaunched(LaunchChunk chunk);
+
+        public void chunkFailed(LaunchChunk chunk, Exception ex);
+    }
+
+    /**
+     * One RunInstances call of a launch
+     */
+    public static class LaunchChunk {
+
+        protected final int index;
+
+        protected final int count;
+
+        protected final String clientToken;
+
+        protected volatile List<String> instanceIds = Collections.emptyList();
+
+        protected volatile Exception failure;
+
+        public LaunchChunk(int index, int count, String clientToken) {
+            super();
+            this.index = index;
+            this.count = count;
+            this.clientToken = clientToken;
+        }
+
+        /**
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the number of instances asked for
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the clientToken
+         */
+        public String getClientToken() {
+            return clientToken;
+        }
+
+        /**
+         * @return the instances launched, empty until the chunk ran
+         */
+        public List<String> getInstanceIds() {
+            return instanceIds;
+        }
+
+        /**
+         * @return the failure, null if the chunk succeeded or did not run
+         *         yet
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "LaunchChunk [index=" + index + ", count=" + count + ", launched=" + instanceIds.size()
+                    + (null == failure ? "" : ", failure=" + failure.getMessage()) + "]";
+        }
+    }
+
+    protected final AmazonEC2 amazonEC2;
+
+    protected final Executor executor;
+
+    protected int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * @param amazonEC2
+     * @param executor
+     *            runs the chunks, its size bounds the chunks in flight
+     */
+    public LaunchPipeline(AmazonEC2 amazonEC2, Executor executor) {
+        super();
+        this.amazonEC2 = amazonEC2;
+        this.executor = executor;
+    }
+
+    /**
+     * @param chunkSize
+     *            the most instances asked for in one call
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * @param count
+     * @param clientToken
+     *            the token of the whole launch
+     * @return the chunks the launch is split into
+     */
+    public List<LaunchChunk> plan(int count, String clientToken) {
+        List<LaunchChunk> ret = new ArrayList<LaunchChunk>();
+        for (int index = 0; index * chunkSize < count; index++) {
+            ret.add(new LaunchChunk(index, Math.min(chunkSize, count - index * chunkSize), clientToken + "-"
+                    + index));
+        }
+        return ret;
+    }
+
+    /**
+     * Launches <code>count</code> instances like the template and waits for
+     * every chunk. Failed chunks are reported, not thrown, so the launch can
+     * be run again with the same token to retry only them.
+     * 
+     * @param template
+     *            the counts and client token of the template are ignored
+     * @param count
+     * @param clientToken
+     * @param tags
+     *            applied to every chunk as soon as it is created, may be
+     *            empty
+     * @param listener
+     *            may be null
+     * @return the chunks with their instances or failures
+     * @throws InterruptedException
+     *             if interrupted while chunks were running, chunks not
+     *             started yet are cancelled
+     */
+    public List<LaunchChunk> launch(final RunInstancesRequest template, int count, String clientToken,
+            final List<Tag> tags, final LaunchListener listener) throws InterruptedException {
+        List<LaunchChunk> ret = plan(count, clientToken);
+        CompletionService<LaunchChunk> completionService = new ExecutorCompletionService<LaunchChunk>(executor);
+        List<Future<LaunchChunk>> futures = new ArrayList<Future<LaunchChunk>>();
+        try {
+            for (final LaunchChunk chunk : ret) {
+                futures.add(completionService.submit(new Callable<LaunchChunk>() {
+
+                    @Override
+                    public LaunchChunk call() throws Exception {
+                        try {
+                            launchChunk(template, chunk, tags);
+                            if (null != listener) {
+                                listener.chunkLaunched(chunk);
+                            }
+                        } catch (Exception ex) {
+                            chunk.failure = ex;
+                            if (null != listener) {
+                                listener.chunkFailed(chunk, ex);
+                            }
+                        }
+                        return chunk;
+                    }
+                }));
+            }
+            for (int done = 0; done < futures.size(); done++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException ex) {
+                    // failures are recorded on the chunk
+                }
+            }
+        } finally {
+            for (Future<LaunchChunk> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return ret;
+    }
+
+    protected void launchChunk(RunInstancesRequest template, LaunchChunk chunk, List<Tag> tags) throws Exception {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        RunInstancesRequest request = copy(template);
+        request.setMinCount(chunk.count);
+        request.setMaxCount(chunk.count);
+        request.setClientToken(chunk.clientToken);
+        RunInstancesResult result = amazonEC2.runInstances(request);
+        List<String> instanceIds = new ArrayList<String>();
+        for (Instance instance : result.getReservation().getInstances()) {
+            instanceIds.add(instance.getInstanceId());
+        }
+        chunk.instanceIds = Collections.unmodifiableList(instanceIds);
+        if (null != tags && !tags.isEmpty() && !instanceIds.isEmpty()) {
+            tag(instanceIds, tags);
+        }
+        if (instanceIds.size() < chunk.count) {
+            throw new Exception("Launched " + instanceIds.size() + " of " + chunk.count + " instances");
+        }
+    }
+
+    /**
+     * Tags freshly launched instances, retrying while EC2 does not know about
+     * them yet
+     * 
+     * @param instanceIds
+     * @param tags
+     * @throws Exception
+     */
+    protected void tag(List<String> instanceIds, List<Tag> tags) throws Exception {
+        for (int attempt = 1;; attempt++) {
+            try {
+                amazonEC2.createTags(new CreateTagsRequest(instanceIds, tags));
+                break;
+            } catch (AmazonServiceException ex) {
+                if (attempt >= MAX_TAG_ATTEMPTS || null == ex.getErrorCode()
+                        || !ex.getErrorCode().startsWith("InvalidInstanceID")) {
+                    throw ex;
+                }
+                Thread.sleep(attempt * TAG_RETRY_DELAY);
+            }
+        }
+    }
+
+    protected RunInstancesRequest copy(RunInstancesRequest template) {
+        RunInstancesRequest ret = new RunInstancesRequest();
+        ret.setImageId(template.getImageId());
+        ret.setInstanceType(template.getInstanceType());
+        ret.setKeyName(template.getKeyName());
+        ret.setSecurityGroups(template.getSecurityGroups());
+        ret.setUserData(template.getUserData());
+        ret.setPlacement(template.getPlacement());
+        ret.setKernelId(template.getKernelId());
+        ret.setRamdiskId(template.getRamdiskId());
+        ret.setBlockDeviceMappings(template.getBlockDeviceMappings());
+        ret.setMonitoring(template.getMonitoring());
+        ret.setSubnetId(template.getSubnetId());
+        ret.setDisableApiTermination(template.getDisableApiTermination());
+        ret.setInstanceInitiatedShutdownBehavior(template.getInstanceInitiatedShutdownBehavior());
+        ret.setLicense(template.getLicense());
+        ret.setPrivateIpAddress(template.getPrivateIpAddress());
+        ret.setAdditionalInfo(template.getAdditionalInfo());
+        return ret;
+    }
+
+}
@@ -0,0 +1,176 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges several page iterators, each drained by its own task, into one. Pages
+ * come out in the order they arrive, so a slow source does not hold back the
+ * others and the whole walk takes about as long as the slowest source.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class ParallelPageIterator<T> implements Iterator<List<T>>, Closeable {
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    protected static final Object END = new Object();
+
+    protected static final long OFFER_WAIT = 100;
+
+    protected final BlockingQueue<Object> queue;
+
+    protected volatile boolean closed;
+
+    protected int running;
+
+    protected Object next;
+
+    /**
+     * @param sources
+     * @param executor
+     *            runs one task per source
+     * @param capacity
+     *            pages buffered before the sources have to wait for the reader
+     */
+    public ParallelPageIterator(Collection<? extends Iterator<List<T>>> sources, Executor executor, int capacity) {
+        super();
+        queue = new ArrayBlockingQueue<Object>(Math.max(1, capacity));
+        running = sources.size();
+        for (final Iterator<List<T>> source : sources) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (!closed && source.hasNext()) {
+                            offer(source.next());
+                        }
+                    } catch (RuntimeException ex) {
+                        offer(ex);
+                    } finally {
+                        offer(END);
+                    }
+                }
+            });
+        }
+    }
+
+    protected void offer(Object item) {
+        try {
+            while (!closed && !queue.offer(item, OFFER_WAIT, TimeUnit.MILLISECONDS)) {
+                // wait for the reader or for close
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.util.Iterator#hasNext()
+     */
+    @Override
+    public boolean hasNext() {
+        while (null == next && 0 < running && !closed) {
+            Object item = null;
+            try {
+                item = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                close();
+                break;
+            }
+            if (END == item) {
+                running--;
+            } else {
+                next = item;
+            }
+        }
+        return null != next;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.util.Iterator#next()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object ret = next;
+        next = null;
+        if (ret instanceof RuntimeException) {
+            close();
+            throw (RuntimeException) ret;
+        }
+        return (List<T>) ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.util.Iterator#remove()
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return true once every source ran to its end without being closed
+     */
+    public boolean isComplete() {
+        return !closed && 0 == running && null == next;
+    }
+
+    /**
+     * Stops the sources after their current page and drops whatever is
+     * buffered
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+
+}
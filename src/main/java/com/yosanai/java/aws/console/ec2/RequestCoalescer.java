@@ -0,0 +1,231 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+
+/**
+ * Single flight execution of read requests: while a request is in flight,
+ * identical requests attach to it and share its result instead of going to
+ * EC2 again. A call that fails because the thread running it was interrupted
+ * is not shared: the callers attached to it issue the call again.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class RequestCoalescer {
+
+    protected final ConcurrentHashMap<String, FutureTask<Object>> inFlight = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+    protected final AtomicLong executed = new AtomicLong();
+
+    protected final AtomicLong joined = new AtomicLong();
+
+    /**
+     * @param amazonEC2
+     * @return a client whose describe calls are coalesced
+     */
+    public AmazonEC2 wrap(AmazonEC2 amazonEC2) {
+        return wrap(amazonEC2, null);
+    }
+
+    /**
+     * @param amazonEC2
+     * @param scope
+     *            calls are only coalesced with calls of the same scope, such
+     *            as the region of the client
+     * @return a client whose describe calls are coalesced
+     */
+    public AmazonEC2 wrap(final AmazonEC2 amazonEC2, final String scope) {
+        return (AmazonEC2) Proxy.newProxyInstance(AmazonEC2.class.getClassLoader(),
+                new Class<?>[] { AmazonEC2.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+                        Callable<Object> call = new Callable<Object>() {
+
+                            @Override
+                            public Object call() throws Exception {
+                                try {
+                                    return method.invoke(amazonEC2, args);
+                                } catch (InvocationTargetException ex) {
+                                    Throwable cause = unwrap(ex.getCause());
+                                    if (cause instanceof Error) {
+                                        throw (Error) cause;
+                                    }
+                                    throw (Exception) cause;
+                                }
+                            }
+                        };
+                        Object ret = null;
+                        if (method.getName().startsWith("describe")) {
+                            ret = execute(getKey(scope, method, args), call);
+                        } else {
+                            try {
+                                ret = method.invoke(amazonEC2, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            }
+                        }
+                        return ret;
+                    }
+                });
+    }
+
+    protected String getKey(String scope, Method method, Object[] args) {
+        StringBuilder ret = new StringBuilder();
+        if (null != scope) {
+            ret.append(scope);
+            ret.append('/');
+        }
+        ret.append(method.getName());
+        if (null != args) {
+            for (Object arg : args) {
+                ret.append('|');
+                ret.append(arg);
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @param failure
+     * @return the failure without the wrapping of dynamic proxies
+     */
+    protected static Throwable unwrap(Throwable failure) {
+        Throwable ret = failure;
+        while ((ret instanceof UndeclaredThrowableException || ret instanceof InvocationTargetException)
+                && null != ret.getCause()) {
+            ret = ret.getCause();
+        }
+        return ret;
+    }
+
+    /**
+     * @param failure
+     * @return whether the failure comes from the thread running the call
+     *         being interrupted or cancelled rather than from the call
+     */
+    protected static boolean isInterruption(Throwable failure) {
+        boolean ret = false;
+        for (Throwable cause = failure; null != cause && !ret; cause = cause.getCause()) {
+            ret = cause instanceof InterruptedException || cause instanceof CancellationException
+                    || cause instanceof ClosedByInterruptException
+                    || (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException));
+        }
+        return ret;
+    }
+
+    /**
+     * Runs the call unless an identical one is already in flight, in which
+     * case its result is returned once it is done. If the call in flight was
+     * interrupted, the caller runs or joins the call again instead of
+     * failing.
+     * 
+     * @param key
+     *            identifies identical calls
+     * @param call
+     * @return the result of the call
+     * @throws Exception
+     *             whatever the call threw
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> call) throws Exception {
+        while (true) {
+            FutureTask<Object> task = new FutureTask<Object>((Callable<Object>) call);
+            FutureTask<Object> existing = inFlight.putIfAbsent(key, task);
+            boolean owner = null == existing;
+            if (owner) {
+                executed.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    inFlight.remove(key, task);
+                }
+            } else {
+                joined.incrementAndGet();
+                task = existing;
+            }
+            try {
+                return (T) task.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = unwrap(ex.getCause());
+                if (owner || !isInterruption(cause)) {
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw cause instanceof Exception ? (Exception) cause : ex;
+                }
+                inFlight.remove(key, task);
+            } catch (CancellationException ex) {
+                if (owner) {
+                    throw ex;
+                }
+                inFlight.remove(key, task);
+            }
+        }
+    }
+
+    /**
+     * @return the number of calls that actually went out
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return the number of calls that shared the result of one in flight
+     */
+    public long getJoinedCount() {
+        return joined.get();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "RequestCoalescer [executed=" + executed + ", joined=" + joined + ", inFlight=" + inFlight.size()
+                + "]";
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket whose refill rate follows AIMD: it grows by a fixed step after
+ * every successful call and is halved whenever EC2 throttles us
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class TokenBucket {
+
+    protected final double floor;
+
+    protected double minRate;
+
+    protected double maxRate;
+
+    protected double increment;
+
+    protected double rate;
+
+    protected double tokens;
+
+    protected long refilledAt = System.nanoTime();
+
+    /**
+     * @param rate
+     *            the initial and maximum number of calls per second
+     * @param minRate
+     *            the rate never drops below this
+     */
+    public TokenBucket(double rate, double minRate) {
+        super();
+        this.floor = minRate;
+        this.maxRate = rate;
+        this.minRate = Math.min(minRate, rate);
+        this.increment = Math.max(rate / 20, 0.05);
+        this.rate = rate;
+        this.tokens = rate;
+    }
+
+    protected void refill(long now) {
+        tokens = Math.min(Math.max(1, rate), tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+    }
+
+    /**
+     * Takes a token, reserving one from the future if the bucket is empty
+     * 
+     * @return how long, in nanoseconds, the caller has to wait before using
+     *         the token
+     */
+    public synchronized long reserve() {
+        refill(System.nanoTime());
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    /**
+     * Additive increase
+     */
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + increment);
+    }
+
+    /**
+     * Multiplicative decrease
+     */
+    public synchronized void onThrottle() {
+        refill(System.nanoTime());
+        rate = Math.max(minRate, rate / 2);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized double getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Changes the maximum rate, keeping the current rate below it so a
+     * bucket slowed down by throttling stays slow
+     * 
+     * @param maxRate
+     */
+    public synchronized void setMaxRate(double maxRate) {
+        refill(System.nanoTime());
+        this.maxRate = maxRate;
+        minRate = Math.min(floor, maxRate);
+        increment = Math.max(maxRate / 20, 0.05);
+        rate = Math.max(minRate, Math.min(rate, maxRate));
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+/**
+ * A single difference between two {@link InstanceSnapshot}s
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceDelta {
+
+    public enum Type {
+        ADDED, REMOVED, CHANGED
+    }
+
+    protected final Type type;
+
+    protected final InstanceRecord previous;
+
+    protected final InstanceRecord current;
+
+    /**
+     * @param type
+     * @param previous
+     *            null for {@link Type#ADDED}
+     * @param current
+     *            null for {@link Type#REMOVED}
+     */
+    public InstanceDelta(Type type, InstanceRecord previous, InstanceRecord current) {
+        super();
+        this.type = type;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the previous
+     */
+    public InstanceRecord getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the current
+     */
+    public InstanceRecord getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the instanceId
+     */
+    public String getInstanceId() {
+        return null == current ? previous.getInstanceId() : current.getInstanceId();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return type + " " + getInstanceId();
+    }
+
+}
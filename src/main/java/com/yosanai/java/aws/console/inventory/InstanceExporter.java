@@ -0,0 +1,466 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Writes instances of an {@link InstanceStore} one at a time as CSV, JSON
+ * lines or a user defined template such as
+ * <code>ssh ec2-user@${publicDnsName}</code>. The values of a row are read
+ * into a caller supplied array first, so the store can be read on its own
+ * thread in small batches while the records go straight to a writer, nothing
+ * but the current batch being held. An exporter keeps track of the records
+ * written and is meant for a single export.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public class InstanceExporter {
+
+    public enum Format {
+        CSV("CSV", "csv"), JSON_LINES("JSON Lines", "jsonl"), TEMPLATE("Template", "txt");
+
+        protected final String title;
+
+        protected final String extension;
+
+        private Format(String title, String extension) {
+            this.title = title;
+            this.extension = extension;
+        }
+
+        /**
+         * @return the title
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return the extension of the files written in the format
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see java.lang.Enum#toString()
+         */
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    /**
+     * The fields of an instance, named after the properties of
+     * {@link com.amazonaws.services.ec2.model.Instance} where there is one.
+     * <code>tag:&lt;key&gt;</code> is the value of a single tag.
+     */
+    public static final String[] FIELDS = { "instanceId", "publicDnsName", "publicIpAddress", "privateDnsName",
+            "privateIpAddress", "apiTermination", "state", "instanceType", "keyName", "groups", "availabilityZone",
+            "launchTime", "tags", "region" };
+
+    protected static final int FIELD_TAG = -1;
+
+    protected static final String LAUNCH_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    protected final Format format;
+
+    protected final String[] fields;
+
+    protected final int[] codes;
+
+    protected final String[] literals;
+
+    protected final SimpleDateFormat launchTimeFormat = new SimpleDateFormat(LAUNCH_TIME_FORMAT);
+
+    protected String separator = "\n";
+
+    protected boolean header = true;
+
+    protected long written;
+
+    /**
+     * @param format
+     *            {@link Format#CSV} or {@link Format#JSON_LINES}
+     * @param fields
+     *            the columns, in order
+     * @throws IllegalArgumentException
+     *             if a field is not known
+     */
+    public InstanceExporter(Format format, List<String> fields) {
+        super();
+        if (Format.TEMPLATE == format) {
+            throw new IllegalArgumentException("A template export needs a template");
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No columns to export");
+        }
+        this.format = format;
+        this.fields = fields.toArray(new String[fields.size()]);
+        codes = toCodes(this.fields);
+        literals = null;
+        launchTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * @param template
+     *            text with <code>${field}</code> placeholders, written once
+     *            per instance
+     * @throws IllegalArgumentException
+     *             if a placeholder is not closed or names an unknown field
+     */
+    public InstanceExporter(String template) {
+        super();
+        List<String> names = new ArrayList<String>();
+        List<String> texts = new ArrayList<String>();
+        int from = 0;
+        int start = template.indexOf("${");
+        while (-1 != start) {
+            int end = template.indexOf('}', start);
+            if (-1 == end) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + start + " in " + template);
+            }
+            texts.add(template.substring(from, start));
+            names.add(template.substring(start + 2, end).trim());
+            from = end + 1;
+            start = template.indexOf("${", from);
+        }
+        texts.add(template.substring(from));
+        format = Format.TEMPLATE;
+        fields = names.toArray(new String[names.size()]);
+        codes = toCodes(fields);
+        literals = texts.toArray(new String[texts.size()]);
+        launchTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * @param fields
+     * @return the index of each field in {@link #FIELDS}, {@link #FIELD_TAG}
+     *         for tags
+     */
+    protected static int[] toCodes(String[] fields) {
+        int[] ret = new int[fields.length];
+        for (int index = 0; index < fields.length; index++) {
+            if (fields[index].startsWith(InstanceIndex.TAG_PREFIX)
+                    && InstanceIndex.TAG_PREFIX.length() < fields[index].length()) {
+                ret[index] = FIELD_TAG;
+            } else {
+                ret[index] = FIELDS.length;
+                for (int field = 0; field < FIELDS.length && FIELDS.length == ret[index]; field++) {
+                    if (FIELDS[field].equalsIgnoreCase(fields[index])) {
+                        ret[index] = field;
+                        fields[index] = FIELDS[field];
+                    }
+                }
+                if (FIELDS.length == ret[index]) {
+                    throw new IllegalArgumentException("Unknown field " + fields[index]);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param columns
+     *            field names separated by commas
+     * @return the field names
+     */
+    public static List<String> toFields(String columns) {
+        List<String> ret = new ArrayList<String>();
+        for (String column : StringUtils.split(StringUtils.defaultString(columns), ',')) {
+            if (StringUtils.isNotBlank(column)) {
+                ret.add(column.trim());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the format
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the fields read for each instance, in order
+     */
+    public String[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the separator
+     */
+    public String getSeparator() {
+        return separator;
+    }
+
+    /**
+     * @param separator
+     *            written between records, a line break by default
+     */
+    public void setSeparator(String separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * @return the header
+     */
+    public boolean isHeader() {
+        return header;
+    }
+
+    /**
+     * @param header
+     *            whether a CSV export starts with the column names
+     */
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    /**
+     * @return the number of records written, the header included
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Reads the fields of a row, on the thread the store is confined to
+     * 
+     * @param store
+     * @param row
+     * @param values
+     *            receives the value of each of {@link #getFields()}, null
+     *            where the instance has none
+     */
+    public void read(InstanceStore store, int row, String[] values) {
+        for (int index = 0; index < codes.length; index++) {
+            String value = null;
+            switch (codes[index]) {
+            case FIELD_TAG:
+                value = store.getTag(row, fields[index].substring(InstanceIndex.TAG_PREFIX.length()));
+                break;
+            case 0:
+                value = store.getId(row);
+                break;
+            case 1:
+                value = store.getPublicDnsName(row);
+                break;
+            case 2:
+                value = store.getPublicIp(row);
+                break;
+            case 3:
+                value = store.getPrivateDnsName(row);
+                break;
+            case 4:
+                value = store.getPrivateIp(row);
+                break;
+            case 5:
+                value = null == store.getApiTermination(row) ? null : store.getApiTermination(row).toString();
+                break;
+            case 6:
+                value = store.getState(row);
+                break;
+            case 7:
+                value = store.getType(row);
+                break;
+            case 8:
+                value = store.getKeyName(row);
+                break;
+            case 9:
+                value = store.getGroups(row);
+                break;
+            case 10:
+                value = store.getZone(row);
+                break;
+            case 11:
+                value = -1 == store.getLaunchTime(row) ? null : launchTimeFormat.format(new Date(store
+                        .getLaunchTime(row)));
+                break;
+            case 12:
+                value = store.getTags(row);
+                break;
+            case 13:
+                value = store.getRegion(row);
+                break;
+            }
+            values[index] = value;
+        }
+    }
+
+    /**
+     * Writes the column names if the format has them, before the first
+     * record
+     * 
+     * @param out
+     * @throws IOException
+     */
+    public void writeHeader(Writer out) throws IOException {
+        if (Format.CSV == format && header && 0 == written) {
+            write(out, fields);
+        }
+    }
+
+    /**
+     * @param out
+     * @param values
+     *            as filled in by {@link #read(InstanceStore, int, String[])}
+     * @throws IOException
+     */
+    public void write(Writer out, String[] values) throws IOException {
+        if (0 < written) {
+            out.write(separator);
+        }
+        switch (format) {
+        case CSV:
+            for (int index = 0; index < values.length; index++) {
+                if (0 < index) {
+                    out.write(',');
+                }
+                writeCsv(out, values[index]);
+            }
+            break;
+        case JSON_LINES:
+            out.write('{');
+            for (int index = 0; index < values.length; index++) {
+                if (0 < index) {
+                    out.write(',');
+                }
+                writeJson(out, fields[index]);
+                out.write(':');
+                if (null == values[index]) {
+                    out.write("null");
+                } else {
+                    writeJson(out, values[index]);
+                }
+            }
+            out.write('}');
+            break;
+        case TEMPLATE:
+            for (int index = 0; index < values.length; index++) {
+                out.write(literals[index]);
+                if (null != values[index]) {
+                    out.write(values[index]);
+                }
+            }
+            out.write(literals[values.length]);
+            break;
+        }
+        written++;
+    }
+
+    /**
+     * Quotes the value if it holds a comma, a quote, a line break or leading
+     * or trailing blanks
+     * 
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    protected static void writeCsv(Writer out, String value) throws IOException {
+        if (null != value) {
+            boolean quote = 0 < value.length()
+                    && (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value
+                            .length() - 1)));
+            for (int index = 0; index < value.length() && !quote; index++) {
+                char ch = value.charAt(index);
+                quote = ',' == ch || '"' == ch || '\n' == ch || '\r' == ch;
+            }
+            if (quote) {
+                out.write('"');
+                int from = 0;
+                int at = value.indexOf('"');
+                while (-1 != at) {
+                    out.write(value, from, at + 1 - from);
+                    out.write('"');
+                    from = at + 1;
+                    at = value.indexOf('"', from);
+                }
+                out.write(value, from, value.length() - from);
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+    }
+
+    /**
+     * @param out
+     * @param value
+     *            written as a JSON string
+     * @throws IOException
+     */
+    protected static void writeJson(Writer out, String value) throws IOException {
+        out.write('"');
+        int from = 0;
+        for (int index = 0; index < value.length(); index++) {
+            char ch = value.charAt(index);
+            if ('"' == ch || '\\' == ch || ' ' > ch) {
+                out.write(value, from, index - from);
+                from = index + 1;
+                switch (ch) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    String hex = Integer.toHexString(ch);
+                    out.write("\\u");
+                    out.write("0000", 0, 4 - hex.length());
+                    out.write(hex);
+                    break;
+                }
+            }
+        }
+        out.write(value, from, value.length() - from);
+        out.write('"');
+    }
+
+}
@@ -0,0 +1,272 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * Hash indexes of instance ids by state, availability zone, type, key name,
+ * security group, image, region and by the value of every tag key. Updated
+ * record by record, so lookups cost the size of the answer instead of the
+ * size of the fleet. Writers are serialized, readers never block.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceIndex {
+
+    /**
+     * 
+     */
+    public static final String ID = "id";
+
+    /**
+     * 
+     */
+    public static final String STATE = "state";
+
+    /**
+     * 
+     */
+    public static final String AZ = "az";
+
+    /**
+     * 
+     */
+    public static final String TYPE = "type";
+
+    /**
+     * 
+     */
+    public static final String KEY = "key";
+
+    /**
+     * 
+     */
+    public static final String GROUP = "group";
+
+    /**
+     * 
+     */
+    public static final String IMAGE = "image";
+
+    /**
+     * 
+     */
+    public static final String REGION = "region";
+
+    /**
+     * 
+     */
+    public static final String TAG_PREFIX = "tag:";
+
+    protected static final Set<String> DIMENSIONS = new HashSet<String>(Arrays.asList(STATE, AZ, TYPE, KEY, GROUP,
+            IMAGE, REGION));
+
+    protected final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<String>>> index = new ConcurrentHashMap<String, ConcurrentHashMap<String, Set<String>>>();
+
+    /**
+     * @param dimension
+     * @return true if instances are indexed on the dimension
+     */
+    public static boolean isIndexed(String dimension) {
+        return DIMENSIONS.contains(dimension) || dimension.startsWith(TAG_PREFIX);
+    }
+
+    /**
+     * @param dimension
+     *            one of the dimension constants, a tag dimension or one of
+     *            <code>ip</code>, <code>private-ip</code>, <code>dns</code>,
+     *            <code>private-dns</code> which are not indexed
+     * @param record
+     * @return the values of the record on the dimension
+     */
+    public static List<String> getValues(String dimension, InstanceRecord record) {
+        Instance instance = record.getInstance();
+        List<String> ret = null;
+        if (dimension.startsWith(TAG_PREFIX)) {
+            ret = new ArrayList<String>();
+            String tagKey = dimension.substring(TAG_PREFIX.length());
+            if (null != instance.getTags()) {
+                for (Tag tag : instance.getTags()) {
+                    if (tagKey.equals(tag.getKey())) {
+                        ret.add(tag.getValue());
+                    }
+                }
+            }
+        } else if (GROUP.equals(dimension)) {
+            ret = record.getGroupNames();
+        } else {
+            String value = null;
+            if (REGION.equals(dimension)) {
+                value = record.getRegion();
+            } else if (STATE.equals(dimension)) {
+                value = record.getStateName();
+            } else if (ID.equals(dimension)) {
+                value = instance.getInstanceId();
+            } else if (TYPE.equals(dimension)) {
+                value = instance.getInstanceType();
+            } else if (AZ.equals(dimension)) {
+                value = null == instance.getPlacement() ? null : instance.getPlacement().getAvailabilityZone();
+            } else if (KEY.equals(dimension)) {
+                value = instance.getKeyName();
+            } else if (IMAGE.equals(dimension)) {
+                value = instance.getImageId();
+            } else if ("ip".equals(dimension)) {
+                value = instance.getPublicIpAddress();
+            } else if ("private-ip".equals(dimension)) {
+                value = instance.getPrivateIpAddress();
+            } else if ("dns".equals(dimension)) {
+                value = instance.getPublicDnsName();
+            } else if ("private-dns".equals(dimension)) {
+                value = instance.getPrivateDnsName();
+            }
+            ret = Collections.singletonList(value);
+        }
+        return ret;
+    }
+
+    /**
+     * @param record
+     * @return the indexed dimensions and values of the record
+     */
+    protected static Map<String, List<String>> getEntries(InstanceRecord record) {
+        Map<String, List<String>> ret = new TreeMap<String, List<String>>();
+        for (String dimension : DIMENSIONS) {
+            ret.put(dimension, getValues(dimension, record));
+        }
+        if (null != record.getInstance().getTags()) {
+            for (Tag tag : record.getInstance().getTags()) {
+                String dimension = TAG_PREFIX + tag.getKey();
+                if (!ret.containsKey(dimension)) {
+                    ret.put(dimension, new ArrayList<String>());
+                }
+                ret.get(dimension).add(tag.getValue());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Moves an instance from its previous record to its current one
+     * 
+     * @param previous
+     *            may be null
+     * @param current
+     *            may be null
+     */
+    public synchronized void update(InstanceRecord previous, InstanceRecord current) {
+        if (null != previous) {
+            for (Map.Entry<String, List<String>> entry : getEntries(previous).entrySet()) {
+                ConcurrentHashMap<String, Set<String>> values = index.get(entry.getKey());
+                if (null != values) {
+                    for (String value : entry.getValue()) {
+                        Set<String> ids = null == value ? null : values.get(value);
+                        if (null != ids) {
+                            ids.remove(previous.getInstanceId());
+                            if (ids.isEmpty()) {
+                                values.remove(value);
+                            }
+                        }
+                    }
+                    if (values.isEmpty()) {
+                        index.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        if (null != current) {
+            for (Map.Entry<String, List<String>> entry : getEntries(current).entrySet()) {
+                ConcurrentHashMap<String, Set<String>> values = index.get(entry.getKey());
+                if (null == values) {
+                    values = new ConcurrentHashMap<String, Set<String>>();
+                    index.put(entry.getKey(), values);
+                }
+                for (String value : entry.getValue()) {
+                    if (null != value) {
+                        Set<String> ids = values.get(value);
+                        if (null == ids) {
+                            ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                            values.put(value, ids);
+                        }
+                        ids.add(current.getInstanceId());
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        index.clear();
+    }
+
+    /**
+     * @param dimension
+     * @param value
+     * @return the ids of the instances with the value on the dimension
+     */
+    public Set<String> get(String dimension, String value) {
+        Set<String> ret = null;
+        Map<String, Set<String>> values = index.get(dimension);
+        if (null != values && null != value) {
+            ret = values.get(value);
+        }
+        return null == ret ? Collections.<String> emptySet() : Collections.unmodifiableSet(ret);
+    }
+
+    /**
+     * @param dimension
+     * @return the number of instances for each value of the dimension
+     */
+    public Map<String, Integer> getCounts(String dimension) {
+        Map<String, Integer> ret = new TreeMap<String, Integer>();
+        Map<String, Set<String>> values = index.get(dimension);
+        if (null != values) {
+            for (Map.Entry<String, Set<String>> entry : values.entrySet()) {
+                ret.put(entry.getKey(), entry.getValue().size());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the dimensions with at least one value, tag dimensions included
+     */
+    public Set<String> getDimensions() {
+        return new HashSet<String>(index.keySet());
+    }
+
+}
@@ -0,0 +1,372 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe, in memory view of the instances of an account keyed by
+ * instance id. Entries older than the TTL are treated as missing so callers
+ * go back to EC2 for them, and mutating calls invalidate what they touch.
+ * Every record is also kept in an {@link InstanceIndex} so filtering and
+ * grouping do not have to scan the whole fleet.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceInventory {
+
+    /**
+     * 
+     */
+    public static final long DEFAULT_TTL = 60 * 1000L;
+
+    protected final ConcurrentHashMap<String, InstanceRecord> records = new ConcurrentHashMap<String, InstanceRecord>();
+
+    protected final InstanceIndex index = new InstanceIndex();
+
+    protected final ConcurrentHashMap<String, String> regions = new ConcurrentHashMap<String, String>();
+
+    protected volatile long ttl = DEFAULT_TTL;
+
+    protected volatile long fullLoadAt;
+
+    protected volatile boolean loaded;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return the ttl in milliseconds
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @param ttl
+     *            the ttl in milliseconds to set, 0 disables caching
+     */
+    public void setTtl(long ttl) {
+        this.ttl = Math.max(0, ttl);
+    }
+
+    protected boolean isFresh(long loadedAt) {
+        return 0 < loadedAt && System.currentTimeMillis() - loadedAt < ttl;
+    }
+
+    /**
+     * @return true if the whole account was described within the TTL
+     */
+    public boolean isComplete() {
+        return isFresh(fullLoadAt);
+    }
+
+    /**
+     * @return true if the whole account was described at least once, so the
+     *         regions of its instances are known
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @param instanceId
+     * @return the record if present and within the TTL, null otherwise
+     */
+    public InstanceRecord get(String instanceId) {
+        InstanceRecord ret = records.get(instanceId);
+        if (null != ret && isFresh(ret.getLoadedAt())) {
+            hits.incrementAndGet();
+        } else {
+            ret = null;
+            misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * @param instanceId
+     * @return the record whatever its age, null if the instance is not held.
+     *         Not counted as a lookup.
+     */
+    public InstanceRecord peek(String instanceId) {
+        return null == instanceId ? null : records.get(instanceId);
+    }
+
+    /**
+     * @param instanceId
+     * @return the region the instance was last seen in, kept across
+     *         invalidation as instances never move between regions
+     */
+    public String getRegion(String instanceId) {
+        return null == instanceId ? null : regions.get(instanceId);
+    }
+
+    /**
+     * Looks up the given instances, adding the ones that are missing or stale
+     * to <code>missing</code>
+     * 
+     * @param instanceIds
+     * @param missing
+     * @return the records found
+     */
+    public List<InstanceRecord> get(Collection<String> instanceIds, Collection<String> missing) {
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        for (String instanceId : new LinkedHashSet<String>(instanceIds)) {
+            InstanceRecord record = get(instanceId);
+            if (null == record) {
+                missing.add(instanceId);
+            } else {
+                ret.add(record);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return all the records if the inventory is complete, null otherwise
+     */
+    public List<InstanceRecord> getAll() {
+        List<InstanceRecord> ret = null;
+        if (isComplete()) {
+            hits.incrementAndGet();
+            ret = new ArrayList<InstanceRecord>(records.values());
+        } else {
+            misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Looks up the instances matching every criterion through the index,
+     * starting from the criterion with the fewest candidates so the cost
+     * follows the size of the answer rather than the size of the fleet.
+     * Criteria on dimensions that are not indexed are checked on the
+     * candidates.
+     * 
+     * @param criteria
+     *            the accepted values keyed by dimension, see
+     *            {@link InstanceIndex#getValues(String, InstanceRecord)}
+     * @return the matching records if the inventory is complete, null
+     *         otherwise
+     */
+    public List<InstanceRecord> find(Map<String, ? extends Collection<String>> criteria) {
+        List<InstanceRecord> ret = null;
+        if (isComplete()) {
+            hits.incrementAndGet();
+            Collection<String> candidates = null;
+            String driver = null;
+            for (Map.Entry<String, ? extends Collection<String>> entry : criteria.entrySet()) {
+                Collection<String> ids = null;
+                if (InstanceIndex.ID.equals(entry.getKey())) {
+                    ids = new LinkedHashSet<String>(entry.getValue());
+                } else if (InstanceIndex.isIndexed(entry.getKey())) {
+                    if (1 == entry.getValue().size()) {
+                        ids = index.get(entry.getKey(), entry.getValue().iterator().next());
+                    } else {
+                        ids = new LinkedHashSet<String>();
+                        for (String value : entry.getValue()) {
+                            ids.addAll(index.get(entry.getKey(), value));
+                        }
+                    }
+                }
+                if (null != ids && (null == candidates || ids.size() < candidates.size())) {
+                    candidates = ids;
+                    driver = entry.getKey();
+                }
+            }
+            if (null == candidates) {
+                candidates = records.keySet();
+            }
+            ret = new ArrayList<InstanceRecord>();
+            for (String instanceId : candidates) {
+                InstanceRecord record = records.get(instanceId);
+                boolean found = null != record;
+                for (Iterator<? extends Map.Entry<String, ? extends Collection<String>>> iterator = criteria
+                        .entrySet().iterator(); found && iterator.hasNext();) {
+                    Map.Entry<String, ? extends Collection<String>> entry = iterator.next();
+                    if (!entry.getKey().equals(driver)) {
+                        found = false;
+                        for (String value : InstanceIndex.getValues(entry.getKey(), record)) {
+                            found |= entry.getValue().contains(value);
+                        }
+                    }
+                }
+                if (found) {
+                    ret.add(record);
+                }
+            }
+        } else {
+            misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the index of the records held, for grouping and counting
+     */
+    public InstanceIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param page
+     *            freshly described instances
+     */
+    public void put(Collection<InstanceRecord> page) {
+        for (InstanceRecord record : page) {
+            synchronized (index) {
+                index.update(records.put(record.getInstanceId(), record), record);
+            }
+            if (null != record.getRegion()) {
+                regions.put(record.getInstanceId(), record.getRegion());
+            }
+        }
+    }
+
+    /**
+     * Marks the inventory complete after the whole account was described,
+     * dropping every instance that was not seen
+     * 
+     * @param instanceIds
+     *            the ids of all the instances of the account
+     */
+    public void complete(Set<String> instanceIds) {
+        synchronized (index) {
+            for (InstanceRecord record : records.values()) {
+                if (!instanceIds.contains(record.getInstanceId())) {
+                    index.update(records.remove(record.getInstanceId()), null);
+                }
+            }
+        }
+        regions.keySet().retainAll(instanceIds);
+        fullLoadAt = System.currentTimeMillis();
+        loaded = true;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * @param region
+     * @return the number of instances last seen in the region
+     */
+    public int size(String region) {
+        int ret = 0;
+        for (String instanceRegion : regions.values()) {
+            if (instanceRegion.equals(region)) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param region
+     * @return the ids of the instances last seen in the region
+     */
+    public List<String> getInstanceIds(String region) {
+        List<String> ret = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : regions.entrySet()) {
+            if (entry.getValue().equals(region)) {
+                ret.add(entry.getKey());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Drops the given instances, forcing the next lookup to go to EC2. As the
+     * set of instances may have changed the inventory is no longer complete.
+     * 
+     * @param instanceIds
+     */
+    public void invalidate(String... instanceIds) {
+        if (null != instanceIds) {
+            for (String instanceId : instanceIds) {
+                if (null != instanceId) {
+                    synchronized (index) {
+                        index.update(records.remove(instanceId), null);
+                    }
+                }
+            }
+        }
+        fullLoadAt = 0;
+    }
+
+    public void invalidateAll() {
+        synchronized (index) {
+            records.clear();
+            index.clear();
+        }
+        regions.clear();
+        fullLoadAt = 0;
+        loaded = false;
+    }
+
+    /**
+     * @return the number of lookups served from memory
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to go to EC2
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return "InstanceInventory [size=" + records.size() + ", hits=" + hitCount + ", misses=" + misses.get()
+                + ", hitRatio=" + (0 == total ? 0 : (100 * hitCount / total)) + "%]";
+    }
+
+}
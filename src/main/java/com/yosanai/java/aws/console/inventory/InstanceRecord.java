@@ -0,0 +1,162 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * An instance as seen by the inventory along with the reservation level
+ * details the console shows next to it
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceRecord {
+
+    protected final Instance instance;
+
+    protected final List<String> groupNames;
+
+    protected final String region;
+
+    protected final long loadedAt;
+
+    protected final Map<String, String> tags = new HashMap<String, String>();
+
+    /**
+     * @param instance
+     * @param groupNames
+     * @param region
+     * @param loadedAt
+     */
+    public InstanceRecord(Instance instance, List<String> groupNames, String region, long loadedAt) {
+        super();
+        this.instance = instance;
+        this.region = region;
+        this.groupNames = null == groupNames ? Collections.<String> emptyList() : Collections
+                .unmodifiableList(new ArrayList<String>(groupNames));
+        this.loadedAt = loadedAt;
+        if (null != instance.getTags()) {
+            for (Tag tag : instance.getTags()) {
+                if (null != tag.getKey()) {
+                    tags.put(tag.getKey().toLowerCase(), tag.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param reservation
+     * @param region
+     * @param loadedAt
+     * @return the records of all the instances in the reservation
+     */
+    public static List<InstanceRecord> fromReservation(Reservation reservation, String region, long loadedAt) {
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        if (null != reservation.getInstances()) {
+            for (Instance instance : reservation.getInstances()) {
+                ret.add(new InstanceRecord(instance, reservation.getGroupNames(), region, loadedAt));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the instanceId
+     */
+    public String getInstanceId() {
+        return instance.getInstanceId();
+    }
+
+    /**
+     * @param result
+     * @param region
+     * @param loadedAt
+     * @return the records of all the instances in the result
+     */
+    public static List<InstanceRecord> fromResult(DescribeInstancesResult result, String region, long loadedAt) {
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        if (null != result && null != result.getReservations()) {
+            for (Reservation reservation : result.getReservations()) {
+                ret.addAll(fromReservation(reservation, region, loadedAt));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the instance
+     */
+    public Instance getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the groupNames
+     */
+    public List<String> getGroupNames() {
+        return groupNames;
+    }
+
+    /**
+     * @return the region
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the loadedAt
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return the state name of the instance
+     */
+    public String getStateName() {
+        return null == instance.getState() ? null : instance.getState().getName();
+    }
+
+    /**
+     * @param key
+     *            compared ignoring case
+     * @return the value of the tag, null if the instance does not have it
+     */
+    public String getTag(String key) {
+        return null == key ? null : tags.get(key.toLowerCase());
+    }
+
+}
@@ -0,0 +1,488 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Quick search over a few text fields of every instance, such as its id,
+ * addresses, DNS names and tags. Every field is broken into trigrams and each
+ * trigram maps to the instances whose fields contain it, so a query only
+ * checks the instances having all its trigrams. Trigrams most instances have,
+ * such as DNS suffixes, are not worth keeping and are dropped. When nothing
+ * contains the query, longer queries tolerate typos: an instance is a
+ * candidate when it shares enough of the query's trigrams to be within the
+ * allowed number of edits, and candidates are checked by approximate
+ * substring matching. A query that extends the previous one only narrows the
+ * previous result, as long as nothing was put or removed in between.
+ * 
+ * Fields are matched ignoring case, trigrams of removed instances are dropped
+ * once they outnumber the live ones. Not thread safe, it can be built on one
+ * thread and handed over to another.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceSearchIndex {
+
+    /**
+     * Queries this long tolerate one typo, twice as long two
+     */
+    public static final int FUZZY_LENGTH = 6;
+
+    /**
+     * Trigrams are dropped once more than one instance in this many has them
+     */
+    protected static final int COMMON_RATIO = 2;
+
+    protected static final int MIN_COMMON = 1024;
+
+    protected static final int MIN_COMPACT = 1024;
+
+    protected static final int[] NO_DOCS = new int[0];
+
+    /**
+     * Instances having a trigram, in the order they were put
+     */
+    protected static class Postings {
+
+        protected final int key;
+
+        protected int[] docs = new int[2];
+
+        protected int size;
+
+        protected boolean common;
+
+        protected Postings(int key) {
+            super();
+            this.key = key;
+        }
+
+        protected void add(int doc) {
+            if (!common && (0 == size || docs[size - 1] != doc)) {
+                if (size == docs.length) {
+                    docs = Arrays.copyOf(docs, size << 1);
+                }
+                docs[size++] = doc;
+            }
+        }
+
+        protected void setCommon() {
+            common = true;
+            docs = NO_DOCS;
+            size = 0;
+        }
+    }
+
+    /**
+     * What a query matched
+     */
+    public static class Result {
+
+        protected final String query;
+
+        protected final int maxEdits;
+
+        protected final int version;
+
+        protected final int[] docs;
+
+        protected final List<String> ids;
+
+        protected Result(String query, int maxEdits, int version, int[] docs, List<String> ids) {
+            super();
+            this.query = query;
+            this.maxEdits = maxEdits;
+            this.version = version;
+            this.docs = docs;
+            this.ids = ids;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return the number of typos the matches were allowed, 0 unless
+         *         nothing contained the query
+         */
+        public int getMaxEdits() {
+            return maxEdits;
+        }
+
+        /**
+         * @return the ids of the matching instances
+         */
+        public List<String> getIds() {
+            return ids;
+        }
+    }
+
+    protected Postings[] table = new Postings[1024];
+
+    protected int trigrams;
+
+    protected final Map<String, Integer> docOf = new HashMap<String, Integer>();
+
+    protected String[] ids = new String[64];
+
+    protected String[][] fields = new String[64][];
+
+    protected int docs;
+
+    protected int live;
+
+    protected int version;
+
+    protected int[] counts = NO_DOCS;
+
+    protected final long[] peq = new long[256];
+
+    protected String peqQuery;
+
+    /**
+     * @param query
+     * @return the number of typos the query is allowed
+     */
+    public static int getMaxEdits(String query) {
+        return 64 < query.length() ? 0 : Math.min(2, query.length() / FUZZY_LENGTH);
+    }
+
+    protected static int trigram(String text, int index) {
+        return (text.charAt(index) & 0x3FF) << 20 | (text.charAt(index + 1) & 0x3FF) << 10
+                | (text.charAt(index + 2) & 0x3FF);
+    }
+
+    protected static int slot(int key, int mask) {
+        int ret = key * 0x9E3779B9;
+        return (ret ^ ret >>> 16) & mask;
+    }
+
+    /**
+     * @param key
+     * @param create
+     * @return the postings of the trigram, null if there are none and
+     *         <code>create</code> is false
+     */
+    protected Postings getPostings(int key, boolean create) {
+        int mask = table.length - 1;
+        int slot = slot(key, mask);
+        while (null != table[slot] && table[slot].key != key) {
+            slot = (slot + 1) & mask;
+        }
+        Postings ret = table[slot];
+        if (null == ret && create) {
+            ret = new Postings(key);
+            table[slot] = ret;
+            if (++trigrams > table.length >> 1) {
+                Postings[] previous = table;
+                table = new Postings[previous.length << 1];
+                mask = table.length - 1;
+                for (Postings postings : previous) {
+                    if (null != postings) {
+                        slot = slot(postings.key, mask);
+                        while (null != table[slot]) {
+                            slot = (slot + 1) & mask;
+                        }
+                        table[slot] = postings;
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Adds the instance or replaces its fields
+     * 
+     * @param instanceId
+     * @param values
+     *            the fields to search, nulls are skipped
+     */
+    public void put(String instanceId, String... values) {
+        remove(instanceId);
+        if (docs == ids.length) {
+            ids = Arrays.copyOf(ids, docs << 1);
+            fields = Arrays.copyOf(fields, docs << 1);
+        }
+        int doc = docs++;
+        String[] lowered = new String[values.length];
+        ids[doc] = instanceId;
+        fields[doc] = lowered;
+        docOf.put(instanceId, doc);
+        live++;
+        version++;
+        for (int field = 0; field < values.length; field++) {
+            lowered[field] = null == values[field] ? null : values[field].toLowerCase();
+            for (int index = 0; null != lowered[field] && index + 2 < lowered[field].length(); index++) {
+                Postings postings = getPostings(trigram(lowered[field], index), true);
+                postings.add(doc);
+                if (MIN_COMMON < live && postings.size > live / COMMON_RATIO) {
+                    postings.setCommon();
+                }
+            }
+        }
+    }
+
+    public void remove(String instanceId) {
+        Integer doc = docOf.remove(instanceId);
+        if (null != doc) {
+            ids[doc] = null;
+            fields[doc] = null;
+            live--;
+            version++;
+            if (MIN_COMPACT < docs && live < docs - live) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the trigrams from the live instances
+     */
+    protected void compact() {
+        String[] liveIds = Arrays.copyOf(ids, docs);
+        String[][] liveFields = Arrays.copyOf(fields, docs);
+        table = new Postings[1024];
+        trigrams = 0;
+        docOf.clear();
+        docs = 0;
+        live = 0;
+        for (int doc = 0; doc < liveIds.length; doc++) {
+            if (null != liveIds[doc]) {
+                put(liveIds[doc], liveFields[doc]);
+            }
+        }
+    }
+
+    public int size() {
+        return live;
+    }
+
+    /**
+     * @param query
+     * @param previous
+     *            the result of the previous query, null if there was none
+     * @return what matched, null if the query is blank
+     */
+    public Result search(String query, Result previous) {
+        Result ret = null;
+        String trimmed = null == query ? "" : query.trim().toLowerCase();
+        if (0 < trimmed.length()) {
+            boolean narrowing = null != previous && version == previous.version
+                    && trimmed.startsWith(previous.query);
+            int maxEdits = getMaxEdits(trimmed);
+            if (!narrowing || 0 == previous.maxEdits) {
+                ret = filter(trimmed, 0, narrowing ? previous.docs : 3 > trimmed.length() ? null
+                        : getCommon(trimmed));
+            }
+            if (0 < maxEdits && (null == ret || ret.ids.isEmpty())) {
+                ret = filter(trimmed, maxEdits, narrowing && maxEdits == previous.maxEdits ? previous.docs
+                        : getSimilar(trimmed, maxEdits));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param query
+     * @param maxEdits
+     * @param candidates
+     *            the instances to check, null for all of them
+     * @return the candidates matching the query
+     */
+    protected Result filter(String query, int maxEdits, int[] candidates) {
+        int count = null == candidates ? docs : candidates.length;
+        List<String> matched = new ArrayList<String>();
+        int[] matchedDocs = new int[count];
+        for (int index = 0; index < count; index++) {
+            int doc = null == candidates ? index : candidates[index];
+            if (null != ids[doc] && matches(fields[doc], query, maxEdits)) {
+                matchedDocs[matched.size()] = doc;
+                matched.add(ids[doc]);
+            }
+        }
+        return new Result(query, maxEdits, version, Arrays.copyOf(matchedDocs, matched.size()), matched);
+    }
+
+    /**
+     * @param query
+     * @return the instances having all the trigrams of the query that are
+     *         not too common, the only ones that can contain it, null if
+     *         they all are
+     */
+    protected int[] getCommon(String query) {
+        List<Postings> lists = new ArrayList<Postings>();
+        for (int index = 0; index + 2 < query.length(); index++) {
+            Postings postings = getPostings(trigram(query, index), false);
+            if (null == postings) {
+                return NO_DOCS;
+            }
+            if (!postings.common) {
+                lists.add(postings);
+            }
+        }
+        int[] ret = null;
+        int size = 0;
+        for (Postings postings : lists) {
+            if (null == ret) {
+                ret = Arrays.copyOf(postings.docs, postings.size);
+                size = postings.size;
+            } else {
+                int kept = 0;
+                for (int index = 0, position = 0; index < size && position < postings.size;) {
+                    if (ret[index] < postings.docs[position]) {
+                        index++;
+                    } else if (ret[index] > postings.docs[position]) {
+                        position++;
+                    } else {
+                        ret[kept++] = ret[index++];
+                        position++;
+                    }
+                }
+                size = kept;
+            }
+        }
+        return null == ret ? null : Arrays.copyOf(ret, size);
+    }
+
+    /**
+     * @param query
+     * @param maxEdits
+     * @return the instances sharing enough of the query's trigrams to be
+     *         within <code>maxEdits</code> of it, each edit spoils at most
+     *         three, null if that could be any of them
+     */
+    protected int[] getSimilar(String query, int maxEdits) {
+        if (counts.length < docs) {
+            counts = new int[ids.length];
+        }
+        int needed = query.length() - 2 - 3 * maxEdits;
+        List<Postings> lists = new ArrayList<Postings>();
+        for (int index = 0; index + 2 < query.length(); index++) {
+            Postings postings = getPostings(trigram(query, index), false);
+            if (null != postings && postings.common) {
+                needed--;
+            } else if (null != postings) {
+                lists.add(postings);
+            }
+        }
+        if (0 >= needed) {
+            return null;
+        }
+        int[] touched = new int[16];
+        int size = 0;
+        for (Postings postings : lists) {
+            for (int position = 0; position < postings.size; position++) {
+                int doc = postings.docs[position];
+                if (0 == counts[doc]++) {
+                    if (size == touched.length) {
+                        touched = Arrays.copyOf(touched, size << 1);
+                    }
+                    touched[size++] = doc;
+                }
+            }
+        }
+        int[] ret = new int[size];
+        int count = 0;
+        for (int index = 0; index < size; index++) {
+            int doc = touched[index];
+            if (counts[doc] >= needed) {
+                ret[count++] = doc;
+            }
+            counts[doc] = 0;
+        }
+        ret = Arrays.copyOf(ret, count);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    protected boolean matches(String[] values, String query, int maxEdits) {
+        boolean ret = false;
+        for (int index = 0; !ret && index < values.length; index++) {
+            ret = null != values[index]
+                    && (0 == maxEdits ? -1 != values[index].indexOf(query) : contains(values[index], query, maxEdits));
+        }
+        return ret;
+    }
+
+    /**
+     * Approximate substring matching with Myers' bit-parallel algorithm, the
+     * edit distance of the query to the best matching part of the text so far
+     * is updated for all query positions at once for every text character
+     * 
+     * @param text
+     * @param query
+     *            at most 64 characters long
+     * @param maxEdits
+     * @return true if part of the text is at most <code>maxEdits</code>
+     *         insertions, deletions or substitutions away from the query
+     */
+    protected boolean contains(String text, String query, int maxEdits) {
+        if (query != peqQuery) {
+            peqQuery = query;
+            Arrays.fill(peq, 0L);
+            for (int index = 0; index < query.length(); index++) {
+                peq[query.charAt(index) & 0xFF] |= 1L << index;
+            }
+        }
+        long last = 1L << (query.length() - 1);
+        long positive = -1L;
+        long negative = 0L;
+        int score = query.length();
+        boolean ret = score <= maxEdits;
+        for (int position = 0; !ret && position < text.length(); position++) {
+            char current = text.charAt(position);
+            long equal = peq[current & 0xFF];
+            if (current > 0xFF) {
+                equal = 0L;
+                for (int index = 0; index < query.length(); index++) {
+                    equal |= query.charAt(index) == current ? 1L << index : 0L;
+                }
+            }
+            long vertical = equal | negative;
+            long horizontal = (((equal & positive) + positive) ^ positive) | equal;
+            long horizontalPositive = negative | ~(horizontal | positive);
+            long horizontalNegative = positive & horizontal;
+            if (0 != (horizontalPositive & last)) {
+                score++;
+            } else if (0 != (horizontalNegative & last)) {
+                score--;
+            }
+            horizontalPositive <<= 1;
+            horizontalNegative <<= 1;
+            positive = horizontalNegative | ~(vertical | horizontalPositive);
+            negative = horizontalPositive & vertical;
+            ret = score <= maxEdits;
+        }
+        return ret;
+    }
+
+}
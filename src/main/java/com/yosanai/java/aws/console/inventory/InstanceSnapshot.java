@@ -0,0 +1,191 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * Immutable point in time view of a set of instances that can be compared
+ * with a later one to find out what was added, removed or changed
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceSnapshot {
+
+    /**
+     * 
+     */
+    public static final InstanceSnapshot EMPTY = new InstanceSnapshot(Collections.<InstanceRecord> emptyList());
+
+    protected final Map<String, InstanceRecord> records;
+
+    /**
+     * @param records
+     */
+    public InstanceSnapshot(Collection<InstanceRecord> records) {
+        super();
+        LinkedHashMap<String, InstanceRecord> map = new LinkedHashMap<String, InstanceRecord>();
+        for (InstanceRecord record : records) {
+            map.put(record.getInstanceId(), record);
+        }
+        this.records = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @param region
+     * @param result
+     * @return a snapshot of all the instances in the result
+     */
+    public static InstanceSnapshot fromResult(String region, DescribeInstancesResult result) {
+        return new InstanceSnapshot(InstanceRecord.fromResult(result, region, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the records in the order they were described
+     */
+    public Map<String, InstanceRecord> getRecords() {
+        return records;
+    }
+
+    public InstanceRecord get(String instanceId) {
+        return records.get(instanceId);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * @param next
+     * @return the deltas that turn this snapshot into <code>next</code>,
+     *         removals first, then changes and additions in the order of
+     *         <code>next</code>
+     */
+    public List<InstanceDelta> diff(InstanceSnapshot next) {
+        List<InstanceDelta> ret = removed(records, next.records.keySet());
+        ret.addAll(diff(records, next.records.values()));
+        return ret;
+    }
+
+    /**
+     * @param previous
+     * @param page
+     *            some of the current instances
+     * @return the additions and changes <code>page</code> brings over
+     *         <code>previous</code>
+     */
+    public static List<InstanceDelta> diff(Map<String, InstanceRecord> previous, Collection<InstanceRecord> page) {
+        List<InstanceDelta> ret = new ArrayList<InstanceDelta>();
+        for (InstanceRecord record : page) {
+            InstanceRecord old = previous.get(record.getInstanceId());
+            if (null == old) {
+                ret.add(new InstanceDelta(InstanceDelta.Type.ADDED, null, record));
+            } else if (!isSame(old, record)) {
+                ret.add(new InstanceDelta(InstanceDelta.Type.CHANGED, old, record));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param previous
+     * @param current
+     *            the ids of all the current instances
+     * @return the removals of the instances in <code>previous</code> that are
+     *         not <code>current</code> any more
+     */
+    public static List<InstanceDelta> removed(Map<String, InstanceRecord> previous, Set<String> current) {
+        List<InstanceDelta> ret = new ArrayList<InstanceDelta>();
+        for (InstanceRecord record : previous.values()) {
+            if (!current.contains(record.getInstanceId())) {
+                ret.add(new InstanceDelta(InstanceDelta.Type.REMOVED, record, null));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param left
+     * @param right
+     * @return true if the two records agree on everything the console shows
+     */
+    public static boolean isSame(InstanceRecord left, InstanceRecord right) {
+        Instance one = left.getInstance();
+        Instance two = right.getInstance();
+        return ObjectUtils.equals(one.getInstanceId(), two.getInstanceId())
+                && ObjectUtils.equals(left.getRegion(), right.getRegion())
+                && ObjectUtils.equals(left.getStateName(), right.getStateName())
+                && ObjectUtils.equals(one.getPublicDnsName(), two.getPublicDnsName())
+                && ObjectUtils.equals(one.getPublicIpAddress(), two.getPublicIpAddress())
+                && ObjectUtils.equals(one.getPrivateDnsName(), two.getPrivateDnsName())
+                && ObjectUtils.equals(one.getPrivateIpAddress(), two.getPrivateIpAddress())
+                && ObjectUtils.equals(one.getInstanceType(), two.getInstanceType())
+                && ObjectUtils.equals(one.getKeyName(), two.getKeyName())
+                && ObjectUtils.equals(getAvailabilityZone(one), getAvailabilityZone(two))
+                && ObjectUtils.equals(getTime(one.getLaunchTime()), getTime(two.getLaunchTime()))
+                && left.getGroupNames().equals(right.getGroupNames()) && isSame(one.getTags(), two.getTags());
+    }
+
+    protected static String getAvailabilityZone(Instance instance) {
+        return null == instance.getPlacement() ? null : instance.getPlacement().getAvailabilityZone();
+    }
+
+    protected static Long getTime(Date date) {
+        return null == date ? null : date.getTime();
+    }
+
+    protected static boolean isSame(List<Tag> one, List<Tag> two) {
+        boolean ret = (null == one ? 0 : one.size()) == (null == two ? 0 : two.size());
+        if (ret && null != one) {
+            Iterator<Tag> itr = two.iterator();
+            for (Tag tag : one) {
+                Tag other = itr.next();
+                if (!ObjectUtils.equals(tag.getKey(), other.getKey())
+                        || !ObjectUtils.equals(tag.getValue(), other.getValue())) {
+                    ret = false;
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,588 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * Column oriented store of the instances shown by the console. Every
+ * column is a primitive or reference array indexed by row. States are kept
+ * as byte codes in lifecycle order, the values that repeat across the fleet
+ * (types, zones, keys, groups, regions, tag keys) as int codes into a
+ * shared pool of interned strings and launch times as epoch milliseconds,
+ * so an instance costs a few dozen bytes on top of its unique strings
+ * instead of a whole SDK object graph and a row of formatted strings.
+ * <p>
+ * Not thread safe, it is meant to be confined to the EDT like the Swing
+ * models it feeds.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceStore {
+
+    /**
+     * Instance states in lifecycle order, matching the EC2 state codes
+     * divided by 16
+     */
+    protected static final String[] STATES = { "pending", "running", "shutting-down", "terminated", "stopping",
+            "stopped" };
+
+    protected static final int DEFAULT_CAPACITY = 64;
+
+    protected static final int[] NO_TAGS = new int[0];
+
+    protected static final String[] NO_VALUES = new String[0];
+
+    protected final List<String> stateNames = new ArrayList<String>(Arrays.asList(STATES));
+
+    protected final List<String> values = new ArrayList<String>();
+
+    protected final Map<String, Integer> codes = new HashMap<String, Integer>();
+
+    protected final Map<String, Integer> rows = new HashMap<String, Integer>();
+
+    protected int size;
+
+    protected String[] ids;
+
+    protected byte[] states;
+
+    protected int[] types;
+
+    protected int[] zones;
+
+    protected int[] keyNames;
+
+    protected int[] groups;
+
+    protected int[] regions;
+
+    protected long[] launchTimes;
+
+    protected long[] loadedAt;
+
+    protected byte[] apiTermination;
+
+    protected String[] publicDnsNames;
+
+    protected String[] publicIps;
+
+    protected String[] privateDnsNames;
+
+    protected String[] privateIps;
+
+    protected int[][] tagKeys;
+
+    protected String[][] tagValues;
+
+    public InstanceStore() {
+        super();
+        values.add(null);
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    protected void allocate(int capacity) {
+        ids = null == ids ? new String[capacity] : Arrays.copyOf(ids, capacity);
+        states = null == states ? new byte[capacity] : Arrays.copyOf(states, capacity);
+        types = null == types ? new int[capacity] : Arrays.copyOf(types, capacity);
+        zones = null == zones ? new int[capacity] : Arrays.copyOf(zones, capacity);
+        keyNames = null == keyNames ? new int[capacity] : Arrays.copyOf(keyNames, capacity);
+        groups = null == groups ? new int[capacity] : Arrays.copyOf(groups, capacity);
+        regions = null == regions ? new int[capacity] : Arrays.copyOf(regions, capacity);
+        launchTimes = null == launchTimes ? new long[capacity] : Arrays.copyOf(launchTimes, capacity);
+        loadedAt = null == loadedAt ? new long[capacity] : Arrays.copyOf(loadedAt, capacity);
+        apiTermination = null == apiTermination ? new byte[capacity] : Arrays.copyOf(apiTermination, capacity);
+        publicDnsNames = null == publicDnsNames ? new String[capacity] : Arrays.copyOf(publicDnsNames, capacity);
+        publicIps = null == publicIps ? new String[capacity] : Arrays.copyOf(publicIps, capacity);
+        privateDnsNames = null == privateDnsNames ? new String[capacity] : Arrays.copyOf(privateDnsNames, capacity);
+        privateIps = null == privateIps ? new String[capacity] : Arrays.copyOf(privateIps, capacity);
+        tagKeys = null == tagKeys ? new int[capacity][] : Arrays.copyOf(tagKeys, capacity);
+        tagValues = null == tagValues ? new String[capacity][] : Arrays.copyOf(tagValues, capacity);
+    }
+
+    /**
+     * @param value
+     * @return the code of the value in the pool, 0 for null
+     */
+    protected int intern(String value) {
+        int ret = 0;
+        if (null != value) {
+            Integer code = codes.get(value);
+            if (null == code) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            ret = code;
+        }
+        return ret;
+    }
+
+    protected byte toStateCode(String stateName) {
+        int ret = null == stateName ? -1 : stateNames.indexOf(stateName);
+        if (null != stateName && -1 == ret && Byte.MAX_VALUE > stateNames.size()) {
+            ret = stateNames.size();
+            stateNames.add(stateName);
+        }
+        return (byte) ret;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @return true if an instance is pending, shutting down or stopping
+     */
+    public boolean isTransitioning() {
+        boolean ret = false;
+        for (int row = 0; !ret && row < size; row++) {
+            ret = 0 == states[row] || 2 == states[row] || 4 == states[row];
+        }
+        return ret;
+    }
+
+    public boolean contains(String instanceId) {
+        return rows.containsKey(instanceId);
+    }
+
+    /**
+     * @param instanceId
+     * @return the row of the instance, -1 if it is not in the store
+     */
+    public int getRow(String instanceId) {
+        Integer ret = rows.get(instanceId);
+        return null == ret ? -1 : ret;
+    }
+
+    /**
+     * Adds the instance or overwrites its row
+     * 
+     * @param record
+     * @return the row of the instance
+     */
+    public int put(InstanceRecord record) {
+        Integer ret = rows.get(record.getInstanceId());
+        if (null == ret) {
+            if (size == ids.length) {
+                allocate(size + (size >> 1));
+            }
+            ret = size++;
+            rows.put(record.getInstanceId(), ret);
+            apiTermination[ret] = -1;
+        }
+        Instance instance = record.getInstance();
+        ids[ret] = record.getInstanceId();
+        states[ret] = toStateCode(record.getStateName());
+        types[ret] = intern(instance.getInstanceType());
+        zones[ret] = intern(null == instance.getPlacement() ? null : instance.getPlacement().getAvailabilityZone());
+        keyNames[ret] = intern(instance.getKeyName());
+        groups[ret] = intern(StringUtils.join(record.getGroupNames(), ","));
+        regions[ret] = intern(record.getRegion());
+        launchTimes[ret] = null == instance.getLaunchTime() ? -1 : instance.getLaunchTime().getTime();
+        loadedAt[ret] = record.getLoadedAt();
+        publicDnsNames[ret] = instance.getPublicDnsName();
+        publicIps[ret] = instance.getPublicIpAddress();
+        privateDnsNames[ret] = instance.getPrivateDnsName();
+        privateIps[ret] = instance.getPrivateIpAddress();
+        if (null == instance.getTags() || instance.getTags().isEmpty()) {
+            tagKeys[ret] = NO_TAGS;
+            tagValues[ret] = NO_VALUES;
+        } else {
+            tagKeys[ret] = new int[instance.getTags().size()];
+            tagValues[ret] = new String[instance.getTags().size()];
+            for (int index = 0; index < tagKeys[ret].length; index++) {
+                Tag tag = instance.getTags().get(index);
+                tagKeys[ret][index] = intern(tag.getKey());
+                tagValues[ret][index] = tag.getValue();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Drops the instance, the rows after it move up by one
+     * 
+     * @param instanceId
+     * @return the row the instance had, -1 if it was not in the store
+     */
+    public int remove(String instanceId) {
+        int[] ret = removeAll(Collections.singleton(instanceId));
+        return 0 == ret.length ? -1 : ret[0];
+    }
+
+    /**
+     * Drops the instances in a single pass over the columns, keeping the
+     * order of the remaining rows
+     * 
+     * @param instanceIds
+     * @return the rows the removed instances had, in ascending order
+     */
+    public int[] removeAll(Collection<String> instanceIds) {
+        boolean[] removed = new boolean[size];
+        int count = 0;
+        for (String instanceId : instanceIds) {
+            Integer row = rows.remove(instanceId);
+            if (null != row && !removed[row]) {
+                removed[row] = true;
+                count++;
+            }
+        }
+        int[] ret = new int[count];
+        if (0 < count) {
+            int target = 0;
+            int index = 0;
+            for (int row = 0; row < size; row++) {
+                if (removed[row]) {
+                    ret[index++] = row;
+                } else {
+                    if (target != row) {
+                        move(row, target);
+                        rows.put(ids[target], target);
+                    }
+                    target++;
+                }
+            }
+            for (int row = target; row < size; row++) {
+                ids[row] = null;
+                publicDnsNames[row] = null;
+                publicIps[row] = null;
+                privateDnsNames[row] = null;
+                privateIps[row] = null;
+                tagKeys[row] = null;
+                tagValues[row] = null;
+            }
+            size = target;
+        }
+        return ret;
+    }
+
+    protected void move(int from, int to) {
+        ids[to] = ids[from];
+        states[to] = states[from];
+        types[to] = types[from];
+        zones[to] = zones[from];
+        keyNames[to] = keyNames[from];
+        groups[to] = groups[from];
+        regions[to] = regions[from];
+        launchTimes[to] = launchTimes[from];
+        loadedAt[to] = loadedAt[from];
+        apiTermination[to] = apiTermination[from];
+        publicDnsNames[to] = publicDnsNames[from];
+        publicIps[to] = publicIps[from];
+        privateDnsNames[to] = privateDnsNames[from];
+        privateIps[to] = privateIps[from];
+        tagKeys[to] = tagKeys[from];
+        tagValues[to] = tagValues[from];
+    }
+
+    public void clear() {
+        rows.clear();
+        size = 0;
+        ids = null;
+        states = null;
+        types = null;
+        zones = null;
+        keyNames = null;
+        groups = null;
+        regions = null;
+        launchTimes = null;
+        loadedAt = null;
+        apiTermination = null;
+        publicDnsNames = null;
+        publicIps = null;
+        privateDnsNames = null;
+        privateIps = null;
+        tagKeys = null;
+        tagValues = null;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    public String getId(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @param row
+     * @return the position of the state in the instance lifecycle, -1 if
+     *         unknown
+     */
+    public byte getStateCode(int row) {
+        return states[row];
+    }
+
+    public String getState(int row) {
+        return -1 == states[row] ? null : stateNames.get(states[row]);
+    }
+
+    public String getType(int row) {
+        return values.get(types[row]);
+    }
+
+    public String getZone(int row) {
+        return values.get(zones[row]);
+    }
+
+    public String getKeyName(int row) {
+        return values.get(keyNames[row]);
+    }
+
+    /**
+     * @param row
+     * @return the security group names separated by commas
+     */
+    public String getGroups(int row) {
+        return values.get(groups[row]);
+    }
+
+    public String getRegion(int row) {
+        return values.get(regions[row]);
+    }
+
+    /**
+     * @param row
+     * @return the launch time in epoch milliseconds, -1 if unknown
+     */
+    public long getLaunchTime(int row) {
+        return launchTimes[row];
+    }
+
+    public long getLoadedAt(int row) {
+        return loadedAt[row];
+    }
+
+    public String getPublicDnsName(int row) {
+        return publicDnsNames[row];
+    }
+
+    public String getPublicIp(int row) {
+        return publicIps[row];
+    }
+
+    public String getPrivateDnsName(int row) {
+        return privateDnsNames[row];
+    }
+
+    public String getPrivateIp(int row) {
+        return privateIps[row];
+    }
+
+    /**
+     * @param row
+     * @param key
+     *            compared ignoring case
+     * @return the value of the tag, null if the instance does not have it
+     */
+    public String getTag(int row, String key) {
+        String ret = null;
+        for (int index = 0; index < tagKeys[row].length; index++) {
+            if (StringUtils.equalsIgnoreCase(key, values.get(tagKeys[row][index]))) {
+                ret = tagValues[row][index];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param row
+     * @return the tags as <code>key=value</code> pairs separated by
+     *         <code>", "</code>
+     */
+    public String getTags(int row) {
+        StringBuilder ret = new StringBuilder();
+        for (int index = 0; index < tagKeys[row].length; index++) {
+            if (0 < index) {
+                ret.append(", ");
+            }
+            ret.append(values.get(tagKeys[row][index]));
+            ret.append("=");
+            ret.append(tagValues[row][index]);
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @param row
+     * @param dimension
+     *            one of the {@link InstanceIndex} dimensions or a tag
+     *            dimension, tag keys being compared ignoring case
+     * @return the value of the row on the dimension
+     */
+    public String getValue(int row, String dimension) {
+        String ret = null;
+        if (dimension.startsWith(InstanceIndex.TAG_PREFIX)) {
+            ret = getTag(row, dimension.substring(InstanceIndex.TAG_PREFIX.length()));
+        } else if (InstanceIndex.REGION.equals(dimension)) {
+            ret = getRegion(row);
+        } else if (InstanceIndex.AZ.equals(dimension)) {
+            ret = getZone(row);
+        } else if (InstanceIndex.STATE.equals(dimension)) {
+            ret = getState(row);
+        } else if (InstanceIndex.TYPE.equals(dimension)) {
+            ret = getType(row);
+        } else if (InstanceIndex.KEY.equals(dimension)) {
+            ret = getKeyName(row);
+        } else if (InstanceIndex.GROUP.equals(dimension)) {
+            ret = getGroups(row);
+        } else if (InstanceIndex.ID.equals(dimension)) {
+            ret = getId(row);
+        }
+        return ret;
+    }
+
+    /**
+     * @param row
+     * @return the API termination flag, null while it is not known
+     */
+    public Boolean getApiTermination(int row) {
+        return -1 == apiTermination[row] ? null : 1 == apiTermination[row];
+    }
+
+    /**
+     * @param instanceId
+     * @param value
+     *            null if not known
+     * @return the row of the instance, -1 if it is not in the store
+     */
+    public int setApiTermination(String instanceId, Boolean value) {
+        int ret = getRow(instanceId);
+        if (-1 != ret) {
+            apiTermination[ret] = (byte) (null == value ? -1 : (value ? 1 : 0));
+        }
+        return ret;
+    }
+
+    /**
+     * @param row
+     * @return a record rebuilt from the columns, holding only what the store
+     *         keeps
+     */
+    public InstanceRecord toRecord(int row) {
+        Instance instance = new Instance().withInstanceId(ids[row]).withInstanceType(getType(row))
+                .withKeyName(getKeyName(row)).withPublicDnsName(publicDnsNames[row])
+                .withPublicIpAddress(publicIps[row]).withPrivateDnsName(privateDnsNames[row])
+                .withPrivateIpAddress(privateIps[row]).withPlacement(new Placement(getZone(row)));
+        if (-1 != states[row]) {
+            instance.setState(new InstanceState().withName(getState(row)));
+        }
+        if (-1 != launchTimes[row]) {
+            instance.setLaunchTime(new Date(launchTimes[row]));
+        }
+        List<Tag> tags = new ArrayList<Tag>();
+        for (int index = 0; index < tagKeys[row].length; index++) {
+            tags.add(new Tag(values.get(tagKeys[row][index]), tagValues[row][index]));
+        }
+        instance.setTags(tags);
+        String groupNames = getGroups(row);
+        return new InstanceRecord(instance, StringUtils.isEmpty(groupNames) ? null : Arrays.asList(groupNames
+                .split(",")), getRegion(row), loadedAt[row]);
+    }
+
+    /**
+     * @param row
+     * @param record
+     * @return true if the row agrees with the record on everything the
+     *         console shows
+     */
+    public boolean isSame(int row, InstanceRecord record) {
+        Instance instance = record.getInstance();
+        boolean ret = ObjectUtils.equals(ids[row], record.getInstanceId())
+                && ObjectUtils.equals(getState(row), record.getStateName())
+                && ObjectUtils.equals(getRegion(row), record.getRegion())
+                && ObjectUtils.equals(publicDnsNames[row], instance.getPublicDnsName())
+                && ObjectUtils.equals(publicIps[row], instance.getPublicIpAddress())
+                && ObjectUtils.equals(privateDnsNames[row], instance.getPrivateDnsName())
+                && ObjectUtils.equals(privateIps[row], instance.getPrivateIpAddress())
+                && ObjectUtils.equals(getType(row), instance.getInstanceType())
+                && ObjectUtils.equals(getKeyName(row), instance.getKeyName())
+                && ObjectUtils.equals(getZone(row), InstanceSnapshot.getAvailabilityZone(instance))
+                && launchTimes[row] == (null == instance.getLaunchTime() ? -1 : instance.getLaunchTime().getTime())
+                && ObjectUtils.equals(getGroups(row), StringUtils.join(record.getGroupNames(), ","))
+                && tagKeys[row].length == (null == instance.getTags() ? 0 : instance.getTags().size());
+        for (int index = 0; ret && index < tagKeys[row].length; index++) {
+            Tag tag = instance.getTags().get(index);
+            ret = ObjectUtils.equals(values.get(tagKeys[row][index]), tag.getKey())
+                    && ObjectUtils.equals(tagValues[row][index], tag.getValue());
+        }
+        return ret;
+    }
+
+    /**
+     * @param page
+     *            some of the current instances
+     * @return the additions and changes <code>page</code> brings over the
+     *         store
+     */
+    public List<InstanceDelta> diff(Collection<InstanceRecord> page) {
+        List<InstanceDelta> ret = new ArrayList<InstanceDelta>();
+        for (InstanceRecord record : page) {
+            int row = getRow(record.getInstanceId());
+            if (-1 == row) {
+                ret.add(new InstanceDelta(InstanceDelta.Type.ADDED, null, record));
+            } else if (!isSame(row, record)) {
+                ret.add(new InstanceDelta(InstanceDelta.Type.CHANGED, toRecord(row), record));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param current
+     *            the ids of all the current instances
+     * @return the removals of the instances in the store that are not
+     *         <code>current</code> any more
+     */
+    public List<InstanceDelta> removed(Set<String> current) {
+        List<InstanceDelta> ret = new ArrayList<InstanceDelta>();
+        for (int row = 0; row < size; row++) {
+            if (!current.contains(ids[row])) {
+                ret.add(new InstanceDelta(InstanceDelta.Type.REMOVED, toRecord(row), null));
+            }
+        }
+        return ret;
+    }
+
+}
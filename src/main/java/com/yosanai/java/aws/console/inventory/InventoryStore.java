@@ -0,0 +1,274 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Monitoring;
+import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * Keeps the last known inventory in a compact binary file so the console can
+ * show it the moment it starts, before the first describe call returns. The
+ * file is written to a temporary file and renamed into place, and read back
+ * in one go into a heap buffer; it is not memory mapped since a mapping keeps
+ * the file locked on Windows until it is garbage collected, which would make
+ * the next save fail. Only the details the console displays are kept.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InventoryStore {
+
+    protected static final int MAGIC = 0x59414931;
+
+    protected static final int VERSION = 1;
+
+    protected static final String CHARSET = "UTF-8";
+
+    protected final File file;
+
+    /**
+     * @param file
+     */
+    public InventoryStore(File file) {
+        super();
+        this.file = file;
+    }
+
+    /**
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Replaces the file with the given records
+     * 
+     * @param records
+     * @param apiTermination
+     *            the known API termination flags keyed by instance id, may
+     *            be null
+     * @throws IOException
+     */
+    public synchronized void save(Collection<InstanceRecord> records, Map<String, Boolean> apiTermination)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(records.size());
+            for (InstanceRecord record : records) {
+                Instance instance = record.getInstance();
+                Boolean flag = null == apiTermination ? null : apiTermination.get(record.getInstanceId());
+                out.writeByte(null == flag ? -1 : (flag ? 1 : 0));
+                writeString(out, record.getRegion());
+                out.writeInt(record.getGroupNames().size());
+                for (String groupName : record.getGroupNames()) {
+                    writeString(out, groupName);
+                }
+                writeString(out, instance.getInstanceId());
+                writeString(out, instance.getImageId());
+                writeString(out, null == instance.getState() ? null : instance.getState().getName());
+                out.writeInt(null == instance.getState() || null == instance.getState().getCode() ? -1 : instance
+                        .getState().getCode());
+                writeString(out, instance.getPrivateDnsName());
+                writeString(out, instance.getPublicDnsName());
+                writeString(out, instance.getPrivateIpAddress());
+                writeString(out, instance.getPublicIpAddress());
+                writeString(out, instance.getKeyName());
+                writeString(out, instance.getInstanceType());
+                out.writeLong(null == instance.getLaunchTime() ? -1 : instance.getLaunchTime().getTime());
+                writeString(out, null == instance.getPlacement() ? null : instance.getPlacement()
+                        .getAvailabilityZone());
+                writeString(out, instance.getKernelId());
+                writeString(out, instance.getRamdiskId());
+                writeString(out, instance.getPlatform());
+                writeString(out, null == instance.getMonitoring() ? null : instance.getMonitoring().getState());
+                writeString(out, instance.getSubnetId());
+                writeString(out, instance.getVpcId());
+                writeString(out, instance.getArchitecture());
+                writeString(out, instance.getRootDeviceType());
+                writeString(out, instance.getRootDeviceName());
+                out.writeInt(null == instance.getTags() ? 0 : instance.getTags().size());
+                if (null != instance.getTags()) {
+                    for (Tag tag : instance.getTags()) {
+                        writeString(out, tag.getKey());
+                        writeString(out, tag.getValue());
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Failed to replace " + file);
+            }
+        }
+    }
+
+    /**
+     * @param apiTermination
+     *            receives the saved API termination flags, may be null
+     * @return the saved records, their load time being the time they were
+     *         saved, or an empty list if there is no usable file
+     * @throws IOException
+     */
+    public synchronized List<InstanceRecord> load(Map<String, Boolean> apiTermination) throws IOException {
+        List<InstanceRecord> ret = new ArrayList<InstanceRecord>();
+        if (file.isFile()) {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                long size = channel.size();
+                if (Integer.MAX_VALUE < size) {
+                    throw new IOException("Inventory snapshot " + file + " is too large");
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && -1 != channel.read(buffer)) {
+                    // read the whole file
+                }
+                buffer.flip();
+                if (16 < buffer.remaining() && MAGIC == buffer.getInt() && VERSION == buffer.getInt()) {
+                    long savedAt = buffer.getLong();
+                    Map<String, String> pool = new HashMap<String, String>();
+                    int count = buffer.getInt();
+                    for (int index = 0; index < count; index++) {
+                        byte flag = buffer.get();
+                        String region = readString(buffer, pool);
+                        List<String> groupNames = new ArrayList<String>();
+                        for (int group = buffer.getInt(); 0 < group; group--) {
+                            groupNames.add(readString(buffer, pool));
+                        }
+                        Instance instance = new Instance().withInstanceId(readString(buffer, pool));
+                        instance.setImageId(readString(buffer, pool));
+                        String stateName = readString(buffer, pool);
+                        int stateCode = buffer.getInt();
+                        instance.setState(new InstanceState().withName(stateName).withCode(
+                                -1 == stateCode ? null : stateCode));
+                        instance.setPrivateDnsName(readString(buffer, pool));
+                        instance.setPublicDnsName(readString(buffer, pool));
+                        instance.setPrivateIpAddress(readString(buffer, pool));
+                        instance.setPublicIpAddress(readString(buffer, pool));
+                        instance.setKeyName(readString(buffer, pool));
+                        instance.setInstanceType(readString(buffer, pool));
+                        long launchTime = buffer.getLong();
+                        instance.setLaunchTime(-1 == launchTime ? null : new Date(launchTime));
+                        instance.setPlacement(new Placement(readString(buffer, pool)));
+                        instance.setKernelId(readString(buffer, pool));
+                        instance.setRamdiskId(readString(buffer, pool));
+                        instance.setPlatform(readString(buffer, pool));
+                        instance.setMonitoring(new Monitoring().withState(readString(buffer, pool)));
+                        instance.setSubnetId(readString(buffer, pool));
+                        instance.setVpcId(readString(buffer, pool));
+                        instance.setArchitecture(readString(buffer, pool));
+                        instance.setRootDeviceType(readString(buffer, pool));
+                        instance.setRootDeviceName(readString(buffer, pool));
+                        List<Tag> tags = new ArrayList<Tag>();
+                        for (int tag = buffer.getInt(); 0 < tag; tag--) {
+                            tags.add(new Tag(readString(buffer, pool), readString(buffer, pool)));
+                        }
+                        instance.setTags(tags);
+                        ret.add(new InstanceRecord(instance, groupNames, region, savedAt));
+                        if (null != apiTermination && -1 != flag) {
+                            apiTermination.put(instance.getInstanceId(), 1 == flag);
+                        }
+                    }
+                }
+            } catch (BufferUnderflowException ex) {
+                throw new IOException("Truncated inventory snapshot " + file, ex);
+            } finally {
+                input.close();
+            }
+        }
+        return ret;
+    }
+
+    public synchronized void delete() {
+        file.delete();
+    }
+
+    protected static void writeString(DataOutputStream out, String value) throws IOException {
+        if (null == value) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(CHARSET);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param buffer
+     * @param pool
+     *            shares the many repeated values such as states, types and
+     *            zones between the records
+     * @return the string at the position of the buffer
+     * @throws IOException
+     */
+    protected static String readString(ByteBuffer buffer, Map<String, String> pool) throws IOException {
+        String ret = null;
+        int length = buffer.getInt();
+        if (length > buffer.remaining()) {
+            throw new IOException("Corrupt inventory snapshot, string of " + length + " bytes");
+        }
+        if (0 <= length) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            ret = new String(bytes, CHARSET);
+            String pooled = pool.get(ret);
+            if (null == pooled) {
+                pool.put(ret, ret);
+            } else {
+                ret = pooled;
+            }
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,276 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.services.ec2.model.Instance;
+
+/**
+ * Property paths such as <code>placement.availabilityZone</code> or
+ * <code>tags[0].value</code> compiled once into cached getter chains, so
+ * reading a property of many beans neither introspects nor allocates per
+ * bean. Hot paths can be registered as hand written accessors.
+ * 
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class PropertyAccessors {
+
+    /**
+     * Reads one property path of a bean
+     */
+    public interface Accessor {
+
+        /**
+         * @param target
+         * @return the value, null if the target or any bean along the path is
+         *         null
+         * @throws Exception
+         */
+        public Object get(Object target) throws Exception;
+    }
+
+    /**
+     * Accessors of {@link Instance}, with the paths the console copies
+     * registered by hand
+     */
+    public static final PropertyAccessors INSTANCE = new PropertyAccessors(Instance.class);
+
+    static {
+        INSTANCE.register("instanceId", new Accessor() {
+
+            @Override
+            public Object get(Object target) {
+                return null == target ? null : ((Instance) target).getInstanceId();
+            }
+        });
+        INSTANCE.register("publicIpAddress", new Accessor() {
+
+            @Override
+            public Object get(Object target) {
+                return null == target ? null : ((Instance) target).getPublicIpAddress();
+            }
+        });
+        INSTANCE.register("privateIpAddress", new Accessor() {
+
+            @Override
+            public Object get(Object target) {
+                return null == target ? null : ((Instance) target).getPrivateIpAddress();
+            }
+        });
+        INSTANCE.register("publicDnsName", new Accessor() {
+
+            @Override
+            public Object get(Object target) {
+                return null == target ? null : ((Instance) target).getPublicDnsName();
+            }
+        });
+        INSTANCE.register("privateDnsName", new Accessor() {
+
+            @Override
+            public Object get(Object target) {
+                return null == target ? null : ((Instance) target).getPrivateDnsName();
+            }
+        });
+    }
+
+    protected final Class<?> type;
+
+    protected final ConcurrentHashMap<String, Accessor> accessors = new ConcurrentHashMap<String, Accessor>();
+
+    /**
+     * A getter, optionally followed by an index into the list or array it
+     * returns
+     */
+    protected static class Step {
+
+        protected final Method getter;
+
+        protected final int index;
+
+        public Step(Method getter, int index) {
+            super();
+            this.getter = getter;
+            this.index = index;
+        }
+
+        public Object get(Object target) throws Exception {
+            Object ret = getter.invoke(target);
+            if (0 <= index && null != ret) {
+                if (ret instanceof List<?>) {
+                    List<?> list = (List<?>) ret;
+                    ret = index < list.size() ? list.get(index) : null;
+                } else if (ret.getClass().isArray()) {
+                    ret = index < Array.getLength(ret) ? Array.get(ret, index) : null;
+                } else {
+                    throw new IllegalArgumentException(getter.getName() + " is not indexed");
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * The compiled chain of getters of one path
+     */
+    protected static class CompiledAccessor implements Accessor {
+
+        protected final Step[] steps;
+
+        public CompiledAccessor(Step[] steps) {
+            super();
+            this.steps = steps;
+        }
+
+        @Override
+        public Object get(Object target) throws Exception {
+            Object ret = target;
+            try {
+                for (int index = 0; null != ret && index < steps.length; index++) {
+                    ret = steps[index].get(ret);
+                }
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof Exception) {
+                    throw (Exception) ex.getCause();
+                }
+                throw ex;
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * @param type
+     *            the class of the beans read through this registry
+     */
+    public PropertyAccessors(Class<?> type) {
+        super();
+        this.type = type;
+    }
+
+    /**
+     * @param path
+     * @param accessor
+     *            used instead of compiling the path
+     */
+    public void register(String path, Accessor accessor) {
+        accessors.put(path, accessor);
+    }
+
+    /**
+     * @param path
+     * @return the accessor of the path, compiled on first use
+     * @throws IllegalArgumentException
+     *             if the path does not resolve to readable properties
+     */
+    public Accessor get(String path) {
+        Accessor ret = accessors.get(path);
+        if (null == ret) {
+            ret = compile(path);
+            Accessor existing = accessors.putIfAbsent(path, ret);
+            if (null != existing) {
+                ret = existing;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param target
+     * @param path
+     * @return the value of the path on the target
+     * @throws Exception
+     */
+    public Object getValue(Object target, String path) throws Exception {
+        return get(path).get(target);
+    }
+
+    protected Accessor compile(String path) {
+        List<Step> steps = new ArrayList<Step>();
+        Class<?> current = type;
+        for (String segment : path.split("\\.")) {
+            int index = -1;
+            String name = segment;
+            int bracket = segment.indexOf('[');
+            if (0 < bracket && segment.endsWith("]")) {
+                name = segment.substring(0, bracket);
+                try {
+                    index = Integer.parseInt(segment.substring(bracket + 1, segment.length() - 1));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid index in " + path, ex);
+                }
+            }
+            Method getter = getGetter(current, name);
+            if (null == getter) {
+                throw new IllegalArgumentException("No readable property " + name + " on " + current.getName()
+                        + " in " + path);
+            }
+            steps.add(new Step(getter, index));
+            current = getter.getReturnType();
+            if (0 <= index) {
+                current = current.isArray() ? current.getComponentType() : getElementType(getter);
+            }
+        }
+        return new CompiledAccessor(steps.toArray(new Step[steps.size()]));
+    }
+
+    protected Method getGetter(Class<?> beanClass, String name) {
+        Method ret = null;
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(beanClass).getPropertyDescriptors()) {
+                if (name.equals(descriptor.getName())) {
+                    ret = descriptor.getReadMethod();
+                    break;
+                }
+            }
+        } catch (IntrospectionException ex) {
+            throw new IllegalArgumentException("Cannot introspect " + beanClass.getName(), ex);
+        }
+        return ret;
+    }
+
+    protected Class<?> getElementType(Method getter) {
+        Class<?> ret = Object.class;
+        if (getter.getGenericReturnType() instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) getter.getGenericReturnType()).getActualTypeArguments();
+            if (1 == arguments.length && arguments[0] instanceof Class<?>) {
+                ret = (Class<?>) arguments[0];
+            }
+        }
+        return ret;
+    }
+
+}
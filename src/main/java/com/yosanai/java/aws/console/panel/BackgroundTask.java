@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingWorker;
+
+/**
+ * {@link SwingWorker} run by a {@link TaskExecutor}. The work is done in
+ * {@link #doInBackground()}, partial results are published and handed to
+ * {@link #onPublished(List)} on the EDT in batches, and the outcome ends up in
+ * exactly one of {@link #onCompleted(Object)}, {@link #onFailed(Exception)}
+ * or {@link #onCancelled()}, also on the EDT. Once cancelled nothing more is
+ * delivered, so a superseded task cannot overwrite the results of the one that
+ * replaced it.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public abstract class BackgroundTask<T, V> extends SwingWorker<T, V> {
+
+    public static final String NOTE = "note";
+
+    protected final String title;
+
+    protected volatile String note;
+
+    /**
+     * @param title
+     *            what the task does, shown in the status bar
+     */
+    protected BackgroundTask(String title) {
+        super();
+        this.title = title;
+    }
+
+    /**
+     * @return the title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the note
+     */
+    public String getNote() {
+        return note;
+    }
+
+    /**
+     * @param note
+     *            how far the task got, shown in the status bar
+     */
+    protected void setNote(String note) {
+        String old = this.note;
+        this.note = note;
+        firePropertyChange(NOTE, old, note);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.SwingWorker#process(java.util.List)
+     */
+    @Override
+    protected final void process(List<V> chunks) {
+        if (!isCancelled()) {
+            onPublished(chunks);
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected final void done() {
+        if (isCancelled()) {
+            onCancelled();
+        } else {
+            try {
+                onCompleted(get());
+            } catch (CancellationException ex) {
+                onCancelled();
+            } catch (InterruptedException ex) {
+                onCancelled();
+            } catch (ExecutionException ex) {
+                onFailed(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+            }
+        }
+    }
+
+    /**
+     * Called on the EDT with everything published since the previous call
+     * 
+     * @param chunks
+     */
+    protected void onPublished(List<V> chunks) {
+    }
+
+    protected void onCompleted(T result) {
+    }
+
+    protected void onFailed(Exception ex) {
+        Logger.getLogger(getClass().getName()).log(Level.SEVERE, title, ex);
+    }
+
+    protected void onCancelled() {
+    }
+
+}
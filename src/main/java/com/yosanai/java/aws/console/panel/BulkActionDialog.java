@@ -0,0 +1,372 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import com.yosanai.java.aws.console.AWSConnectionProvider;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkAction;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkItem;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkListener;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.Status;
+
+/**
+ * Runs a bulk action as a task of the {@link TaskExecutor} and shows the
+ * outcome of every instance as its chunk comes back. The instances that
+ * failed, or never ran because the action was cancelled, can be retried
+ * without touching the ones that succeeded.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+@SuppressWarnings("serial")
+public class BulkActionDialog extends JDialog {
+
+    /**
+     * Outcome of each instance of the action
+     */
+    protected static class BulkItemsModel extends AbstractTableModel {
+
+        protected static final String[] COLUMN_NAMES = { "Instance ID", "Region", "Status", "Detail" };
+
+        protected final List<BulkItem> items;
+
+        protected final Map<String, Integer> rows = new HashMap<String, Integer>();
+
+        /**
+         * @param items
+         */
+        public BulkItemsModel(List<BulkItem> items) {
+            super();
+            this.items = items;
+            for (int row = 0; row < items.size(); row++) {
+                rows.put(items.get(row).getInstanceId(), row);
+            }
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.table.TableModel#getRowCount()
+         */
+        @Override
+        public int getRowCount() {
+            return items.size();
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.table.TableModel#getColumnCount()
+         */
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.table.AbstractTableModel#getColumnName(int)
+         */
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.table.TableModel#getValueAt(int, int)
+         */
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            BulkItem item = items.get(rowIndex);
+            Object ret = null;
+            switch (columnIndex) {
+            case 0:
+                ret = item.getInstanceId();
+                break;
+            case 1:
+                ret = item.getRegion();
+                break;
+            case 2:
+                ret = item.getStatus();
+                break;
+            case 3:
+                ret = null == item.getFailure() ? item.getState() : item.getFailure().getLocalizedMessage();
+                break;
+            }
+            return ret;
+        }
+
+        /**
+         * @param changed
+         *            items of the model whose outcome came in
+         */
+        public void itemsChanged(List<BulkItem> changed) {
+            for (BulkItem item : changed) {
+                Integer row = rows.get(item.getInstanceId());
+                if (null != row) {
+                    fireTableRowsUpdated(row, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * One run of the action over the items that did not succeed yet
+     */
+    protected class BulkTask extends BackgroundTask<List<BulkItem>, BulkItem> {
+
+        protected final int pending;
+
+        protected int done;
+
+        protected BulkTask(int pending) {
+            super(action.getTitle() + " " + pending + " instances");
+            this.pending = pending;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.SwingWorker#doInBackground()
+         */
+        @Override
+        protected List<BulkItem> doInBackground() throws Exception {
+            return awsConnectionProvider.runBulkAction(action, items, new BulkListener() {
+
+                @Override
+                public void itemsDone(List<BulkItem> chunk) {
+                    publish(chunk.toArray(new BulkItem[chunk.size()]));
+                    synchronized (BulkTask.this) {
+                        done += chunk.size();
+                        setNote(done + " of " + pending);
+                        setProgress(Math.min(100, 100 * done / pending));
+                    }
+                    if (null != listener) {
+                        listener.itemsDone(chunk);
+                    }
+                }
+            });
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onPublished(java.
+         * util.List)
+         */
+        @Override
+        protected void onPublished(List<BulkItem> chunks) {
+            itemsModel.itemsChanged(chunks);
+            showOutcome();
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onCompleted(java.
+         * lang.Object)
+         */
+        @Override
+        protected void onCompleted(List<BulkItem> result) {
+            finished();
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onFailed(java.lang
+         * .Exception)
+         */
+        @Override
+        protected void onFailed(Exception ex) {
+            super.onFailed(ex);
+            finished();
+            JOptionPane.showMessageDialog(BulkActionDialog.this, ex.getLocalizedMessage(), getTitle(),
+                    JOptionPane.ERROR_MESSAGE);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see com.yosanai.java.aws.console.panel.BackgroundTask#onCancelled()
+         */
+        @Override
+        protected void onCancelled() {
+            finished();
+        }
+    }
+
+    protected final AWSConnectionProvider awsConnectionProvider;
+
+    protected final TaskExecutor taskExecutor;
+
+    protected final BulkAction action;
+
+    protected final List<BulkItem> items;
+
+    protected final BulkListener listener;
+
+    protected final BulkItemsModel itemsModel;
+
+    protected BulkTask task;
+
+    protected JLabel lblOutcome = new JLabel();
+
+    protected JProgressBar prgItems = new JProgressBar();
+
+    protected JButton btnRetry = new JButton("Retry Failed");
+
+    protected JButton btnCancel = new JButton("Cancel");
+
+    protected JButton btnClose = new JButton("Close");
+
+    /**
+     * @param parent
+     * @param awsConnectionProvider
+     * @param taskExecutor
+     * @param action
+     * @param items
+     * @param listener
+     *            also notified as each chunk is done, on the thread that ran
+     *            it, may be null
+     */
+    public BulkActionDialog(Frame parent, AWSConnectionProvider awsConnectionProvider, TaskExecutor taskExecutor,
+            BulkAction action, List<BulkItem> items, BulkListener listener) {
+        super(parent, action.getTitle(), false);
+        this.awsConnectionProvider = awsConnectionProvider;
+        this.taskExecutor = taskExecutor;
+        this.action = action;
+        this.items = items;
+        this.listener = listener;
+        itemsModel = new BulkItemsModel(items);
+        JTable tblItems = new JTable(itemsModel);
+        tblItems.setAutoCreateRowSorter(true);
+        prgItems.setMaximum(items.size());
+        prgItems.setStringPainted(true);
+        JPanel pnlOutcome = new JPanel(new BorderLayout(5, 5));
+        pnlOutcome.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        pnlOutcome.add(lblOutcome, BorderLayout.PAGE_START);
+        pnlOutcome.add(prgItems, BorderLayout.CENTER);
+        JPanel pnlButtons = new JPanel(new FlowLayout(FlowLayout.TRAILING));
+        pnlButtons.add(btnRetry);
+        pnlButtons.add(btnCancel);
+        pnlButtons.add(btnClose);
+        getContentPane().add(pnlOutcome, BorderLayout.PAGE_START);
+        getContentPane().add(new JScrollPane(tblItems), BorderLayout.CENTER);
+        getContentPane().add(pnlButtons, BorderLayout.PAGE_END);
+        btnRetry.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                start();
+            }
+        });
+        btnCancel.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (null != task) {
+                    task.cancel(true);
+                }
+            }
+        });
+        btnClose.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dispose();
+            }
+        });
+        showOutcome();
+    }
+
+    /**
+     * Runs the action on the items that did not succeed yet, the dialog may
+     * be closed while it runs
+     */
+    public void start() {
+        int pending = 0;
+        for (BulkItem item : items) {
+            if (Status.SUCCEEDED != item.getStatus()) {
+                pending++;
+            }
+        }
+        if (0 < pending && (null == task || task.isDone())) {
+            task = taskExecutor.submit(new BulkTask(pending));
+            showOutcome();
+        }
+    }
+
+    /**
+     * @return the items of the action with their outcome
+     */
+    public List<BulkItem> getItems() {
+        return items;
+    }
+
+    protected void finished() {
+        itemsModel.fireTableDataChanged();
+        showOutcome();
+    }
+
+    protected void showOutcome() {
+        int[] counts = new int[Status.values().length];
+        for (BulkItem item : items) {
+            counts[item.getStatus().ordinal()]++;
+        }
+        boolean running = null != task && !task.isDone();
+        int unfinished = counts[Status.FAILED.ordinal()] + counts[Status.PENDING.ordinal()];
+        lblOutcome.setText(action.getTitle() + ": " + counts[Status.SUCCEEDED.ordinal()] + " of " + items.size()
+                + " succeeded, " + counts[Status.FAILED.ordinal()] + " failed"
+                + (running ? ", running" : (0 < counts[Status.PENDING.ordinal()] ? ", "
+                        + counts[Status.PENDING.ordinal()] + " not run" : "")));
+        prgItems.setValue(items.size() - counts[Status.PENDING.ordinal()]);
+        btnRetry.setEnabled(!running && 0 < unfinished);
+        btnCancel.setEnabled(running);
+    }
+
+}
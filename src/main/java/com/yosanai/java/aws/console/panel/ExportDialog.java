@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Frame;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+
+import javax.swing.BorderFactory;
+import javax.swing.ButtonGroup;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JTextField;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.yosanai.java.aws.console.inventory.InstanceExporter;
+import com.yosanai.java.aws.console.inventory.InstanceExporter.Format;
+
+/**
+ * Asks what to export, the selected instances or all of them, in which
+ * format and with which columns or template, and where to, a file or the
+ * clipboard.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+@SuppressWarnings({ "serial", "rawtypes" })
+public class ExportDialog extends JDialog {
+
+    /** A return status code - returned if Cancel button has been pressed */
+    public static final int RET_CANCEL = 0;
+
+    /** A return status code - returned if Export button has been pressed */
+    public static final int RET_OK = 1;
+
+    public static final String DEFAULT_COLUMNS = "instanceId,region,state,instanceType,availabilityZone,publicDnsName,publicIpAddress,privateIpAddress,launchTime,tags";
+
+    public static final String DEFAULT_TEMPLATE = "ssh ec2-user@${publicDnsName}";
+
+    protected JRadioButton rdoSelected = new JRadioButton();
+
+    protected JRadioButton rdoAll = new JRadioButton();
+
+    protected JComboBox cboFormat = new JComboBox();
+
+    protected JTextField txtColumns = new JTextField(DEFAULT_COLUMNS, 40);
+
+    protected JCheckBox chkHeader = new JCheckBox("Column names on the first line", true);
+
+    protected JTextField txtTemplate = new JTextField(DEFAULT_TEMPLATE, 40);
+
+    protected JRadioButton rdoFile = new JRadioButton("File", true);
+
+    protected JRadioButton rdoClipBoard = new JRadioButton("ClipBoard");
+
+    protected JButton btnExport = new JButton("Export");
+
+    protected JButton btnCancel = new JButton("Cancel");
+
+    protected InstanceExporter exporter;
+
+    protected File file;
+
+    protected int returnStatus = RET_CANCEL;
+
+    /**
+     * @param parent
+     * @param selected
+     *            the number of instances selected
+     * @param total
+     *            the number of instances in the inventory
+     */
+    @SuppressWarnings("unchecked")
+    public ExportDialog(Frame parent, int selected, int total) {
+        super(parent, "Export Instances", true);
+        rdoSelected.setText("Selected (" + selected + ")");
+        rdoAll.setText("All (" + total + ")");
+        rdoSelected.setEnabled(0 < selected);
+        rdoSelected.setSelected(0 < selected);
+        rdoAll.setSelected(0 == selected);
+        ButtonGroup grpInstances = new ButtonGroup();
+        grpInstances.add(rdoSelected);
+        grpInstances.add(rdoAll);
+        ButtonGroup grpTarget = new ButtonGroup();
+        grpTarget.add(rdoFile);
+        grpTarget.add(rdoClipBoard);
+        for (Format format : Format.values()) {
+            cboFormat.addItem(format);
+        }
+        txtColumns.setToolTipText("Comma separated, any of " + StringUtils.join(InstanceExporter.FIELDS, ", ")
+                + " or tag:<key>");
+        txtTemplate.setToolTipText("Written once per instance, ${field} being replaced by the field");
+        JPanel pnlInstances = new JPanel(new FlowLayout(FlowLayout.LEADING, 5, 0));
+        pnlInstances.add(rdoSelected);
+        pnlInstances.add(rdoAll);
+        JPanel pnlTarget = new JPanel(new FlowLayout(FlowLayout.LEADING, 5, 0));
+        pnlTarget.add(rdoFile);
+        pnlTarget.add(rdoClipBoard);
+        JPanel pnlCenter = new JPanel(new GridBagLayout());
+        pnlCenter.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        addRow(pnlCenter, 0, "Instances", pnlInstances);
+        addRow(pnlCenter, 1, "Format", cboFormat);
+        addRow(pnlCenter, 2, "Columns", txtColumns);
+        addRow(pnlCenter, 3, "", chkHeader);
+        addRow(pnlCenter, 4, "Template", txtTemplate);
+        addRow(pnlCenter, 5, "To", pnlTarget);
+        JPanel pnlButtons = new JPanel(new FlowLayout(FlowLayout.TRAILING));
+        pnlButtons.add(btnExport);
+        pnlButtons.add(btnCancel);
+        getContentPane().add(pnlCenter, BorderLayout.CENTER);
+        getContentPane().add(pnlButtons, BorderLayout.PAGE_END);
+        getRootPane().setDefaultButton(btnExport);
+        cboFormat.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showFormat();
+            }
+        });
+        btnExport.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                export();
+            }
+        });
+        btnCancel.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                doClose(RET_CANCEL);
+            }
+        });
+        showFormat();
+        pack();
+    }
+
+    protected static void addRow(JPanel panel, int row, String label, JComponent component) {
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridy = row;
+        constraints.anchor = GridBagConstraints.LINE_START;
+        constraints.insets = new Insets(2, 2, 2, 5);
+        panel.add(new JLabel(label), constraints);
+        constraints = new GridBagConstraints();
+        constraints.gridy = row;
+        constraints.weightx = 1;
+        constraints.fill = GridBagConstraints.HORIZONTAL;
+        constraints.insets = new Insets(2, 2, 2, 2);
+        panel.add(component, constraints);
+    }
+
+    protected Format getFormat() {
+        return (Format) cboFormat.getSelectedItem();
+    }
+
+    protected void showFormat() {
+        txtColumns.setEnabled(Format.TEMPLATE != getFormat());
+        chkHeader.setEnabled(Format.CSV == getFormat());
+        txtTemplate.setEnabled(Format.TEMPLATE == getFormat());
+    }
+
+    protected void export() {
+        InstanceExporter ret = null;
+        try {
+            if (Format.TEMPLATE == getFormat()) {
+                ret = new InstanceExporter(txtTemplate.getText());
+            } else {
+                ret = new InstanceExporter(getFormat(), InstanceExporter.toFields(txtColumns.getText()));
+                ret.setHeader(chkHeader.isSelected());
+            }
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), getTitle(), JOptionPane.ERROR_MESSAGE);
+        }
+        if (null != ret) {
+            File target = null;
+            boolean chosen = rdoClipBoard.isSelected();
+            if (!chosen) {
+                JFileChooser chooser = new JFileChooser();
+                chooser.setSelectedFile(new File("instances." + getFormat().getExtension()));
+                if (JFileChooser.APPROVE_OPTION == chooser.showSaveDialog(this)) {
+                    target = chooser.getSelectedFile();
+                    chosen = !target.exists()
+                            || JOptionPane.YES_OPTION == JOptionPane.showConfirmDialog(this, target.getName()
+                                    + " exists, replace it?", getTitle(), JOptionPane.YES_NO_OPTION);
+                }
+            }
+            if (chosen) {
+                exporter = ret;
+                file = target;
+                doClose(RET_OK);
+            }
+        }
+    }
+
+    /** @return the return status of this dialog - one of RET_OK or RET_CANCEL */
+    public int getReturnStatus() {
+        return returnStatus;
+    }
+
+    /**
+     * @return whether only the selected instances are exported
+     */
+    public boolean isSelectedOnly() {
+        return rdoSelected.isSelected();
+    }
+
+    /**
+     * @return the exporter, once the dialog is closed with
+     *         {@link #RET_OK}
+     */
+    public InstanceExporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * @return the file to export to, null for the clipboard
+     */
+    public File getFile() {
+        return file;
+    }
+
+    protected void doClose(int retStatus) {
+        returnStatus = retStatus;
+        setVisible(false);
+        dispose();
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.awt.Component;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import com.yosanai.java.aws.console.inventory.InstanceExporter;
+import com.yosanai.java.aws.console.inventory.InstanceStore;
+
+/**
+ * Exports instances of the local {@link InstanceStore} without calling AWS.
+ * The rows are read on the EDT, which the store is confined to, a batch at a
+ * time, and written from the background through a buffered writer, so only
+ * one batch is ever held however large the inventory. Instances that left the
+ * store since the export was asked for are skipped, a cancelled or failed
+ * export to a file removes the file.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public class ExportTask extends BackgroundTask<Integer, Void> {
+
+    public static final int BATCH_SIZE = 1000;
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final Component parent;
+
+    protected final InstanceStore store;
+
+    protected final String[] instanceIds;
+
+    protected final InstanceExporter exporter;
+
+    protected final File file;
+
+    protected StringWriter clipBoard;
+
+    /**
+     * @param parent
+     *            the component failures are reported over
+     * @param store
+     * @param instanceIds
+     *            the instances to export, in order
+     * @param exporter
+     * @param file
+     *            the file to write to, null to copy to the clipboard
+     */
+    public ExportTask(Component parent, InstanceStore store, String[] instanceIds, InstanceExporter exporter,
+            File file) {
+        super("Exporting " + instanceIds.length + " instances");
+        this.parent = parent;
+        this.store = store;
+        this.instanceIds = instanceIds;
+        this.exporter = exporter;
+        this.file = file;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.SwingWorker#doInBackground()
+     */
+    @Override
+    protected Integer doInBackground() throws Exception {
+        int ret = 0;
+        final String[][] batch = new String[Math.min(BATCH_SIZE, instanceIds.length)][exporter.getFields().length];
+        final boolean[] found = new boolean[batch.length];
+        boolean complete = false;
+        Writer out = null;
+        if (null == file) {
+            clipBoard = new StringWriter();
+            out = clipBoard;
+        } else {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), BUFFER_SIZE);
+        }
+        try {
+            exporter.writeHeader(out);
+            for (int start = 0; start < instanceIds.length && !isCancelled(); start += batch.length) {
+                final int from = start;
+                final int count = Math.min(batch.length, instanceIds.length - start);
+                try {
+                    SwingUtilities.invokeAndWait(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            for (int index = 0; index < count; index++) {
+                                int row = store.getRow(instanceIds[from + index]);
+                                found[index] = -1 != row;
+                                if (found[index]) {
+                                    exporter.read(store, row, batch[index]);
+                                }
+                            }
+                        }
+                    });
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                }
+                for (int index = 0; index < count; index++) {
+                    if (found[index]) {
+                        exporter.write(out, batch[index]);
+                        ret++;
+                    }
+                }
+                setNote((from + count) + " of " + instanceIds.length);
+                setProgress(100 * (from + count) / instanceIds.length);
+            }
+            out.flush();
+            complete = !isCancelled();
+        } finally {
+            out.close();
+            if (!complete && null != file) {
+                file.delete();
+            }
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.panel.BackgroundTask#onCompleted(java.lang
+     * .Object)
+     */
+    @Override
+    protected void onCompleted(Integer result) {
+        if (null == file) {
+            StringSelection clipData = new StringSelection(clipBoard.toString());
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(clipData, clipData);
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * com.yosanai.java.aws.console.panel.BackgroundTask#onFailed(java.lang.
+     * Exception)
+     */
+    @Override
+    protected void onFailed(Exception ex) {
+        super.onFailed(ex);
+        JOptionPane.showMessageDialog(parent, ex.getLocalizedMessage(), getTitle(), JOptionPane.ERROR_MESSAGE);
+    }
+
+}
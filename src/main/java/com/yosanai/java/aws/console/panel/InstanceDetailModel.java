@@ -0,0 +1,388 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Shows the properties of an instance as name and value rows. Nested beans,
+ * lists and maps such as the placement, block device mappings or tags get a
+ * single summary row and are only walked when the user expands them. The
+ * top level rows of each instance are cached against the described object,
+ * so going back to an instance that was not described again since costs
+ * nothing, and {@link #prepare(String, Object)} fills that cache from a
+ * background thread. The properties the user expanded stay expanded from one
+ * instance to the next.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+@SuppressWarnings("serial")
+public class InstanceDetailModel extends AbstractTableModel {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    protected static final String[] COLUMNS = { "Field Name", "Field Value" };
+
+    protected static final String INDENT = "    ";
+
+    protected static final Map<Class<?>, List<PropertyDescriptor>> DESCRIPTORS = new ConcurrentHashMap<Class<?>, List<PropertyDescriptor>>();
+
+    /**
+     * A row of the detail view
+     */
+    public static class Property {
+
+        protected final String path;
+
+        protected final String name;
+
+        protected final int depth;
+
+        protected final Object value;
+
+        protected final String text;
+
+        protected final boolean expandable;
+
+        protected List<Property> children;
+
+        /**
+         * @param parent
+         *            the property this one is nested in, null for top level
+         *            properties
+         * @param name
+         * @param value
+         */
+        protected Property(Property parent, String name, Object value) {
+            super();
+            this.path = null == parent ? name : parent.path + "." + name;
+            this.name = name;
+            this.depth = null == parent ? 0 : parent.depth + 1;
+            this.value = value;
+            this.expandable = null != value && !isSimple(value.getClass());
+            if (!expandable) {
+                text = null == value ? "" : value instanceof Enum<?> ? ((Enum<?>) value).name() : value.toString();
+            } else if (value instanceof Collection<?>) {
+                text = ((Collection<?>) value).size() + " items";
+            } else if (value instanceof Map<?, ?>) {
+                text = ((Map<?, ?>) value).size() + " entries";
+            } else {
+                text = value.toString();
+            }
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isExpandable() {
+            return expandable;
+        }
+
+        /**
+         * @return the nested properties, walked the first time they are
+         *         asked for
+         */
+        public List<Property> getChildren() {
+            if (null == children) {
+                children = expandable ? getProperties(this, value) : Collections.<Property> emptyList();
+            }
+            return children;
+        }
+    }
+
+    /**
+     * The top level properties of a described instance
+     */
+    protected static class Detail {
+
+        protected final Object bean;
+
+        protected final List<Property> properties;
+
+        protected Detail(Object bean, List<Property> properties) {
+            super();
+            this.bean = bean;
+            this.properties = properties;
+        }
+    }
+
+    protected final Map<String, Detail> cache;
+
+    protected final Set<String> expanded = new HashSet<String>();
+
+    protected List<Property> rows = new ArrayList<Property>();
+
+    protected String key;
+
+    public InstanceDetailModel() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize
+     *            the number of instances whose properties are kept
+     */
+    public InstanceDetailModel(final int cacheSize) {
+        super();
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, Detail>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Detail> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * @param type
+     * @return true if values of the type are shown as they are
+     */
+    protected static boolean isSimple(Class<?> type) {
+        return type.isPrimitive() || type.isEnum() || String.class == type || Boolean.class == type
+                || Character.class == type || Number.class.isAssignableFrom(type) || Date.class.isAssignableFrom(type);
+    }
+
+    /**
+     * @param type
+     * @return the readable properties of the type but its class
+     */
+    protected static List<PropertyDescriptor> getDescriptors(Class<?> type) {
+        List<PropertyDescriptor> ret = DESCRIPTORS.get(type);
+        if (null == ret) {
+            ret = new ArrayList<PropertyDescriptor>();
+            try {
+                BeanInfo beanInfo = Introspector.getBeanInfo(type, Object.class);
+                for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                    if (null != descriptor.getReadMethod()) {
+                        ret.add(descriptor);
+                    }
+                }
+            } catch (IntrospectionException ex) {
+                Logger.getLogger(InstanceDetailModel.class.getName()).log(Level.WARNING, type.getName(), ex);
+            }
+            DESCRIPTORS.put(type, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @param parent
+     *            null for the top level properties
+     * @param value
+     * @return the properties of a bean, the items of a collection or the
+     *         entries of a map
+     */
+    protected static List<Property> getProperties(Property parent, Object value) {
+        List<Property> ret = new ArrayList<Property>();
+        if (value instanceof Collection<?>) {
+            int index = 0;
+            for (Iterator<?> items = ((Collection<?>) value).iterator(); items.hasNext(); index++) {
+                ret.add(new Property(parent, "[" + index + "]", items.next()));
+            }
+        } else if (value instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                ret.add(new Property(parent, String.valueOf(entry.getKey()), entry.getValue()));
+            }
+        } else {
+            for (PropertyDescriptor descriptor : getDescriptors(value.getClass())) {
+                Method reader = descriptor.getReadMethod();
+                Object propertyValue = null;
+                try {
+                    propertyValue = reader.invoke(value);
+                } catch (Exception ex) {
+                    Logger.getLogger(InstanceDetailModel.class.getName()).log(Level.FINE, descriptor.getName(), ex);
+                }
+                ret.add(new Property(parent, descriptor.getName(), propertyValue));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Walks the top level properties of the bean unless they are cached for
+     * that very object, can be called from any thread
+     * 
+     * @param key
+     *            what the bean describes, the instance id
+     * @param bean
+     * @return the top level properties
+     */
+    public List<Property> prepare(String key, Object bean) {
+        Detail ret = cache.get(key);
+        if (null == ret || ret.bean != bean) {
+            ret = new Detail(bean, getProperties(null, bean));
+            cache.put(key, ret);
+        }
+        return ret.properties;
+    }
+
+    /**
+     * Shows the bean, must be called on the EDT
+     * 
+     * @param key
+     *            what the bean describes, the instance id
+     * @param bean
+     */
+    public void setObject(String key, Object bean) {
+        this.key = key;
+        List<Property> visible = new ArrayList<Property>();
+        addVisible(visible, prepare(key, bean));
+        rows = visible;
+        fireTableDataChanged();
+    }
+
+    /**
+     * @return what the shown bean describes
+     */
+    public String getKey() {
+        return key;
+    }
+
+    protected void addVisible(List<Property> visible, List<Property> properties) {
+        for (Property property : properties) {
+            visible.add(property);
+            if (property.isExpandable() && expanded.contains(property.getPath())) {
+                addVisible(visible, property.getChildren());
+            }
+        }
+    }
+
+    public Property getProperty(int row) {
+        return rows.get(row);
+    }
+
+    public boolean isExpanded(int row) {
+        return expanded.contains(rows.get(row).getPath());
+    }
+
+    /**
+     * Expands the row if it is collapsed and collapses it otherwise
+     * 
+     * @param row
+     */
+    public void toggle(int row) {
+        Property property = rows.get(row);
+        if (property.isExpandable()) {
+            if (expanded.remove(property.getPath())) {
+                int last = row;
+                while (last + 1 < rows.size() && rows.get(last + 1).getDepth() > property.getDepth()) {
+                    last++;
+                }
+                if (last > row) {
+                    rows.subList(row + 1, last + 1).clear();
+                    fireTableRowsDeleted(row + 1, last);
+                }
+            } else {
+                expanded.add(property.getPath());
+                List<Property> visible = new ArrayList<Property>();
+                addVisible(visible, property.getChildren());
+                if (!visible.isEmpty()) {
+                    rows.addAll(row + 1, visible);
+                    fireTableRowsInserted(row + 1, row + visible.size());
+                }
+            }
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.TableModel#getRowCount()
+     */
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.TableModel#getColumnCount()
+     */
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.AbstractTableModel#getColumnName(int)
+     */
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.TableModel#getValueAt(int, int)
+     */
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Property property = rows.get(rowIndex);
+        String ret = property.getText();
+        if (0 == columnIndex) {
+            String marker = property.isExpandable() ? expanded.contains(property.getPath()) ? "- " : "+ " : "  ";
+            ret = StringUtils.repeat(INDENT, property.getDepth()) + marker + property.getName();
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+/**
+ * Immutable tree of instances grouped on a list of levels such as region,
+ * availability zone and state. It is built away from the EDT, only the top
+ * level being grouped up front, deeper groups are only grouped once the tree
+ * asks for their children. Groups with more children than a page are split
+ * into pages so expanding them stays cheap.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public class InstanceTreeModel implements TreeModel {
+
+    /**
+     * 
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * 
+     */
+    public static final String UNKNOWN = "Unknown";
+
+    protected static final Comparator<Leaf> LEAF_ORDER = new Comparator<Leaf>() {
+
+        @Override
+        public int compare(Leaf one, Leaf two) {
+            return one.toString().compareToIgnoreCase(two.toString());
+        }
+    };
+
+    /**
+     * An instance, the values of the grouping levels included
+     */
+    public static class Leaf {
+        protected final String instanceId;
+
+        protected final String name;
+
+        protected final String[] keys;
+
+        /**
+         * @param instanceId
+         * @param name
+         * @param keys
+         *            the value of the instance on each grouping level
+         */
+        public Leaf(String instanceId, String name, String[] keys) {
+            super();
+            this.instanceId = instanceId;
+            this.name = name;
+            this.keys = keys;
+        }
+
+        /**
+         * @return the instanceId
+         */
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            String ret = instanceId;
+            if (null != name) {
+                ret += "(" + name + ")";
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * A group of instances sharing the value of a level, or a page of a
+     * larger group
+     */
+    public static class Group {
+        protected final String key;
+
+        protected final String label;
+
+        protected final int depth;
+
+        protected final int count;
+
+        protected final List<Leaf> members;
+
+        protected List<Object> children;
+
+        protected Group(String key, String label, int depth, List<Leaf> members, List<Object> children, int count) {
+            super();
+            this.key = key;
+            this.label = label;
+            this.depth = depth;
+            this.members = members;
+            this.children = children;
+            this.count = count;
+        }
+
+        /**
+         * @return the key identifying the group among its siblings
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the number of instances in the group
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return label + " (" + count + ")";
+        }
+    }
+
+    protected final String[] levels;
+
+    protected final int pageSize;
+
+    protected final Group root;
+
+    protected final Map<String, Leaf> leaves = new HashMap<String, Leaf>();
+
+    protected final List<TreeModelListener> listeners = new ArrayList<TreeModelListener>();
+
+    /**
+     * Groups the top level right away, so call it off the EDT
+     * 
+     * @param label
+     * @param levels
+     *            the grouping levels, from the root down
+     * @param members
+     *            the instances, their keys following <code>levels</code>
+     * @param pageSize
+     */
+    public InstanceTreeModel(String label, String[] levels, List<Leaf> members, int pageSize) {
+        super();
+        this.levels = levels;
+        this.pageSize = Math.max(2, pageSize);
+        for (Leaf leaf : members) {
+            leaves.put(leaf.getInstanceId(), leaf);
+        }
+        root = new Group(label, label, 0, members, null, members.size());
+        getChildren(root);
+    }
+
+    /**
+     * @return the grouping levels
+     */
+    public String[] getLevels() {
+        return levels;
+    }
+
+    protected List<Object> getChildren(Group group) {
+        if (null == group.children) {
+            List<Object> all = new ArrayList<Object>();
+            if (group.depth < levels.length) {
+                Map<String, List<Leaf>> byKey = new TreeMap<String, List<Leaf>>();
+                for (Leaf leaf : group.members) {
+                    String key = null == leaf.keys[group.depth] ? UNKNOWN : leaf.keys[group.depth];
+                    List<Leaf> members = byKey.get(key);
+                    if (null == members) {
+                        members = new ArrayList<Leaf>();
+                        byKey.put(key, members);
+                    }
+                    members.add(leaf);
+                }
+                for (Map.Entry<String, List<Leaf>> entry : byKey.entrySet()) {
+                    all.add(new Group(entry.getKey(), entry.getKey(), group.depth + 1, entry.getValue(), null, entry
+                            .getValue().size()));
+                }
+            } else {
+                List<Leaf> sorted = new ArrayList<Leaf>(group.members);
+                Collections.sort(sorted, LEAF_ORDER);
+                all.addAll(sorted);
+            }
+            group.children = paginate(group, all);
+        }
+        return group.children;
+    }
+
+    protected List<Object> paginate(Group group, List<Object> all) {
+        List<Object> ret = all;
+        if (pageSize < all.size()) {
+            ret = new ArrayList<Object>();
+            for (int from = 0; from < all.size(); from += pageSize) {
+                List<Object> page = new ArrayList<Object>(all.subList(from, Math.min(all.size(), from + pageSize)));
+                int count = 0;
+                for (Object child : page) {
+                    count += child instanceof Group ? ((Group) child).count : 1;
+                }
+                ret.add(new Group("#" + from, getKey(page.get(0)) + " .. " + getKey(page.get(page.size() - 1)),
+                        group.depth, null, page, count));
+            }
+        }
+        return ret;
+    }
+
+    protected static String getKey(Object node) {
+        return node instanceof Group ? ((Group) node).key : ((Leaf) node).instanceId;
+    }
+
+    /**
+     * @param instanceId
+     * @return the path to the instance, null if it is not in the tree
+     */
+    public TreePath getPath(String instanceId) {
+        TreePath ret = null;
+        Leaf leaf = leaves.get(instanceId);
+        if (null != leaf) {
+            ret = find(new TreePath(root), leaf);
+        }
+        return ret;
+    }
+
+    protected TreePath find(TreePath path, Leaf leaf) {
+        TreePath ret = null;
+        Group group = (Group) path.getLastPathComponent();
+        String key = group.depth < levels.length ? (null == leaf.keys[group.depth] ? UNKNOWN
+                : leaf.keys[group.depth]) : null;
+        List<Object> children = getChildren(group);
+        for (int index = 0; null == ret && index < children.size(); index++) {
+            Object child = children.get(index);
+            if (child == leaf) {
+                ret = path.pathByAddingChild(child);
+            } else if (child instanceof Group) {
+                Group other = (Group) child;
+                if (other.depth == group.depth || (null != key && key.equals(other.key))) {
+                    ret = find(path.pathByAddingChild(child), leaf);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param path
+     *            a path of this or an earlier model
+     * @return the keys of the groups along the path, to find the same groups
+     *         in a later model
+     */
+    public static List<String> getKeys(TreePath path) {
+        List<String> ret = new ArrayList<String>();
+        for (int index = 1; index < path.getPathCount(); index++) {
+            Object node = path.getPathComponent(index);
+            if (node instanceof Group) {
+                ret.add(((Group) node).key);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param keys
+     * @return the path to the group with the given keys, or to the deepest
+     *         group found along them
+     */
+    public TreePath getPath(List<String> keys) {
+        TreePath ret = new TreePath(root);
+        for (String key : keys) {
+            Object next = null;
+            for (Object child : getChildren((Group) ret.getLastPathComponent())) {
+                if (child instanceof Group && key.equals(((Group) child).key)) {
+                    next = child;
+                    break;
+                }
+            }
+            if (null == next) {
+                break;
+            }
+            ret = ret.pathByAddingChild(next);
+        }
+        return ret;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getRoot()
+     */
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getChild(java.lang.Object, int)
+     */
+    @Override
+    public Object getChild(Object parent, int index) {
+        return getChildren((Group) parent).get(index);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getChildCount(java.lang.Object)
+     */
+    @Override
+    public int getChildCount(Object parent) {
+        return parent instanceof Group ? getChildren((Group) parent).size() : 0;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.tree.TreeModel#isLeaf(java.lang.Object)
+     */
+    @Override
+    public boolean isLeaf(Object node) {
+        return node instanceof Leaf;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * javax.swing.tree.TreeModel#valueForPathChanged(javax.swing.tree.TreePath,
+     * java.lang.Object)
+     */
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.tree.TreeModel#getIndexOfChild(java.lang.Object,
+     * java.lang.Object)
+     */
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        return parent instanceof Group ? getChildren((Group) parent).indexOf(child) : -1;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * javax.swing.tree.TreeModel#addTreeModelListener(javax.swing.event.TreeModelListener
+     * )
+     */
+    @Override
+    public void addTreeModelListener(TreeModelListener listener) {
+        listeners.add(listener);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * javax.swing.tree.TreeModel#removeTreeModelListener(javax.swing.event.
+     * TreeModelListener)
+     */
+    @Override
+    public void removeTreeModelListener(TreeModelListener listener) {
+        listeners.remove(listener);
+    }
+
+}
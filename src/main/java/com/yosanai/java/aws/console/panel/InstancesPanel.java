@@ -22,29 +22,72 @@
 
 package com.yosanai.java.aws.console.panel;
 
-import java.awt.Toolkit;
-import java.awt.datatransfer.StringSelection;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.Closeable;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
+import javax.swing.JTable;
+import javax.swing.ProgressMonitor;
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableModel;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
+import org.apache.commons.configuration.Configuration;
 import org.apache.commons.lang.StringUtils;
 
-import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.Instance;
-import com.amazonaws.services.ec2.model.Reservation;
-import com.amazonaws.services.ec2.model.Tag;
+import com.amazonaws.services.ec2.model.InstanceType;
 import com.yosanai.java.aws.console.AWSAware;
 import com.yosanai.java.aws.console.AWSConnectionProvider;
-import com.yosanai.java.swing.editor.ObjectEditorTableModel;
+import com.yosanai.java.aws.console.ApiTerminationListener;
+import com.yosanai.java.aws.console.AsyncAWSConnectionProvider;
+import com.yosanai.java.aws.console.InstanceStateListener;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkAction;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkItem;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkListener;
+import com.yosanai.java.aws.console.ec2.DescribeInstancesPager;
+import com.yosanai.java.aws.console.ec2.InstanceQuery;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener;
+import com.yosanai.java.aws.console.inventory.InstanceDelta;
+import com.yosanai.java.aws.console.inventory.InstanceExporter;
+import com.yosanai.java.aws.console.inventory.InstanceIndex;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+import com.yosanai.java.aws.console.inventory.InstanceSearchIndex;
+import com.yosanai.java.aws.console.inventory.InstanceStore;
 
 /**
  * 
@@ -53,131 +96,1261 @@ import com.yosanai.java.swing.editor.ObjectEditorTableModel;
 @SuppressWarnings("serial")
 public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
 
+    private static final String TREE_ROOT = "Instances";
+
+    private static final String REFRESH = "refresh";
+
+    private static final String PREFETCH = "prefetch";
+
+    private static final int PREFETCH_DISTANCE = 5;
+
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd:HH-mm");
 
-    protected AWSConnectionProvider awsConnectionProvider;
+    protected AWSConnectionProvider awsConnectionProvider;
+
+    protected JFrame parentFrame;
+
+    protected String nameTag = "name";
+
+    protected InstanceDetailModel instanceTableModel = new InstanceDetailModel();
+
+    protected String[] treeLevels = { InstanceIndex.REGION, InstanceIndex.AZ, InstanceIndex.STATE };
+
+    protected BackgroundTask<InstanceTreeModel, Void> treeBuilder;
+
+    protected boolean treeDirty;
+
+    protected InstanceStore store = new InstanceStore();
+
+    protected InstancesTableModel instancesTableModel = new InstancesTableModel(store);
+
+    protected InstancesRowSorter instancesRowSorter = new InstancesRowSorter(instancesTableModel);
+
+    protected int pageSize = DescribeInstancesPager.DEFAULT_PAGE_SIZE;
+
+    protected TaskExecutor taskExecutor = new TaskExecutor();
+
+    protected RefreshScheduler refreshScheduler = new RefreshScheduler(new AutoRefresh());
+
+    protected volatile InstanceQuery query;
+
+    protected InstanceStateUpdater instanceStateUpdater = new InstanceStateUpdater();
+
+    protected Set<String> stale = new HashSet<String>();
+
+    protected InstanceSearchIndex searchIndex;
+
+    protected InstanceSearchIndex.Result searchResult;
+
+    protected BackgroundTask<InstanceSearchIndex, Void> searchIndexBuilder;
+
+    protected Set<String> searchPending = new HashSet<String>();
+
+    protected boolean searchScheduled;
+
+    /**
+     * Fills in the "Terminate via API" column as the provider resolves it
+     */
+    protected class ApiTerminationUpdater implements ApiTerminationListener {
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.ApiTerminationListener#apiTerminationLoaded
+         * (java.lang.String, boolean)
+         */
+        @Override
+        public void apiTerminationLoaded(final String instanceId, final boolean apiTermination) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    setApiTerminationCell(instanceId, apiTermination);
+                }
+            });
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.ApiTerminationListener#apiTerminationFailed
+         * (java.lang.String, java.lang.Exception)
+         */
+        @Override
+        public void apiTerminationFailed(String instanceId, Exception ex) {
+            Logger.getLogger(InstancesPanel.class.getName()).log(Level.WARNING, instanceId, ex);
+        }
+    }
+
+    /**
+     * Patches the rows of watched instances as their state changes
+     */
+    protected class InstanceStateUpdater implements InstanceStateListener {
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.InstanceStateListener#instanceStateChanged
+         * (com.yosanai.java.aws.console.inventory.InstanceRecord)
+         */
+        @Override
+        public void instanceStateChanged(final InstanceRecord record) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (store.contains(record.getInstanceId())) {
+                        applyDeltas(store.diff(Collections.singletonList(record)));
+                    }
+                }
+            });
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.InstanceStateListener#instanceWaitFinished
+         * (java.lang.String, java.lang.String, boolean)
+         */
+        @Override
+        public void instanceWaitFinished(String instanceId, String state, boolean reached) {
+            if (!reached) {
+                Logger.getLogger(InstancesPanel.class.getName()).log(Level.INFO,
+                        "Stopped waiting for " + instanceId + " in state " + state);
+            }
+        }
+    }
+
+    /**
+     * Formats launch times and API termination flags and greys out the rows
+     * still showing the inventory saved by the previous session
+     */
+    protected class StaleRowRenderer extends DefaultTableCellRenderer {
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * javax.swing.table.DefaultTableCellRenderer#getTableCellRendererComponent
+         * (javax.swing.JTable, java.lang.Object, boolean, boolean, int, int)
+         */
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                boolean hasFocus, int row, int column) {
+            Object text = value;
+            if (value instanceof Date) {
+                text = DATE_FORMAT.format((Date) value);
+            } else if (Boolean.class == table.getColumnClass(column)) {
+                text = InstancesTableModel.toText((Boolean) value);
+            }
+            super.getTableCellRendererComponent(table, text, isSelected, hasFocus, row, column);
+            String toolTip = null;
+            if (!stale.isEmpty() && instancesTableModel == table.getModel()) {
+                String instanceId = instancesTableModel.getInstanceId(table.convertRowIndexToModel(row));
+                if (stale.contains(instanceId)) {
+                    if (!isSelected) {
+                        setForeground(Color.GRAY);
+                    }
+                    setFont(getFont().deriveFont(Font.ITALIC));
+                    toolTip = "Last known as of "
+                            + DATE_FORMAT.format(new Date(store.getLoadedAt(store.getRow(instanceId))))
+                            + ", refreshing";
+                }
+            }
+            if (null == toolTip && !isSelected) {
+                setForeground(table.getForeground());
+            }
+            setToolTipText(toolTip);
+            return this;
+        }
+    }
+
+    /**
+     * Reports failures of an asynchronous action to the user
+     */
+    protected class ActionCallback<T> extends SwingAsyncCallback<T> {
+        protected final String title;
+
+        /**
+         * @param title
+         */
+        protected ActionCallback(String title) {
+            super();
+            this.title = title;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.SwingAsyncCallback#onCompleted(java
+         * .lang.Object)
+         */
+        @Override
+        protected void onCompleted(T result) {
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.SwingAsyncCallback#onFailed(java
+         * .lang.Exception)
+         */
+        @Override
+        protected void onFailed(Exception ex) {
+            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
+            JOptionPane.showMessageDialog(InstancesPanel.this, ex.getLocalizedMessage(), title,
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Fetches the key pairs and security groups concurrently and shows the
+     * launch dialog once both are in
+     */
+    protected class LaunchDialogLoader {
+        protected Collection<String> keyNames;
+
+        protected Collection<String> securityGroups;
+
+        protected Exception failure;
+
+        protected int pending = 2;
+
+        protected void load() {
+            getAsyncConnectionProvider().getKeyPairNamesAsync(new SwingAsyncCallback<Collection<String>>() {
+
+                @Override
+                protected void onCompleted(Collection<String> result) {
+                    keyNames = result;
+                    loaded();
+                }
+
+                @Override
+                protected void onFailed(Exception ex) {
+                    failure = ex;
+                    loaded();
+                }
+            });
+            getAsyncConnectionProvider().getSecurityGroupsAsync(new SwingAsyncCallback<Collection<String>>() {
+
+                @Override
+                protected void onCompleted(Collection<String> result) {
+                    securityGroups = result;
+                    loaded();
+                }
+
+                @Override
+                protected void onFailed(Exception ex) {
+                    failure = ex;
+                    loaded();
+                }
+            });
+        }
+
+        protected void loaded() {
+            if (0 == --pending) {
+                if (null == failure) {
+                    showLaunchDialog(keyNames, securityGroups);
+                } else {
+                    Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, failure);
+                    JOptionPane.showMessageDialog(InstancesPanel.this, failure.getLocalizedMessage(),
+                            "Failed to launch", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shows the progress of a launch chunk by chunk and offers to retry the
+     * chunks that failed, using the same client token so chunks already
+     * launched are not launched again
+     */
+    protected class LaunchTracker extends ActionCallback<List<LaunchChunk>> implements LaunchListener {
+        protected final String amiId;
+
+        protected final InstanceType instanceType;
+
+        protected final int instanceCount;
+
+        protected final String keyName;
+
+        protected final Collection<String> securityGroups;
+
+        protected final boolean terminateViaAPI;
+
+        protected final Map<String, String> tags;
+
+        protected final String clientToken = UUID.randomUUID().toString();
+
+        protected final AtomicInteger launched = new AtomicInteger();
+
+        protected ProgressMonitor monitor;
+
+        protected Future<List<LaunchChunk>> future;
+
+        protected LaunchTracker(String amiId, InstanceType instanceType, int instanceCount, String keyName,
+                Collection<String> securityGroups, boolean terminateViaAPI, Map<String, String> tags) {
+            super("Failed to launch");
+            this.amiId = amiId;
+            this.instanceType = instanceType;
+            this.instanceCount = instanceCount;
+            this.keyName = keyName;
+            this.securityGroups = securityGroups;
+            this.terminateViaAPI = terminateViaAPI;
+            this.tags = tags;
+        }
+
+        protected void launch() {
+            launched.set(0);
+            monitor = new ProgressMonitor(InstancesPanel.this, "Launching " + instanceCount + " instances", null, 0,
+                    instanceCount);
+            future = getAsyncConnectionProvider().launchInstancesAsync(amiId, instanceType, instanceCount, keyName,
+                    securityGroups, terminateViaAPI, tags, clientToken, this, this);
+        }
+
+        protected void progress(final String note) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (monitor.isCanceled()) {
+                        future.cancel(true);
+                    } else {
+                        monitor.setNote(note);
+                        monitor.setProgress(launched.get());
+                    }
+                }
+            });
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener#chunkLaunched
+         * (com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk)
+         */
+        @Override
+        public void chunkLaunched(LaunchChunk chunk) {
+            progress("Launched " + launched.addAndGet(chunk.getInstanceIds().size()) + " of " + instanceCount);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener#chunkFailed
+         * (com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk,
+         * java.lang.Exception)
+         */
+        @Override
+        public void chunkFailed(LaunchChunk chunk, Exception ex) {
+            Logger.getLogger(InstancesPanel.class.getName()).log(Level.WARNING, chunk.toString(), ex);
+            progress("Chunk " + (chunk.getIndex() + 1) + " failed: " + ex.getLocalizedMessage());
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.InstancesPanel.ActionCallback#onCompleted
+         * (java.lang.Object)
+         */
+        @Override
+        protected void onCompleted(List<LaunchChunk> chunks) {
+            monitor.close();
+            int failed = 0;
+            int total = 0;
+            Exception failure = null;
+            for (LaunchChunk chunk : chunks) {
+                total += chunk.getInstanceIds().size();
+                if (null != chunk.getFailure()) {
+                    failed++;
+                    failure = chunk.getFailure();
+                }
+            }
+            loadInstances();
+            if (null != failure
+                    && JOptionPane.YES_OPTION == JOptionPane.showConfirmDialog(InstancesPanel.this, "Launched " + total
+                            + " of " + instanceCount + " instances, " + failed + " of " + chunks.size()
+                            + " chunks failed: " + failure.getLocalizedMessage() + "\nRetry the failed chunks?",
+                            title, JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE)) {
+                launch();
+            }
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.InstancesPanel.ActionCallback#onFailed
+         * (java.lang.Exception)
+         */
+        @Override
+        protected void onFailed(Exception ex) {
+            monitor.close();
+            if (ex instanceof CancellationException) {
+                loadInstances();
+            } else {
+                super.onFailed(ex);
+            }
+        }
+    }
+
+    /**
+     * Describes the instances page by page and patches the table with each
+     * batch of pages the EDT picks up, then drops the instances no page had.
+     * Superseded refreshes stop fetching and deliver nothing more.
+     */
+    protected class RefreshTask extends BackgroundTask<Set<String>, List<InstanceRecord>> {
+
+        protected final InstanceQuery current;
+
+        /**
+         * @param current
+         *            the query instances must match, null for all of them
+         */
+        protected RefreshTask(InstanceQuery current) {
+            super("Refreshing instances");
+            this.current = current;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.SwingWorker#doInBackground()
+         */
+        @Override
+        protected Set<String> doInBackground() throws Exception {
+            Set<String> ret = new HashSet<String>();
+            Iterator<List<InstanceRecord>> pages = null;
+            try {
+                if (null == current) {
+                    pages = awsConnectionProvider.getInstancePages(pageSize);
+                } else {
+                    pages = Collections.singletonList(awsConnectionProvider.getInstanceRecords(current)).iterator();
+                }
+                while (!isCancelled() && pages.hasNext()) {
+                    List<InstanceRecord> page = pages.next();
+                    for (InstanceRecord record : page) {
+                        ret.add(record.getInstanceId());
+                    }
+                    publish(page);
+                    setNote(ret.size() + " instances");
+                }
+            } finally {
+                if (pages instanceof Closeable) {
+                    try {
+                        ((Closeable) pages).close();
+                    } catch (IOException ex) {
+                        Logger.getLogger(InstancesPanel.class.getName()).log(Level.FINE, null, ex);
+                    }
+                }
+            }
+            return ret;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onPublished(java
+         * .util.List)
+         */
+        @Override
+        protected void onPublished(List<List<InstanceRecord>> pages) {
+            List<InstanceRecord> batch = pages.get(0);
+            if (1 < pages.size()) {
+                batch = new ArrayList<InstanceRecord>();
+                for (List<InstanceRecord> page : pages) {
+                    batch.addAll(page);
+                }
+            }
+            applyDeltas(store.diff(batch));
+            markLive(batch);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onCompleted(java
+         * .lang.Object)
+         */
+        @Override
+        protected void onCompleted(Set<String> seen) {
+            applyDeltas(store.removed(seen));
+            refreshScheduler.refreshed(true);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onFailed(java.lang
+         * .Exception)
+         */
+        @Override
+        protected void onFailed(Exception ex) {
+            super.onFailed(ex);
+            refreshScheduler.refreshed(false);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.BackgroundTask#onCancelled()
+         */
+        @Override
+        protected void onCancelled() {
+            if (this == taskExecutor.getLatest(REFRESH)) {
+                refreshScheduler.refreshed(true);
+            }
+        }
+    }
+
+    /**
+     * Lets the {@link RefreshScheduler} refresh the instances, faster while
+     * one of them is pending, stopping or shutting down
+     */
+    protected class AutoRefresh implements RefreshScheduler.Target {
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.RefreshScheduler.Target#isRefreshing
+         * ()
+         */
+        @Override
+        public boolean isRefreshing() {
+            return null != taskExecutor.getLatest(REFRESH);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.RefreshScheduler.Target#isTransitioning
+         * ()
+         */
+        @Override
+        public boolean isTransitioning() {
+            return store.isTransitioning();
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see
+         * com.yosanai.java.aws.console.panel.RefreshScheduler.Target#refresh()
+         */
+        @Override
+        public void refresh() {
+            loadInstances();
+        }
+    }
+
+    /** Creates new form InstancesPanel */
+    public InstancesPanel() {
+        initComponents();
+        instancesRowSorter.setTaskExecutor(taskExecutor);
+        trInstances.setModel(new InstanceTreeModel(TREE_ROOT, treeLevels, new ArrayList<InstanceTreeModel.Leaf>(),
+                InstanceTreeModel.DEFAULT_PAGE_SIZE));
+        txtSearch.getDocument().addDocumentListener(new DocumentListener() {
+
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                scheduleSearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                scheduleSearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                scheduleSearch();
+            }
+        });
+        tblInstances.addMouseListener(new MouseAdapter() {
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = tblInstances.rowAtPoint(e.getPoint());
+                if (instanceTableModel == tblInstances.getModel() && -1 != row
+                        && (1 < e.getClickCount() || 0 == tblInstances.columnAtPoint(e.getPoint()))) {
+                    instanceTableModel.toggle(tblInstances.convertRowIndexToModel(row));
+                }
+            }
+        });
+        trInstances.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        StaleRowRenderer renderer = new StaleRowRenderer();
+        tblInstances.setDefaultRenderer(Object.class, renderer);
+        tblInstances.setDefaultRenderer(Date.class, renderer);
+        tblInstances.setDefaultRenderer(Boolean.class, renderer);
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize
+     *            the number of instances to describe and render at a time
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the query, null when every instance is shown
+     */
+    public InstanceQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @param expression
+     *            the {@link InstanceQuery} expression instances must match to
+     *            be shown, blank to show every instance
+     * @throws IllegalArgumentException
+     *             if the expression cannot be parsed
+     */
+    public void setQuery(String expression) {
+        InstanceQuery parsed = InstanceQuery.parse(expression);
+        query = parsed.isEmpty() ? null : parsed;
+    }
+
+    /**
+     * @return the taskExecutor
+     */
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * @param taskExecutor
+     *            the executor running the background work of the panel
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        instancesRowSorter.setTaskExecutor(taskExecutor);
+    }
+
+    /**
+     * @return the scheduler refreshing the instances on its own
+     */
+    public RefreshScheduler getRefreshScheduler() {
+        return refreshScheduler;
+    }
+
+    /**
+     * Applies the auto refresh settings
+     * 
+     * @param config
+     */
+    public void updateConfig(Configuration config) {
+        refreshScheduler.configure(
+                1000L * config.getLong(AWSConnectionProvider.AWS_REFRESH_FAST,
+                        RefreshScheduler.DEFAULT_FAST_INTERVAL / 1000L),
+                1000L * config.getLong(AWSConnectionProvider.AWS_REFRESH_SLOW,
+                        RefreshScheduler.DEFAULT_SLOW_INTERVAL / 1000L),
+                config.getInt(AWSConnectionProvider.AWS_REFRESH_BUDGET, RefreshScheduler.DEFAULT_BUDGET));
+        refreshScheduler.setEnabled(config.getBoolean(AWSConnectionProvider.AWS_REFRESH_AUTO, true));
+    }
+
+    /**
+     * @param active
+     *            false while the instances cannot be seen, which pauses the
+     *            auto refresh
+     */
+    public void setAutoRefreshActive(boolean active) {
+        refreshScheduler.setActive(active);
+    }
+
+    /**
+     * @return the nameTag
+     */
+    public String getNameTag() {
+        return nameTag;
+    }
+
+    /**
+     * @param nameTag
+     *            the nameTag to set
+     */
+    public void setNameTag(String nameTag) {
+        this.nameTag = nameTag;
+    }
 
-    protected JFrame parentFrame;
+    /**
+     * @return the treeLevels
+     */
+    public String[] getTreeLevels() {
+        return treeLevels;
+    }
 
-    protected String nameTag = "name";
+    /**
+     * @param treeLevels
+     *            the levels the tree groups instances on, from the root
+     *            down, each one an {@link InstanceIndex} dimension such as
+     *            <code>region</code>, <code>az</code>, <code>state</code> or
+     *            <code>tag:role</code>, or <code>name</code> for the name tag
+     */
+    public void setTreeLevels(String... treeLevels) {
+        this.treeLevels = treeLevels;
+        rebuildTree();
+    }
 
-    protected DefaultTableModel instancesTableModel;
+    /**
+     * Refreshes the instances in the background, cancelling the refresh still
+     * running if any
+     */
+    public void loadInstances() {
+        taskExecutor.submit(REFRESH, new RefreshTask(query));
+    }
 
-    protected ObjectEditorTableModel instanceTableModel;
+    /**
+     * Shows the inventory saved by the previous session until the live load
+     * replaces it, must be called on the EDT. Reading the snapshot takes
+     * milliseconds so it is done in place.
+     */
+    protected void loadSnapshot() {
+        Map<String, Boolean> apiTermination = new HashMap<String, Boolean>();
+        List<InstanceRecord> records = awsConnectionProvider.getSnapshot(apiTermination);
+        if (!records.isEmpty() && store.isEmpty()) {
+            for (InstanceRecord record : records) {
+                stale.add(record.getInstanceId());
+            }
+            applyDeltas(store.diff(records));
+            for (Map.Entry<String, Boolean> entry : apiTermination.entrySet()) {
+                setApiTerminationCell(entry.getKey(), entry.getValue());
+            }
+        }
+    }
 
-    public class InstanceObjectWrapper {
-        protected Instance instance;
+    /**
+     * Clears the stale mark of the rows confirmed by a live load, must be
+     * called on the EDT
+     * 
+     * @param page
+     */
+    protected void markLive(List<InstanceRecord> page) {
+        boolean changed = false;
+        for (int index = 0; !stale.isEmpty() && index < page.size(); index++) {
+            changed |= stale.remove(page.get(index).getInstanceId());
+        }
+        if (changed) {
+            tblInstances.repaint();
+        }
+    }
 
-        protected String name;
+    protected String getName(int row) {
+        return store.getTag(row, nameTag);
+    }
 
-        /**
-         * @param instance
-         * @param name
-         */
-        private InstanceObjectWrapper(Instance instance, String name) {
-            super();
-            this.instance = instance;
-            this.name = name;
+    /**
+     * @param instanceId
+     * @return the full instance as last described, or as much of it as the
+     *         store keeps if the inventory dropped it, null if it is not
+     *         shown any more
+     */
+    protected Instance getDetail(String instanceId) {
+        InstanceRecord ret = awsConnectionProvider.getInventory().peek(instanceId);
+        if (null == ret && store.contains(instanceId)) {
+            ret = store.toRecord(store.getRow(instanceId));
         }
+        return null == ret ? null : ret.getInstance();
+    }
 
-        /*
-         * (non-Jsdoc)
-         * 
-         * @see java.lang.Object#toString()
-         */
-        @Override
-        public String toString() {
-            String ret = instance.getInstanceId();
-            if (null != name) {
-                ret += "(" + name + ")";
+    /**
+     * Patches the table and the tree with the given deltas, must be called on
+     * the EDT. Rows and nodes that did not change are left alone so the
+     * selection, scroll position and expanded state survive a refresh.
+     * 
+     * @param deltas
+     */
+    protected void applyDeltas(List<InstanceDelta> deltas) {
+        List<String> removedIds = new ArrayList<String>();
+        List<InstanceRecord> changed = new ArrayList<InstanceRecord>();
+        List<InstanceRecord> added = new ArrayList<InstanceRecord>();
+        for (InstanceDelta delta : deltas) {
+            switch (delta.getType()) {
+            case REMOVED:
+                removedIds.add(delta.getInstanceId());
+                stale.remove(delta.getInstanceId());
+                break;
+            case CHANGED:
+                changed.add(delta.getCurrent());
+                break;
+            case ADDED:
+                added.add(delta.getCurrent());
+                break;
             }
-            return ret;
+        }
+        if (!removedIds.isEmpty()) {
+            String[] selected = instancesTableModel == tblInstances.getModel() ? getSelectedInstances() : null;
+            instancesTableModel.rowsRemoved(store.removeAll(removedIds));
+            if (null != selected && 0 == tblInstances.getSelectedRowCount()) {
+                for (String instanceId : selected) {
+                    int row = store.getRow(instanceId);
+                    row = -1 == row ? -1 : tblInstances.convertRowIndexToView(row);
+                    if (-1 != row) {
+                        tblInstances.addRowSelectionInterval(row, row);
+                    }
+                }
+            }
+        }
+        int firstChanged = Integer.MAX_VALUE;
+        int lastChanged = -1;
+        String selectedId = getSelectedLeaf();
+        for (InstanceRecord record : changed) {
+            int row = store.put(record);
+            firstChanged = Math.min(firstChanged, row);
+            lastChanged = Math.max(lastChanged, row);
+            if (record.getInstanceId().equals(selectedId) && instanceTableModel == tblInstances.getModel()) {
+                instanceTableModel.setObject(record.getInstanceId(), record.getInstance());
+            }
+        }
+        instancesTableModel.rowsChanged(firstChanged, lastChanged);
+        if (!added.isEmpty()) {
+            int firstRow = store.size();
+            List<String> instanceIds = new ArrayList<String>();
+            for (InstanceRecord record : added) {
+                store.put(record);
+                instanceIds.add(record.getInstanceId());
+            }
+            instancesTableModel.rowsAdded(firstRow);
+            awsConnectionProvider.prefetchApiTermination(instanceIds, new ApiTerminationUpdater());
+        }
+        if (!deltas.isEmpty()) {
+            rebuildTree();
+            refreshScheduler.reschedule();
+            List<String> instanceIds = new ArrayList<String>(removedIds);
+            for (InstanceRecord record : changed) {
+                instanceIds.add(record.getInstanceId());
+            }
+            for (InstanceRecord record : added) {
+                instanceIds.add(record.getInstanceId());
+            }
+            updateSearchIndex(instanceIds);
         }
     }
 
-    /** Creates new form InstancesPanel */
-    public InstancesPanel() {
-        initComponents();
-        DefaultTreeModel treeModel = (DefaultTreeModel) trInstances.getModel();
-        DefaultMutableTreeNode rootNode = (DefaultMutableTreeNode) treeModel.getRoot();
-        rootNode.setAllowsChildren(true);
-        rootNode.setUserObject("Instances");
-        instancesTableModel = (DefaultTableModel) tblInstances.getModel();
-        instanceTableModel = new ObjectEditorTableModel();
-        instanceTableModel.setEditable(false);
-        instanceTableModel.setExpandAllProperties(true);
-        trInstances.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+    /**
+     * @return the id of the instance selected in the tree, null if none is
+     */
+    protected String getSelectedLeaf() {
+        TreePath path = trInstances.getSelectionPath();
+        return null != path && path.getLastPathComponent() instanceof InstanceTreeModel.Leaf ? ((InstanceTreeModel.Leaf) path
+                .getLastPathComponent()).getInstanceId() : null;
     }
 
     /**
-     * @return the nameTag
+     * @param row
+     * @return what the quick search looks at
      */
-    public String getNameTag() {
-        return nameTag;
+    protected String[] getSearchFields(int row) {
+        return new String[] { store.getId(row), store.getPublicIp(row), store.getPrivateIp(row),
+                store.getPublicDnsName(row), store.getPrivateDnsName(row), store.getTags(row) };
     }
 
     /**
-     * @param nameTag
-     *            the nameTag to set
+     * Indexes the instances for the quick search in the background the first
+     * time it is used, the changes made meanwhile are applied once it is
+     * built
      */
-    public void setNameTag(String nameTag) {
-        this.nameTag = nameTag;
+    protected void buildSearchIndex() {
+        if (null == searchIndex && null == searchIndexBuilder) {
+            final String[][] rows = new String[store.size()][];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = getSearchFields(row);
+            }
+            searchIndexBuilder = new BackgroundTask<InstanceSearchIndex, Void>("Indexing instances") {
+
+                @Override
+                protected InstanceSearchIndex doInBackground() throws Exception {
+                    InstanceSearchIndex ret = new InstanceSearchIndex();
+                    for (int row = 0; !isCancelled() && row < rows.length; row++) {
+                        ret.put(rows[row][0], rows[row]);
+                    }
+                    return ret;
+                }
+
+                @Override
+                protected void onCompleted(InstanceSearchIndex result) {
+                    searchIndexBuilder = null;
+                    searchIndex = result;
+                    updateSearchIndex(searchPending);
+                    searchPending.clear();
+                    applySearch();
+                }
+
+                @Override
+                protected void onFailed(Exception ex) {
+                    super.onFailed(ex);
+                    onCancelled();
+                }
+
+                @Override
+                protected void onCancelled() {
+                    searchIndexBuilder = null;
+                    searchPending.clear();
+                }
+            };
+            taskExecutor.submit(searchIndexBuilder);
+        }
     }
 
-    public void loadInstances() {
-        new Thread(new Runnable() {
+    /**
+     * Brings the quick search index up to date with the store
+     * 
+     * @param instanceIds
+     *            the instances added, changed or removed
+     */
+    protected void updateSearchIndex(Collection<String> instanceIds) {
+        if (null != searchIndex) {
+            for (String instanceId : instanceIds) {
+                int row = store.getRow(instanceId);
+                if (-1 == row) {
+                    searchIndex.remove(instanceId);
+                } else {
+                    searchIndex.put(instanceId, getSearchFields(row));
+                }
+            }
+            if (null != searchResult) {
+                applySearch();
+            }
+        } else if (null != searchIndexBuilder) {
+            searchPending.addAll(instanceIds);
+        }
+    }
 
-            @Override
-            public void run() {
-                DefaultTreeModel treeModel = (DefaultTreeModel) trInstances.getModel();
-                DefaultMutableTreeNode rootNode = (DefaultMutableTreeNode) treeModel.getRoot();
-                tblInstances.clearSelection();
-                trInstances.clearSelection();
-                rootNode.removeAllChildren();
-                treeModel.reload();
-                tblInstances.setModel(instancesTableModel);
-                DescribeInstancesResult result = awsConnectionProvider.getConnection().describeInstances();
-                while (0 < instancesTableModel.getRowCount()) {
-                    instancesTableModel.removeRow(0);
-                }
-                for (Reservation reservation : result.getReservations()) {
-                    for (Instance instance : reservation.getInstances()) {
-                        String name = null;
-                        StringBuilder tags = new StringBuilder();
-                        for (Tag tag : instance.getTags()) {
-                            tags.append(tag.getKey());
-                            tags.append("=");
-                            tags.append(tag.getValue());
-                            if (StringUtils.equalsIgnoreCase(nameTag, tag.getKey())) {
-                                name = tag.getValue();
-                            }
-                        }
-                        try {
-                            boolean apiTermination = awsConnectionProvider.getApiTermination(instance.getInstanceId());
-                            instancesTableModel.addRow(new Object[] { instance.getInstanceId(),
-                                    instance.getPublicDnsName(), instance.getPublicIpAddress(),
-                                    instance.getPrivateDnsName(), instance.getPrivateIpAddress(),
-                                    apiTermination ? "Yes" : "No", instance.getState().getName(),
-                                    instance.getInstanceType(), instance.getKeyName(),
-                                    StringUtils.join(reservation.getGroupNames(), ","),
-                                    instance.getPlacement().getAvailabilityZone(),
-                                    DATE_FORMAT.format(instance.getLaunchTime()), tags.toString() });
-                            DefaultMutableTreeNode instanceNode = new DefaultMutableTreeNode(new InstanceObjectWrapper(
-                                    instance, name), false);
-                            rootNode.add(instanceNode);
-                            treeModel.reload();
-                        } catch (Exception ex) {
-                            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-                        }
+    /**
+     * Searches once the pending events are handled, so a burst of
+     * keystrokes is searched for once
+     */
+    protected void scheduleSearch() {
+        if (!searchScheduled) {
+            searchScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    searchScheduled = false;
+                    applySearch();
+                }
+            });
+        }
+    }
+
+    /**
+     * Switches the table between the instances and the details of one, the
+     * details being shown unsorted. The sorter misses the changes of the
+     * instances while they are hidden, so it catches up when they come back
+     * and keeps its sort order and filter.
+     * 
+     * @param model
+     */
+    protected void showTableModel(TableModel model) {
+        if (model != tblInstances.getModel()) {
+            tblInstances.setRowSorter(null);
+            tblInstances.setModel(model);
+            if (instancesTableModel == model) {
+                instancesRowSorter.allRowsChanged();
+                tblInstances.setRowSorter(instancesRowSorter);
+            }
+        }
+    }
+
+    /**
+     * Shows only the instances matching the quick search, narrowing the
+     * previous result while the search is typed on
+     */
+    protected void applySearch() {
+        if (instancesTableModel == tblInstances.getModel()) {
+            if (StringUtils.isBlank(txtSearch.getText())) {
+                searchResult = null;
+                if (null != instancesRowSorter.getRowFilter()) {
+                    instancesRowSorter.setRowFilter(null);
+                }
+            } else if (null == searchIndex) {
+                buildSearchIndex();
+            } else {
+                searchResult = searchIndex.search(txtSearch.getText(), searchResult);
+                final Set<String> matched = new HashSet<String>(searchResult.getIds());
+                instancesRowSorter.setRowFilter(new RowFilter<Object, Object>() {
+
+                    @Override
+                    public boolean include(Entry<? extends Object, ? extends Object> entry) {
+                        return matched.contains(store.getId((Integer) entry.getIdentifier()));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Prepares the details of the instances next to the selected one in the
+     * background, so moving through the tree shows them without delay
+     * 
+     * @param path
+     *            the path of the selected instance
+     */
+    protected void prefetchDetails(TreePath path) {
+        TreeModel model = trInstances.getModel();
+        Object parent = path.getParentPath().getLastPathComponent();
+        int index = model.getIndexOfChild(parent, path.getLastPathComponent());
+        final Map<String, Instance> nearby = new LinkedHashMap<String, Instance>();
+        for (int offset = 1; offset <= PREFETCH_DISTANCE; offset++) {
+            for (int sibling : new int[] { index + offset, index - offset }) {
+                if (0 <= sibling && sibling < model.getChildCount(parent)
+                        && model.getChild(parent, sibling) instanceof InstanceTreeModel.Leaf) {
+                    String instanceId = ((InstanceTreeModel.Leaf) model.getChild(parent, sibling)).getInstanceId();
+                    Instance detail = getDetail(instanceId);
+                    if (null != detail) {
+                        nearby.put(instanceId, detail);
+                    }
+                }
+            }
+        }
+        if (!nearby.isEmpty()) {
+            taskExecutor.submit(PREFETCH, new BackgroundTask<Void, Void>("Preparing details") {
+
+                @Override
+                protected Void doInBackground() throws Exception {
+                    for (Iterator<Map.Entry<String, Instance>> entries = nearby.entrySet().iterator(); !isCancelled()
+                            && entries.hasNext();) {
+                        Map.Entry<String, Instance> entry = entries.next();
+                        instanceTableModel.prepare(entry.getKey(), entry.getValue());
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Regroups the tree from the store on a worker thread and swaps it in
+     * once built, keeping the expanded groups and the selection. Only
+     * references are copied out of the store on the EDT. A rebuild asked for
+     * while one is running is done once it completes.
+     */
+    protected void rebuildTree() {
+        if (null != treeBuilder) {
+            treeDirty = true;
+        } else {
+            treeDirty = false;
+            final String[] levels = new String[treeLevels.length];
+            for (int level = 0; level < levels.length; level++) {
+                levels[level] = "name".equals(treeLevels[level]) ? InstanceIndex.TAG_PREFIX + nameTag
+                        : treeLevels[level];
+            }
+            final int count = store.size();
+            final String[] ids = new String[count];
+            final String[] names = new String[count];
+            final String[][] keys = new String[count][];
+            for (int row = 0; row < count; row++) {
+                ids[row] = store.getId(row);
+                names[row] = getName(row);
+                keys[row] = new String[levels.length];
+                for (int level = 0; level < levels.length; level++) {
+                    keys[row][level] = store.getValue(row, levels[level]);
+                }
+            }
+            treeBuilder = taskExecutor.submit(new BackgroundTask<InstanceTreeModel, Void>("Grouping instances") {
+
+                @Override
+                protected InstanceTreeModel doInBackground() throws Exception {
+                    List<InstanceTreeModel.Leaf> leaves = new ArrayList<InstanceTreeModel.Leaf>(count);
+                    for (int row = 0; row < count; row++) {
+                        leaves.add(new InstanceTreeModel.Leaf(ids[row], names[row], keys[row]));
                     }
+                    return new InstanceTreeModel(TREE_ROOT, levels, leaves, InstanceTreeModel.DEFAULT_PAGE_SIZE);
+                }
+
+                @Override
+                protected void onCompleted(InstanceTreeModel result) {
+                    installTree(result);
+                    treeBuilt();
+                }
+
+                @Override
+                protected void onFailed(Exception ex) {
+                    super.onFailed(ex);
+                    treeBuilt();
+                }
+
+                @Override
+                protected void onCancelled() {
+                    treeBuilt();
+                }
+            });
+        }
+    }
+
+    protected void treeBuilt() {
+        treeBuilder = null;
+        if (treeDirty) {
+            rebuildTree();
+        }
+    }
+
+    /**
+     * Swaps the tree model in a single step, expanding the groups that were
+     * expanded and selecting what was selected
+     * 
+     * @param model
+     */
+    protected void installTree(InstanceTreeModel model) {
+        TreeModel previous = trInstances.getModel();
+        List<List<String>> expanded = new ArrayList<List<String>>();
+        Enumeration<TreePath> paths = trInstances.getExpandedDescendants(new TreePath(previous.getRoot()));
+        while (null != paths && paths.hasMoreElements()) {
+            expanded.add(InstanceTreeModel.getKeys(paths.nextElement()));
+        }
+        String selectedId = getSelectedLeaf();
+        TreePath selection = trInstances.getSelectionPath();
+        List<String> selectedKeys = null == selection ? null : InstanceTreeModel.getKeys(selection);
+        trInstances.setModel(model);
+        for (List<String> keys : expanded) {
+            trInstances.expandPath(model.getPath(keys));
+        }
+        TreePath path = null == selectedId ? null : model.getPath(selectedId);
+        if (null == path && null != selectedKeys) {
+            path = model.getPath(selectedKeys);
+        }
+        if (null != path) {
+            trInstances.setSelectionPath(path);
+        }
+    }
+
+    /**
+     * @param instanceId
+     * @param value
+     *            null while it is being loaded
+     */
+    protected void setApiTerminationCell(String instanceId, Boolean value) {
+        int row = store.setApiTermination(instanceId, value);
+        if (-1 != row) {
+            instancesTableModel.fireTableCellUpdated(row, InstancesTableModel.COLUMN_API_TERMINATION);
+        }
+    }
+
+    protected void reloadApiTermination(String... instanceIds) {
+        if (null != instanceIds) {
+            for (String instanceId : instanceIds) {
+                setApiTerminationCell(instanceId, null);
+            }
+            awsConnectionProvider.prefetchApiTermination(Arrays.asList(instanceIds), new ApiTerminationUpdater());
+        }
+    }
+
+    /**
+     * Runs the action in the background on the instances it applies to,
+     * showing the outcome of each in a dialog
+     * 
+     * @param action
+     * @param instanceIds
+     */
+    protected void runBulkAction(BulkAction action, String... instanceIds) {
+        if (null != instanceIds) {
+            List<String> targets = new ArrayList<String>();
+            for (String instanceId : instanceIds) {
+                int row = store.getRow(instanceId);
+                if (action.appliesTo(-1 == row ? null : store.getState(row))) {
+                    targets.add(instanceId);
+                }
+            }
+            if (!targets.isEmpty()) {
+                BulkListener listener = null;
+                if (!action.isBatched()) {
+                    listener = new BulkListener() {
+
+                        @Override
+                        public void itemsDone(final List<BulkItem> items) {
+                            SwingUtilities.invokeLater(new Runnable() {
+
+                                @Override
+                                public void run() {
+                                    for (BulkItem item : items) {
+                                        reloadApiTermination(item.getInstanceId());
+                                    }
+                                }
+                            });
+                        }
+                    };
+                }
+                BulkActionDialog dialog = new BulkActionDialog(parentFrame, awsConnectionProvider, taskExecutor,
+                        action, BulkActionPipeline.toItems(targets), listener);
+                dialog.setSize(600, 400);
+                dialog.setLocationRelativeTo(this);
+                dialog.setVisible(true);
+                dialog.start();
+            }
+        }
+    }
+
+    /**
+     * Copies a field of the selected instances, separated by commas, straight
+     * from the local inventory
+     * 
+     * @param field
+     *            one of {@link InstanceExporter#FIELDS}
+     */
+    protected void copyToClipBoard(String field) {
+        String[] instanceIds = getSelectedInstances();
+        if (null != instanceIds) {
+            InstanceExporter exporter = new InstanceExporter("${" + field + "}");
+            exporter.setSeparator(",");
+            taskExecutor.submit(new ExportTask(this, store, instanceIds, exporter, null));
+        }
+    }
+
+    /**
+     * Exports the selected instances or the whole inventory as asked in the
+     * export dialog
+     */
+    protected void showExportDialog() {
+        String[] selected = getSelectedInstances();
+        ExportDialog dialog = new ExportDialog(parentFrame, null == selected ? 0 : selected.length, store.size());
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+        if (ExportDialog.RET_OK == dialog.getReturnStatus()) {
+            String[] instanceIds = selected;
+            if (!dialog.isSelectedOnly()) {
+                instanceIds = new String[store.size()];
+                for (int row = 0; row < instanceIds.length; row++) {
+                    instanceIds[row] = store.getId(row);
                 }
             }
-        }).start();
+            taskExecutor.submit(new ExportTask(this, store, instanceIds, dialog.getExporter(), dialog.getFile()));
+        }
     }
 
-    protected void setToClipBoard(String data) {
-        StringSelection clipData = new StringSelection(data);
-        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(clipData, clipData);
+    protected void showLaunchDialog(Collection<String> keyNames, Collection<String> securityGroups) {
+        LaunchDialog dialog = new LaunchDialog(parentFrame, true);
+        dialog.setKeyNames(keyNames);
+        dialog.setSecurityGroups(securityGroups);
+        dialog.setSize(600, 600);
+        dialog.setVisible(true);
+        if (LaunchDialog.RET_OK == dialog.getReturnStatus()) {
+            new LaunchTracker(dialog.getAMIID(), dialog.getSelectedInstanceType(), dialog.getSelectedInstanceCount(),
+                    dialog.getKeyName(), dialog.getSecurityGroups(), dialog.getTerminationViaAPI(), dialog.getTags())
+                    .launch();
+        }
     }
 
     /*
@@ -187,6 +1360,7 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
      */
     @Override
     public void init() {
+        loadSnapshot();
         loadInstances();
     }
 
@@ -220,7 +1394,22 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
      */
     @Override
     public void setAwsConnectionProvider(AWSConnectionProvider awsConnectionProvider) {
+        if (null != this.awsConnectionProvider) {
+            this.awsConnectionProvider.getStateWaiter().removeListener(instanceStateUpdater);
+        }
         this.awsConnectionProvider = awsConnectionProvider;
+        if (null != awsConnectionProvider) {
+            awsConnectionProvider.getStateWaiter().addListener(instanceStateUpdater);
+            refreshScheduler.setRateLimiter(awsConnectionProvider.getRateLimiter());
+        }
+    }
+
+    /**
+     * @return the connection provider, which has to support asynchronous
+     *         calls so that actions never block the EDT
+     */
+    protected AsyncAWSConnectionProvider getAsyncConnectionProvider() {
+        return (AsyncAWSConnectionProvider) awsConnectionProvider;
     }
 
     /**
@@ -264,8 +1453,11 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
         mnuCpyPrivateDNS = new javax.swing.JMenuItem();
         mnuCpyPrivateIP = new javax.swing.JMenuItem();
         mnuSepThree = new javax.swing.JPopupMenu.Separator();
+        mnuExport = new javax.swing.JMenuItem();
         pnlInstances = new javax.swing.JPanel();
         pnlInstanceMain = new javax.swing.JPanel();
+        txtSearch = new javax.swing.JTextField();
+        txtQuery = new javax.swing.JTextField();
         btnLaunch = new javax.swing.JButton();
         btnRefresh = new javax.swing.JButton();
         spltInstances = new javax.swing.JSplitPane();
@@ -357,12 +1549,33 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
         tblPopup.add(mnuCpyPrivateIP);
         tblPopup.add(mnuSepThree);
 
+        mnuExport.setText("Export...");
+        mnuExport.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuExportActionPerformed(evt);
+            }
+        });
+        tblPopup.add(mnuExport);
+
         setLayout(new java.awt.BorderLayout());
 
         pnlInstances.setLayout(new java.awt.BorderLayout());
 
         pnlInstanceMain.setLayout(new java.awt.FlowLayout(java.awt.FlowLayout.RIGHT));
 
+        txtSearch.setColumns(15);
+        txtSearch.setToolTipText("Search ids, names, addresses, DNS names and tags");
+        pnlInstanceMain.add(txtSearch);
+
+        txtQuery.setColumns(30);
+        txtQuery.setToolTipText("Filter, e.g. state=running AND tag:env=prod AND az=us-east-1a");
+        txtQuery.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                txtQueryActionPerformed(evt);
+            }
+        });
+        pnlInstanceMain.add(txtQuery);
+
         btnLaunch.setText("Launch");
         btnLaunch.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -383,27 +1596,8 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
 
         spltInstances.setResizeWeight(0.3);
 
-        tblInstances.setAutoCreateRowSorter(true);
-        tblInstances.setModel(new javax.swing.table.DefaultTableModel(new Object[][] {
-
-        }, new String[] { "Instance ID", "Public DNS", "Public IP Address", "Private DNS", "Private IP",
-                "Terminate via API", "State", "Type", "Key", "Security Group", "Location", "Launched At", "Tag" }) {
-            Class[] types = new Class[] { java.lang.String.class, java.lang.String.class, java.lang.Object.class,
-                    java.lang.String.class, java.lang.String.class, java.lang.String.class, java.lang.String.class,
-                    java.lang.String.class, java.lang.String.class, java.lang.String.class, java.lang.String.class,
-                    java.lang.String.class, java.lang.String.class };
-
-            boolean[] canEdit = new boolean[] { false, false, false, false, false, false, false, false, false, false,
-                    false, false, false };
-
-            public Class getColumnClass(int columnIndex) {
-                return types[columnIndex];
-            }
-
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit[columnIndex];
-            }
-        });
+        tblInstances.setModel(instancesTableModel);
+        tblInstances.setRowSorter(instancesRowSorter);
         tblInstances.getTableHeader().setReorderingAllowed(false);
         tblInstances.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mousePressed(java.awt.event.MouseEvent evt) {
@@ -444,20 +1638,15 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
     }// </editor-fold>//GEN-END:initComponents
 
     private void trInstancesValueChanged(javax.swing.event.TreeSelectionEvent evt) {// GEN-FIRST:event_trInstancesValueChanged
-        Object nodeObj = evt.getPath().getLastPathComponent();
-        if (null != nodeObj) {
-            if (nodeObj instanceof DefaultMutableTreeNode) {
-                DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) nodeObj;
-                Object userObject = treeNode.getUserObject();
-                if (userObject instanceof InstanceObjectWrapper) {
-                    InstanceObjectWrapper wrapper = (InstanceObjectWrapper) userObject;
-                    instanceTableModel.setObject(wrapper.instance);
-                    tblInstances.setModel(instanceTableModel);
-                } else {
-                    tblInstances.setModel(instancesTableModel);
-                }
-
-            }
+        String instanceId = getSelectedLeaf();
+        Instance detail = null == instanceId ? null : getDetail(instanceId);
+        if (null != detail) {
+            instanceTableModel.setObject(instanceId, detail);
+            showTableModel(instanceTableModel);
+            prefetchDetails(trInstances.getSelectionPath());
+        } else {
+            showTableModel(instancesTableModel);
+            applySearch();
         }
     }// GEN-LAST:event_trInstancesValueChanged
 
@@ -470,89 +1659,39 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
     }// GEN-LAST:event_trInstancesTreeExpanded
 
     private void btnLaunchActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_btnLaunchActionPerformed
-        LaunchDialog dialog = new LaunchDialog(parentFrame, true);
-        try {
-            dialog.setKeyNames(awsConnectionProvider.getKeyPairNames());
-            dialog.setSecurityGroups(awsConnectionProvider.getSecurityGroups());
-            dialog.setSize(600, 600);
-            dialog.setVisible(true);
-            if (LaunchDialog.RET_OK == dialog.getReturnStatus()) {
-                try {
-                    awsConnectionProvider.launchInstance(dialog.getAMIID(), dialog.getSelectedInstanceType(),
-                            dialog.getSelectedInstanceCount(), dialog.getKeyName(), dialog.getSecurityGroups(),
-                            dialog.getTerminationViaAPI(), dialog.getTags());
-                } catch (Exception ex) {
-                    Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-                    JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to launch",
-                            JOptionPane.ERROR_MESSAGE);
-                }
-            }
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane
-                    .showMessageDialog(this, ex.getLocalizedMessage(), "Failed to launch", JOptionPane.ERROR_MESSAGE);
-        }
+        new LaunchDialogLoader().load();
     }// GEN-LAST:event_btnLaunchActionPerformed
 
     private void mnuCpyPublicIPActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuCpyPublicIPActionPerformed
-        try {
-            setToClipBoard(awsConnectionProvider.getInstanceDetails("publicIpAddress", ",", getSelectedInstances()));
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to copy", JOptionPane.ERROR_MESSAGE);
-        }
+        copyToClipBoard("publicIpAddress");
     }// GEN-LAST:event_mnuCpyPublicIPActionPerformed
 
     private void mnuCpyInstanceIDActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuCpyInstanceIDActionPerformed
-        try {
-            setToClipBoard(awsConnectionProvider.getInstanceDetails("instanceId", ",", getSelectedInstances()));
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to copy", JOptionPane.ERROR_MESSAGE);
-        }
+        copyToClipBoard("instanceId");
     }// GEN-LAST:event_mnuCpyInstanceIDActionPerformed
 
     private void mnuCpyPublicDNSActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuCpyPublicDNSActionPerformed
-        try {
-            setToClipBoard(awsConnectionProvider.getInstanceDetails("publicDnsName", ",", getSelectedInstances()));
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to copy", JOptionPane.ERROR_MESSAGE);
-        }
+        copyToClipBoard("publicDnsName");
     }// GEN-LAST:event_mnuCpyPublicDNSActionPerformed
 
     private void mnuCpyPrivateDNSActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuCpyPrivateDNSActionPerformed
-        try {
-            setToClipBoard(awsConnectionProvider.getInstanceDetails("privateDnsName", ",", getSelectedInstances()));
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to copy", JOptionPane.ERROR_MESSAGE);
-        }
+        copyToClipBoard("privateDnsName");
     }// GEN-LAST:event_mnuCpyPrivateDNSActionPerformed
 
     private void mnuCpyPrivateIPActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuCpyPrivateIPActionPerformed
-        try {
-            setToClipBoard(awsConnectionProvider.getInstanceDetails("privateIpAddress", ",", getSelectedInstances()));
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to copy", JOptionPane.ERROR_MESSAGE);
-        }
+        copyToClipBoard("privateIpAddress");
     }// GEN-LAST:event_mnuCpyPrivateIPActionPerformed
 
+    private void mnuExportActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuExportActionPerformed
+        showExportDialog();
+    }// GEN-LAST:event_mnuExportActionPerformed
+
     private void mnuEnableApiTerminationActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuEnableApiTerminationActionPerformed
-        try {
-            awsConnectionProvider.setApiTermination(true, getSelectedInstances());
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        runBulkAction(BulkAction.ENABLE_API_TERMINATION, getSelectedInstances());
     }// GEN-LAST:event_mnuEnableApiTerminationActionPerformed
 
     private void mnuDisableApiTerminationActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuDisableApiTerminationActionPerformed
-        try {
-            awsConnectionProvider.setApiTermination(false, getSelectedInstances());
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        runBulkAction(BulkAction.DISABLE_API_TERMINATION, getSelectedInstances());
     }// GEN-LAST:event_mnuDisableApiTerminationActionPerformed
 
     protected String[] getSelectedInstances() {
@@ -568,34 +1707,15 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
     }
 
     private void mnuStartActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuStartActionPerformed
-        try {
-            // GEN-FIRST:event_mnuStartActionPerformed
-            awsConnectionProvider.startInstances(getSelectedInstances());
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to start", JOptionPane.ERROR_MESSAGE);
-        }
+        runBulkAction(BulkAction.START, getSelectedInstances());
     }// GEN-LAST:event_mnuStartActionPerformed
 
     private void mnuStopActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuStopActionPerformed
-        try {
-            // GEN-FIRST:event_mnuStopActionPerformed
-            awsConnectionProvider.stopInstances(getSelectedInstances());
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to stop", JOptionPane.ERROR_MESSAGE);
-        }
+        runBulkAction(BulkAction.STOP, getSelectedInstances());
     }// GEN-LAST:event_mnuStopActionPerformed
 
     private void mnuTerminateActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_mnuTerminateActionPerformed
-        try {
-            // GEN-FIRST:event_mnuTerminateActionPerformed
-            awsConnectionProvider.terminateInstances(getSelectedInstances());
-        } catch (Exception ex) {
-            Logger.getLogger(InstancesPanel.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Failed to terminate",
-                    JOptionPane.ERROR_MESSAGE);
-        }
+        runBulkAction(BulkAction.TERMINATE, getSelectedInstances());
     }// GEN-LAST:event_mnuTerminateActionPerformed
 
     private void tblInstancesMousePressed(java.awt.event.MouseEvent evt) {// GEN-FIRST:event_tblInstancesMousePressed
@@ -610,6 +1730,15 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
         loadInstances();
     }// GEN-LAST:event_btnRefreshActionPerformed
 
+    private void txtQueryActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_txtQueryActionPerformed
+        try {
+            setQuery(txtQuery.getText());
+            loadInstances();
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, ex.getLocalizedMessage(), "Invalid filter", JOptionPane.ERROR_MESSAGE);
+        }
+    }// GEN-LAST:event_txtQueryActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnLaunch;
 
@@ -629,6 +1758,8 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
 
     private javax.swing.JMenuItem mnuEnableApiTermination;
 
+    private javax.swing.JMenuItem mnuExport;
+
     private javax.swing.JPopupMenu.Separator mnuSepOne;
 
     private javax.swing.JPopupMenu.Separator mnuSepThree;
@@ -656,6 +1787,10 @@ public class InstancesPanel extends javax.swing.JPanel implements AWSAware {
     private javax.swing.JPopupMenu tblPopup;
 
     private javax.swing.JTree trInstances;
+
+    private javax.swing.JTextField txtQuery;
+
+    private javax.swing.JTextField txtSearch;
     // End of variables declaration//GEN-END:variables
 
 }
@@ -0,0 +1,947 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.RowFilter;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+import com.yosanai.java.aws.console.NamedThreadFactory;
+import com.yosanai.java.aws.console.inventory.InstanceStore;
+
+/**
+ * Row sorter of the {@link InstancesTableModel} ordering rows by keys
+ * computed once per sort instead of comparing cell values. The sorted column
+ * is read from the store into typed keys, IP addresses as numbers, launch
+ * times as epoch milliseconds, states in lifecycle order and text by its
+ * case insensitive rank, itself found sorting a few characters at a time
+ * packed into longs. Each key is packed with its row into a long and the
+ * longs are sorted in chunks on all the processors. Tables of
+ * {@link #BACKGROUND_THRESHOLD} rows or more are sorted on the
+ * {@link TaskExecutor}, the previous order staying on screen until the new
+ * one is swapped in. Only the first sort key is used, ties keep the store
+ * order. Filters work as with a {@link javax.swing.DefaultRowSorter}.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public class InstancesRowSorter extends RowSorter<InstancesTableModel> {
+
+    public static final int BACKGROUND_THRESHOLD = 10000;
+
+    /**
+     * The fewest keys sorted by one thread
+     */
+    public static final int MIN_CHUNK = 16384;
+
+    /**
+     * The characters of text sorted at a time, as bytes of a key
+     */
+    protected static final int CHUNK_CHARS = 5;
+
+    /**
+     * The bits of a text key holding the position of its row
+     */
+    protected static final int INDEX_BITS = 23;
+
+    protected static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The rank of each state code of the store, stopping and stopped coming
+     * before shutting-down and terminated
+     */
+    protected static final long[] STATE_ORDER = { 1, 2, 5, 6, 3, 4 };
+
+    /**
+     * The key of addresses that are not IPv4, after all the others
+     */
+    protected static final long OTHER_ADDRESS = (1L << 32) + 1;
+
+    private static final String SORT = "sort";
+
+    private static ExecutorService sorters;
+
+    protected final InstancesTableModel model;
+
+    protected TaskExecutor taskExecutor;
+
+    protected List<SortKey> sortKeys = Collections.emptyList();
+
+    protected RowFilter<? super InstancesTableModel, ? super Integer> rowFilter;
+
+    protected boolean sortsOnUpdates;
+
+    /**
+     * Every model row in sort order
+     */
+    protected int[] order;
+
+    /**
+     * Whether the filter includes each model row, null without a filter
+     */
+    protected boolean[] included;
+
+    protected int[] viewToModel;
+
+    protected int[] modelToView;
+
+    protected int generation;
+
+    /**
+     * @param model
+     */
+    public InstancesRowSorter(InstancesTableModel model) {
+        super();
+        this.model = model;
+        order = new int[model.getRowCount()];
+        for (int row = 0; row < order.length; row++) {
+            order[row] = row;
+        }
+        filter();
+    }
+
+    /**
+     * @return the taskExecutor
+     */
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * @param taskExecutor
+     *            the executor sorting large tables, null to sort every table
+     *            on the EDT
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * @return the sortsOnUpdates
+     */
+    public boolean isSortsOnUpdates() {
+        return sortsOnUpdates;
+    }
+
+    /**
+     * @param sortsOnUpdates
+     *            whether rows updated in place are sorted again, off by
+     *            default so refreshes do not move the rows around
+     */
+    public void setSortsOnUpdates(boolean sortsOnUpdates) {
+        this.sortsOnUpdates = sortsOnUpdates;
+    }
+
+    /**
+     * @return the rowFilter
+     */
+    public RowFilter<? super InstancesTableModel, ? super Integer> getRowFilter() {
+        return rowFilter;
+    }
+
+    /**
+     * @param rowFilter
+     *            the rows to show, null for all
+     */
+    public void setRowFilter(RowFilter<? super InstancesTableModel, ? super Integer> rowFilter) {
+        this.rowFilter = rowFilter;
+        include(0, order.length - 1);
+        update(order, false);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#getModel()
+     */
+    @Override
+    public InstancesTableModel getModel() {
+        return model;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#toggleSortOrder(int)
+     */
+    @Override
+    public void toggleSortOrder(int column) {
+        checkColumn(column);
+        SortOrder sortOrder = SortOrder.ASCENDING;
+        if (isSorted() && column == sortKeys.get(0).getColumn()
+                && SortOrder.ASCENDING == sortKeys.get(0).getSortOrder()) {
+            sortOrder = SortOrder.DESCENDING;
+        }
+        setSortKeys(Collections.singletonList(new SortKey(column, sortOrder)));
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#convertRowIndexToModel(int)
+     */
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (0 > index || viewToModel.length <= index) {
+            throw new IndexOutOfBoundsException("Invalid index");
+        }
+        return viewToModel[index];
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#convertRowIndexToView(int)
+     */
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (0 > index || modelToView.length <= index) {
+            throw new IndexOutOfBoundsException("Invalid index");
+        }
+        return modelToView[index];
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#setSortKeys(java.util.List)
+     */
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> old = sortKeys;
+        if (null == keys || keys.isEmpty()) {
+            sortKeys = Collections.emptyList();
+        } else {
+            for (SortKey key : keys) {
+                checkColumn(key.getColumn());
+            }
+            sortKeys = Collections.unmodifiableList(new ArrayList<SortKey>(keys));
+        }
+        if (!sortKeys.equals(old)) {
+            fireSortOrderChanged();
+            sort();
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#getSortKeys()
+     */
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#getViewRowCount()
+     */
+    @Override
+    public int getViewRowCount() {
+        return viewToModel.length;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#getModelRowCount()
+     */
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#modelStructureChanged()
+     */
+    @Override
+    public void modelStructureChanged() {
+        allRowsChanged();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#allRowsChanged()
+     */
+    @Override
+    public void allRowsChanged() {
+        int rows = model.getRowCount();
+        boolean[] seen = new boolean[rows];
+        int[] next = new int[rows];
+        int count = 0;
+        for (int row : order) {
+            if (row < rows) {
+                seen[row] = true;
+                next[count++] = row;
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            if (!seen[row]) {
+                next[count++] = row;
+            }
+        }
+        included = null;
+        include(0, rows - 1);
+        update(next, true);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#rowsInserted(int, int)
+     */
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        checkRange(firstRow, endRow, model.getRowCount() - 1);
+        int count = endRow - firstRow + 1;
+        int[] next = new int[order.length + count];
+        for (int index = 0; index < order.length; index++) {
+            next[index] = firstRow <= order[index] ? order[index] + count : order[index];
+        }
+        for (int row = firstRow; row <= endRow; row++) {
+            next[order.length + row - firstRow] = row;
+        }
+        if (null != included) {
+            boolean[] shifted = new boolean[next.length];
+            System.arraycopy(included, 0, shifted, 0, firstRow);
+            System.arraycopy(included, firstRow, shifted, endRow + 1, included.length - firstRow);
+            included = shifted;
+        }
+        include(firstRow, endRow);
+        update(next, true);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#rowsDeleted(int, int)
+     */
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        checkRange(firstRow, endRow, order.length - 1);
+        int count = endRow - firstRow + 1;
+        int[] next = new int[order.length - count];
+        int index = 0;
+        for (int row : order) {
+            if (firstRow > row) {
+                next[index++] = row;
+            } else if (endRow < row) {
+                next[index++] = row - count;
+            }
+        }
+        if (null != included) {
+            boolean[] shifted = new boolean[next.length];
+            System.arraycopy(included, 0, shifted, 0, firstRow);
+            System.arraycopy(included, endRow + 1, shifted, firstRow, included.length - endRow - 1);
+            included = shifted;
+        }
+        update(next, true);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#rowsUpdated(int, int)
+     */
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        checkRange(firstRow, endRow, order.length - 1);
+        if (null != rowFilter || sortsOnUpdates) {
+            include(firstRow, endRow);
+            update(order, sortsOnUpdates);
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.RowSorter#rowsUpdated(int, int, int)
+     */
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        checkColumn(column);
+        rowsUpdated(firstRow, endRow);
+    }
+
+    protected boolean isSorted() {
+        return !sortKeys.isEmpty() && SortOrder.UNSORTED != sortKeys.get(0).getSortOrder();
+    }
+
+    protected void checkColumn(int column) {
+        if (0 > column || model.getColumnCount() <= column) {
+            throw new IndexOutOfBoundsException("Invalid column " + column);
+        }
+    }
+
+    protected void checkRange(int firstRow, int endRow, int lastRow) {
+        if (0 > firstRow || firstRow > endRow || endRow > lastRow) {
+            throw new IndexOutOfBoundsException("Invalid range " + firstRow + " to " + endRow);
+        }
+    }
+
+    /**
+     * Runs the filter over the model rows in the range
+     * 
+     * @param firstRow
+     * @param endRow
+     */
+    protected void include(int firstRow, int endRow) {
+        if (null == rowFilter) {
+            included = null;
+        } else {
+            if (null == included || model.getRowCount() != included.length) {
+                included = new boolean[model.getRowCount()];
+                firstRow = 0;
+                endRow = included.length - 1;
+            }
+            RowEntry entry = new RowEntry();
+            for (int row = firstRow; row <= endRow; row++) {
+                entry.row = row;
+                included[row] = rowFilter.include(entry);
+            }
+        }
+    }
+
+    /**
+     * Builds the view from the order and the filter results
+     */
+    protected void filter() {
+        int[] view = order;
+        if (null != included) {
+            view = new int[order.length];
+            int count = 0;
+            for (int row : order) {
+                if (included[row]) {
+                    view[count++] = row;
+                }
+            }
+            view = Arrays.copyOf(view, count);
+        }
+        int[] toView = new int[order.length];
+        Arrays.fill(toView, -1);
+        for (int index = 0; index < view.length; index++) {
+            toView[view[index]] = index;
+        }
+        viewToModel = view;
+        modelToView = toView;
+    }
+
+    /**
+     * Shows the rows in the order and sorts them again if needed
+     * 
+     * @param next
+     *            every model row
+     * @param resort
+     *            whether the order may no longer be sorted
+     */
+    protected void update(int[] next, boolean resort) {
+        int[] last = viewToModel;
+        order = next;
+        filter();
+        fireRowSorterChanged(last);
+        if (resort && isSorted()) {
+            sort();
+        }
+    }
+
+    /**
+     * Sorts the rows by the first sort key, on the EDT for small tables and
+     * on the executor otherwise. Sorts superseded by a later sort or a change
+     * of the model are dropped.
+     */
+    protected void sort() {
+        final int sortGeneration = ++generation;
+        if (!isSorted()) {
+            int[] next = new int[order.length];
+            for (int row = 0; row < next.length; row++) {
+                next[row] = row;
+            }
+            update(next, false);
+        } else {
+            final SortInput input = getSortInput(sortKeys.get(0));
+            if (null == taskExecutor || BACKGROUND_THRESHOLD > input.rows) {
+                try {
+                    update(input.sort(), false);
+                } catch (Exception ex) {
+                    Logger.getLogger(InstancesRowSorter.class.getName()).log(Level.SEVERE, "Sorting instances", ex);
+                }
+            } else {
+                taskExecutor.submit(SORT, new BackgroundTask<int[], Void>("Sorting instances") {
+
+                    @Override
+                    protected int[] doInBackground() throws Exception {
+                        return input.sort();
+                    }
+
+                    @Override
+                    protected void onCompleted(int[] result) {
+                        if (sortGeneration == generation && result.length == order.length) {
+                            update(result, false);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Reads the column from the store, the only part of a sort done on the
+     * EDT
+     * 
+     * @param key
+     * @return what the rows are sorted by
+     */
+    protected SortInput getSortInput(SortKey key) {
+        InstanceStore store = model.getStore();
+        int column = key.getColumn();
+        SortInput ret = new SortInput(order.length, SortOrder.DESCENDING == key.getSortOrder());
+        if (InstancesTableModel.COLUMN_STATE == column || InstancesTableModel.COLUMN_LAUNCHED_AT == column
+                || InstancesTableModel.COLUMN_API_TERMINATION == column) {
+            ret.numbers = new long[ret.rows];
+            for (int row = 0; row < ret.rows; row++) {
+                if (InstancesTableModel.COLUMN_STATE == column) {
+                    int code = store.getStateCode(row);
+                    ret.numbers[row] = -1 == code ? 0 : (STATE_ORDER.length > code ? STATE_ORDER[code] : code + 1);
+                } else if (InstancesTableModel.COLUMN_LAUNCHED_AT == column) {
+                    ret.numbers[row] = store.getLaunchTime(row) + 1;
+                } else {
+                    Boolean apiTermination = store.getApiTermination(row);
+                    ret.numbers[row] = null == apiTermination ? 0 : (apiTermination ? 2 : 1);
+                }
+            }
+        } else {
+            ret.texts = new String[ret.rows];
+            for (int row = 0; row < ret.rows; row++) {
+                ret.texts[row] = (String) model.getValueAt(row, column);
+            }
+            ret.addresses = InstancesTableModel.COLUMN_PUBLIC_IP == column
+                    || InstancesTableModel.COLUMN_PRIVATE_IP == column;
+        }
+        return ret;
+    }
+
+    /**
+     * @param text
+     * @return the IPv4 address as a number plus one, 0 if there is none
+     */
+    public static long toAddress(String text) {
+        long ret = 0;
+        if (null != text && 0 < text.length()) {
+            int parts = 0;
+            int part = 0;
+            int digits = 0;
+            for (int index = 0; index < text.length() && OTHER_ADDRESS != ret; index++) {
+                char ch = text.charAt(index);
+                if ('0' <= ch && '9' >= ch && 3 > digits) {
+                    part = part * 10 + ch - '0';
+                    digits++;
+                } else if ('.' == ch && 0 < digits && 3 > parts && 256 > part) {
+                    ret = ret << 8 | part;
+                    parts++;
+                    part = 0;
+                    digits = 0;
+                } else {
+                    ret = OTHER_ADDRESS;
+                }
+            }
+            if (OTHER_ADDRESS != ret) {
+                ret = 3 == parts && 0 < digits && 256 > part ? (ret << 8 | part) + 1 : OTHER_ADDRESS;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param texts
+     * @return the case insensitive rank of each text starting at 1, 0 for
+     *         null
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    protected static long[] toRanks(String[] texts) throws InterruptedException, ExecutionException {
+        int[] rows = new int[texts.length];
+        int count = 0;
+        for (int row = 0; row < texts.length; row++) {
+            if (null != texts[row]) {
+                rows[count++] = row;
+            }
+        }
+        if (1 << INDEX_BITS < count) {
+            sort(texts, rows, 0, count);
+        } else {
+            sort(texts, rows, 0, count, 0, new long[count]);
+        }
+        long[] ret = new long[texts.length];
+        long rank = 0;
+        for (int index = 0; index < count; index++) {
+            if (0 == index || 0 != String.CASE_INSENSITIVE_ORDER.compare(texts[rows[index - 1]], texts[rows[index]])) {
+                rank++;
+            }
+            ret[rows[index]] = rank;
+        }
+        return ret;
+    }
+
+    /**
+     * Sorts the rows of the range by the chunk of their text at the offset,
+     * packed with the position of the row, then each run of rows sharing the
+     * chunk by the next one
+     * 
+     * @param texts
+     * @param rows
+     * @param fromIndex
+     * @param toIndex
+     * @param offset
+     * @param packed
+     *            room for the keys of all the rows
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    protected static void sort(String[] texts, int[] rows, int fromIndex, int toIndex, int offset, long[] packed)
+            throws InterruptedException, ExecutionException {
+        for (int index = fromIndex; index < toIndex; index++) {
+            packed[index] = getChunk(texts[rows[index]], offset) << INDEX_BITS | (index - fromIndex);
+        }
+        if (0 == fromIndex && packed.length == toIndex) {
+            sort(packed);
+        } else {
+            Arrays.sort(packed, fromIndex, toIndex);
+        }
+        int[] sorted = new int[toIndex - fromIndex];
+        for (int index = fromIndex; index < toIndex; index++) {
+            sorted[index - fromIndex] = rows[fromIndex + (int) (packed[index] & ((1L << INDEX_BITS) - 1))];
+        }
+        System.arraycopy(sorted, 0, rows, fromIndex, sorted.length);
+        int start = fromIndex;
+        for (int index = fromIndex + 1; index <= toIndex; index++) {
+            if (toIndex == index || packed[index] >>> INDEX_BITS != packed[start] >>> INDEX_BITS) {
+                long chunk = packed[start] >>> INDEX_BITS;
+                if (1 < index - start && isClipped(chunk)) {
+                    sort(texts, rows, start, index);
+                } else if (1 < index - start && 0 != (chunk & 0xff)) {
+                    sort(texts, rows, start, index, offset + CHUNK_CHARS, packed);
+                }
+                start = index;
+            }
+        }
+    }
+
+    /**
+     * Sorts the rows of the range comparing their texts
+     * 
+     * @param texts
+     * @param rows
+     * @param fromIndex
+     * @param toIndex
+     */
+    protected static void sort(final String[] texts, int[] rows, int fromIndex, int toIndex) {
+        Integer[] sorted = new Integer[toIndex - fromIndex];
+        for (int index = fromIndex; index < toIndex; index++) {
+            sorted[index - fromIndex] = rows[index];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return String.CASE_INSENSITIVE_ORDER.compare(texts[o1], texts[o2]);
+            }
+        });
+        for (int index = fromIndex; index < toIndex; index++) {
+            rows[index] = sorted[index - fromIndex];
+        }
+    }
+
+    /**
+     * @param text
+     * @param offset
+     * @return the case folded characters of the text from the offset, a byte
+     *         each, 0 past its end and 255 for the characters beyond 253,
+     *         which end the chunk as the texts have to be compared from there
+     */
+    protected static long getChunk(String text, int offset) {
+        long ret = 0;
+        int code = 0;
+        for (int index = offset; index < offset + CHUNK_CHARS; index++) {
+            if (index < text.length() && 0xff != code) {
+                code = Math.min(Character.toLowerCase(Character.toUpperCase(text.charAt(index))), 254) + 1;
+                ret = ret << 8 | code;
+            } else {
+                ret = ret << 8;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param chunk
+     * @return whether the chunk holds characters that have to be compared
+     *         as they are
+     */
+    protected static boolean isClipped(long chunk) {
+        boolean ret = false;
+        for (int index = 0; index < CHUNK_CHARS && !ret; index++) {
+            ret = 0xff == (chunk >>> (8 * index) & 0xff);
+        }
+        return ret;
+    }
+
+    /**
+     * @param keys
+     * @return the rank of each key among the distinct keys
+     */
+    protected static long[] toRanks(long[] keys) {
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (long key : sorted) {
+            if (0 == count || sorted[count - 1] != key) {
+                sorted[count++] = key;
+            }
+        }
+        long[] ret = new long[keys.length];
+        for (int row = 0; row < keys.length; row++) {
+            ret[row] = Arrays.binarySearch(sorted, 0, count, keys[row]);
+        }
+        return ret;
+    }
+
+    /**
+     * Sorts the keys in chunks on the sorting threads and the calling one,
+     * then merges the chunks
+     * 
+     * @param keys
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static void sort(final long[] keys) throws InterruptedException, ExecutionException {
+        int parts = Math.min(PARALLELISM, keys.length / MIN_CHUNK);
+        if (2 > parts) {
+            Arrays.sort(keys);
+        } else {
+            int[] bounds = new int[parts + 1];
+            for (int part = 0; part <= parts; part++) {
+                bounds[part] = (int) ((long) keys.length * part / parts);
+            }
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            try {
+                for (int part = 1; part < parts; part++) {
+                    final int fromIndex = bounds[part];
+                    final int toIndex = bounds[part + 1];
+                    futures.add(getSorters().submit(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            Arrays.sort(keys, fromIndex, toIndex);
+                        }
+                    }));
+                }
+                Arrays.sort(keys, 0, bounds[1]);
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            merge(keys, bounds);
+        }
+    }
+
+    /**
+     * Merges adjacent sorted runs pairwise until one is left
+     * 
+     * @param keys
+     * @param bounds
+     *            the start of each run followed by the length of the keys
+     */
+    protected static void merge(long[] keys, int[] bounds) {
+        long[] source = keys;
+        long[] target = new long[keys.length];
+        int runs = bounds.length - 1;
+        while (1 < runs) {
+            int[] merged = new int[(runs + 1) / 2 + 1];
+            for (int run = 0; run < runs; run += 2) {
+                int low = bounds[run];
+                int middle = bounds[Math.min(run + 1, runs)];
+                int high = bounds[Math.min(run + 2, runs)];
+                int left = low;
+                int right = middle;
+                for (int index = low; index < high; index++) {
+                    if (right >= high || (left < middle && source[left] <= source[right])) {
+                        target[index] = source[left++];
+                    } else {
+                        target[index] = source[right++];
+                    }
+                }
+                merged[run / 2] = low;
+            }
+            merged[merged.length - 1] = keys.length;
+            bounds = merged;
+            runs = merged.length - 1;
+            long[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != keys) {
+            System.arraycopy(source, 0, keys, 0, keys.length);
+        }
+    }
+
+    private static synchronized ExecutorService getSorters() {
+        if (null == sorters) {
+            sorters = Executors.newFixedThreadPool(PARALLELISM, new NamedThreadFactory("aws-sort"));
+        }
+        return sorters;
+    }
+
+    /**
+     * A column read from the store, sortable off the EDT
+     */
+    protected static class SortInput {
+
+        protected final int rows;
+
+        protected final boolean descending;
+
+        protected long[] numbers;
+
+        protected String[] texts;
+
+        protected boolean addresses;
+
+        /**
+         * @param rows
+         * @param descending
+         */
+        public SortInput(int rows, boolean descending) {
+            super();
+            this.rows = rows;
+            this.descending = descending;
+        }
+
+        /**
+         * @return the rows in sort order, ties in row order
+         * @throws InterruptedException
+         * @throws ExecutionException
+         */
+        public int[] sort() throws InterruptedException, ExecutionException {
+            long[] keys = numbers;
+            if (null == keys && addresses) {
+                keys = new long[rows];
+                for (int row = 0; row < rows; row++) {
+                    keys[row] = toAddress(texts[row]);
+                }
+            } else if (null == keys) {
+                keys = toRanks(texts);
+            }
+            int rowBits = 32 - Integer.numberOfLeadingZeros(rows);
+            long max = 0;
+            for (long key : keys) {
+                max = Math.max(max, key);
+            }
+            if (max >= 1L << (63 - rowBits)) {
+                keys = toRanks(keys);
+                max = rows;
+            }
+            long[] packed = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                packed[row] = (descending ? max - keys[row] : keys[row]) << rowBits | row;
+            }
+            InstancesRowSorter.sort(packed);
+            long mask = (1L << rowBits) - 1;
+            int[] ret = new int[rows];
+            for (int index = 0; index < rows; index++) {
+                ret[index] = (int) (packed[index] & mask);
+            }
+            return ret;
+        }
+
+    }
+
+    /**
+     * A model row as seen by the filter
+     */
+    protected class RowEntry extends RowFilter.Entry<InstancesTableModel, Integer> {
+
+        protected int row;
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.RowFilter.Entry#getModel()
+         */
+        @Override
+        public InstancesTableModel getModel() {
+            return model;
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.RowFilter.Entry#getValueCount()
+         */
+        @Override
+        public int getValueCount() {
+            return model.getColumnCount();
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.RowFilter.Entry#getValue(int)
+         */
+        @Override
+        public Object getValue(int index) {
+            return model.getValueAt(row, index);
+        }
+
+        /*
+         * (non-Jsdoc)
+         * 
+         * @see javax.swing.RowFilter.Entry#getIdentifier()
+         */
+        @Override
+        public Integer getIdentifier() {
+            return row;
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.util.Date;
+
+import javax.swing.table.AbstractTableModel;
+
+import com.yosanai.java.aws.console.inventory.InstanceStore;
+
+/**
+ * Table model reading its cells straight from an {@link InstanceStore}, a
+ * model row being a store row. Nothing is copied or formatted up front and
+ * bulk changes are announced with a single event.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+@SuppressWarnings("serial")
+public class InstancesTableModel extends AbstractTableModel {
+
+    public static final int COLUMN_ID = 0;
+
+    public static final int COLUMN_PUBLIC_DNS = 1;
+
+    public static final int COLUMN_PUBLIC_IP = 2;
+
+    public static final int COLUMN_PRIVATE_DNS = 3;
+
+    public static final int COLUMN_PRIVATE_IP = 4;
+
+    public static final int COLUMN_API_TERMINATION = 5;
+
+    public static final int COLUMN_STATE = 6;
+
+    public static final int COLUMN_TYPE = 7;
+
+    public static final int COLUMN_KEY = 8;
+
+    public static final int COLUMN_GROUPS = 9;
+
+    public static final int COLUMN_ZONE = 10;
+
+    public static final int COLUMN_LAUNCHED_AT = 11;
+
+    public static final int COLUMN_TAGS = 12;
+
+    public static final int COLUMN_REGION = 13;
+
+    /**
+     * 
+     */
+    public static final String API_TERMINATION_PENDING = "...";
+
+    protected static final String[] COLUMN_NAMES = { "Instance ID", "Public DNS", "Public IP Address",
+            "Private DNS", "Private IP", "Terminate via API", "State", "Type", "Key", "Security Group", "Location",
+            "Launched At", "Tag", "Region" };
+
+    protected static final Class<?>[] COLUMN_CLASSES = { String.class, String.class, String.class, String.class,
+            String.class, Boolean.class, String.class, String.class, String.class, String.class, String.class,
+            Date.class, String.class, String.class };
+
+    protected final InstanceStore store;
+
+    /**
+     * @param store
+     */
+    public InstancesTableModel(InstanceStore store) {
+        super();
+        this.store = store;
+    }
+
+    /**
+     * @return the store
+     */
+    public InstanceStore getStore() {
+        return store;
+    }
+
+    /**
+     * @param apiTermination
+     * @return the text shown for the flag
+     */
+    public static String toText(Boolean apiTermination) {
+        return null == apiTermination ? API_TERMINATION_PENDING : (apiTermination ? "Yes" : "No");
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.TableModel#getRowCount()
+     */
+    @Override
+    public int getRowCount() {
+        return store.size();
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.TableModel#getColumnCount()
+     */
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.AbstractTableModel#getColumnName(int)
+     */
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.AbstractTableModel#getColumnClass(int)
+     */
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return COLUMN_CLASSES[columnIndex];
+    }
+
+    public String getInstanceId(int rowIndex) {
+        return store.getId(rowIndex);
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see javax.swing.table.TableModel#getValueAt(int, int)
+     */
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Object ret = null;
+        switch (columnIndex) {
+        case COLUMN_ID:
+            ret = store.getId(rowIndex);
+            break;
+        case COLUMN_PUBLIC_DNS:
+            ret = store.getPublicDnsName(rowIndex);
+            break;
+        case COLUMN_PUBLIC_IP:
+            ret = store.getPublicIp(rowIndex);
+            break;
+        case COLUMN_PRIVATE_DNS:
+            ret = store.getPrivateDnsName(rowIndex);
+            break;
+        case COLUMN_PRIVATE_IP:
+            ret = store.getPrivateIp(rowIndex);
+            break;
+        case COLUMN_API_TERMINATION:
+            ret = store.getApiTermination(rowIndex);
+            break;
+        case COLUMN_STATE:
+            ret = store.getState(rowIndex);
+            break;
+        case COLUMN_TYPE:
+            ret = store.getType(rowIndex);
+            break;
+        case COLUMN_KEY:
+            ret = store.getKeyName(rowIndex);
+            break;
+        case COLUMN_GROUPS:
+            ret = store.getGroups(rowIndex);
+            break;
+        case COLUMN_ZONE:
+            ret = store.getZone(rowIndex);
+            break;
+        case COLUMN_LAUNCHED_AT:
+            ret = -1 == store.getLaunchTime(rowIndex) ? null : new Date(store.getLaunchTime(rowIndex));
+            break;
+        case COLUMN_TAGS:
+            ret = store.getTags(rowIndex);
+            break;
+        case COLUMN_REGION:
+            ret = store.getRegion(rowIndex);
+            break;
+        }
+        return ret;
+    }
+
+    /**
+     * Announces rows appended to the store
+     * 
+     * @param firstRow
+     */
+    public void rowsAdded(int firstRow) {
+        if (firstRow < store.size()) {
+            fireTableRowsInserted(firstRow, store.size() - 1);
+        }
+    }
+
+    /**
+     * Announces rows of the store overwritten in place
+     * 
+     * @param firstRow
+     * @param lastRow
+     */
+    public void rowsChanged(int firstRow, int lastRow) {
+        if (firstRow <= lastRow) {
+            fireTableRowsUpdated(firstRow, lastRow);
+        }
+    }
+
+    /**
+     * Announces rows dropped from the store, a single contiguous range keeps
+     * the selection of the other rows, anything else refreshes the whole
+     * table
+     * 
+     * @param rows
+     *            the rows the instances had, in ascending order
+     */
+    public void rowsRemoved(int[] rows) {
+        if (0 < rows.length) {
+            if (rows[rows.length - 1] - rows[0] == rows.length - 1) {
+                fireTableRowsDeleted(rows[0], rows[rows.length - 1]);
+            } else {
+                fireTableDataChanged();
+            }
+        }
+    }
+
+}
@@ -38,7 +38,7 @@ import com.yosanai.java.aws.console.Messages;
  * 
  * @author Saravana Perumal Shanmugam
  */
-@SuppressWarnings("serial")
+@SuppressWarnings({ "serial", "rawtypes", "unchecked" })
 public class LaunchDialog extends javax.swing.JDialog {
     /** A return status code - returned if Cancel button has been pressed */
     public static final int RET_CANCEL = 0;
@@ -71,7 +71,7 @@ public class LaunchDialog extends javax.swing.JDialog {
     }
 
     public int getSelectedInstanceCount() {
-        return sldInstances.getValue();
+        return ((Number) spnInstances.getValue()).intValue();
     }
 
     public String getAMIID() {
@@ -149,7 +149,7 @@ public class LaunchDialog extends javax.swing.JDialog {
         lblKeyName = new javax.swing.JLabel();
         cboKeyName = new javax.swing.JComboBox();
         lblInstances = new javax.swing.JLabel();
-        sldInstances = new javax.swing.JSlider();
+        spnInstances = new javax.swing.JSpinner();
         lblDescription = new javax.swing.JLabel();
         scrDesc = new javax.swing.JScrollPane();
         txtDesc = new javax.swing.JTextArea();
@@ -232,18 +232,12 @@ public class LaunchDialog extends javax.swing.JDialog {
         gridBagConstraints.gridx = 0;
         pnlCenter.add(lblInstances, gridBagConstraints);
 
-        sldInstances.setMajorTickSpacing(1);
-        sldInstances.setMaximum(10);
-        sldInstances.setMinimum(1);
-        sldInstances.setPaintLabels(true);
-        sldInstances.setPaintTicks(true);
-        sldInstances.setSnapToTicks(true);
-        sldInstances.setValue(1);
+        spnInstances.setModel(new javax.swing.SpinnerNumberModel(1, 1, 1000, 1));
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 1;
         gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
         gridBagConstraints.weightx = 0.1;
-        pnlCenter.add(sldInstances, gridBagConstraints);
+        pnlCenter.add(spnInstances, gridBagConstraints);
 
         lblDescription.setText("Description");
         gridBagConstraints = new java.awt.GridBagConstraints();
@@ -416,7 +410,7 @@ public class LaunchDialog extends javax.swing.JDialog {
 
     private javax.swing.JScrollPane scrSecurityGroups;
 
-    private javax.swing.JSlider sldInstances;
+    private javax.swing.JSpinner spnInstances;
 
     private javax.swing.JTable tblSecurityGroups;
 
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.Timer;
+
+import com.yosanai.java.aws.console.ec2.EC2RateLimiter;
+
+/**
+ * Refreshes a panel on its own, on the EDT. The next refresh is due a short
+ * interval after the previous one while instances are changing state and a
+ * long one once they settled, doubling while EC2 throttles or refreshes fail.
+ * Every call made through the rate limiter since the previous refresh is
+ * charged to a budget of calls per minute shared by all the schedulers of the
+ * process, and no refresh is due before the budget paid for those calls.
+ * Nothing is refreshed while the scheduler is inactive, a refresh that fell
+ * due meanwhile is done as soon as it is active again.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public class RefreshScheduler implements ActionListener {
+
+    public static final long DEFAULT_FAST_INTERVAL = 15 * 1000L;
+
+    public static final long DEFAULT_SLOW_INTERVAL = 2 * 60 * 1000L;
+
+    public static final int DEFAULT_BUDGET = 60;
+
+    public static final int MAX_BACKOFF = 8;
+
+    /**
+     * When the calls made so far are paid for, for every scheduler
+     */
+    protected static final AtomicLong paidUntil = new AtomicLong();
+
+    /**
+     * What gets refreshed
+     */
+    public interface Target {
+
+        public boolean isRefreshing();
+
+        /**
+         * @return true if instances are changing state
+         */
+        public boolean isTransitioning();
+
+        /**
+         * Starts a refresh, {@link RefreshScheduler#refreshed(boolean)} has
+         * to be called once it is done
+         */
+        public void refresh();
+    }
+
+    protected final Target target;
+
+    protected final Timer timer;
+
+    protected EC2RateLimiter rateLimiter;
+
+    protected long fastInterval = DEFAULT_FAST_INTERVAL;
+
+    protected long slowInterval = DEFAULT_SLOW_INTERVAL;
+
+    protected int budget = DEFAULT_BUDGET;
+
+    protected boolean enabled = true;
+
+    protected boolean active = true;
+
+    protected int backoff = 1;
+
+    protected long lastCalls;
+
+    protected long lastThrottles;
+
+    protected long refreshedAt;
+
+    protected long dueAt = Long.MAX_VALUE;
+
+    /**
+     * @param target
+     */
+    public RefreshScheduler(Target target) {
+        super();
+        this.target = target;
+        timer = new Timer(0, this);
+        timer.setRepeats(false);
+    }
+
+    /**
+     * @param rateLimiter
+     *            the limiter whose calls are charged to the budget
+     */
+    public void setRateLimiter(EC2RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        if (null != rateLimiter) {
+            lastCalls = rateLimiter.getCallCount();
+            lastThrottles = rateLimiter.getThrottleCount();
+        }
+    }
+
+    /**
+     * @param fastInterval
+     *            milliseconds between refreshes while instances change state
+     * @param slowInterval
+     *            milliseconds between refreshes otherwise
+     * @param budget
+     *            EC2 calls per minute the process may spend, refreshes
+     *            included
+     */
+    public void configure(long fastInterval, long slowInterval, int budget) {
+        this.fastInterval = fastInterval;
+        this.slowInterval = Math.max(fastInterval, slowInterval);
+        this.budget = Math.max(1, budget);
+        reschedule();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled
+     *            false to refresh only when asked to
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        resume();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @param active
+     *            false while what gets refreshed cannot be seen
+     */
+    public void setActive(boolean active) {
+        if (this.active != active) {
+            this.active = active;
+            resume();
+        }
+    }
+
+    /**
+     * Charges the calls made since the previous refresh to the budget and
+     * schedules the next refresh
+     * 
+     * @param succeeded
+     *            false if the refresh failed
+     */
+    public void refreshed(boolean succeeded) {
+        boolean throttled = false;
+        if (null != rateLimiter) {
+            long calls = rateLimiter.getCallCount();
+            long throttles = rateLimiter.getThrottleCount();
+            long cost = (calls - lastCalls) * 60 * 1000L / budget;
+            throttled = throttles > lastThrottles;
+            lastCalls = calls;
+            lastThrottles = throttles;
+            long now = System.currentTimeMillis();
+            long paid = paidUntil.get();
+            while (!paidUntil.compareAndSet(paid, Math.max(paid, now) + cost)) {
+                paid = paidUntil.get();
+            }
+        }
+        backoff = succeeded && !throttled ? 1 : Math.min(MAX_BACKOFF, 2 * backoff);
+        refreshedAt = System.currentTimeMillis();
+        schedule();
+    }
+
+    /**
+     * Moves the pending refresh according to the current state of the
+     * instances, to be called when they start or stop changing state
+     */
+    public void reschedule() {
+        if (Long.MAX_VALUE != dueAt && getDueAt() != dueAt) {
+            schedule();
+        }
+    }
+
+    /**
+     * @return when the next refresh is due
+     */
+    public long getDueAt() {
+        long interval = backoff * (target.isTransitioning() ? fastInterval : slowInterval);
+        return Math.max(refreshedAt + interval, paidUntil.get());
+    }
+
+    protected void schedule() {
+        dueAt = getDueAt();
+        resume();
+    }
+
+    protected void resume() {
+        timer.stop();
+        if (enabled && active && Long.MAX_VALUE != dueAt) {
+            timer.setInitialDelay((int) Math.min(Integer.MAX_VALUE, Math.max(0, dueAt - System.currentTimeMillis())));
+            timer.start();
+        }
+    }
+
+    public void stop() {
+        timer.stop();
+        dueAt = Long.MAX_VALUE;
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        dueAt = Long.MAX_VALUE;
+        if (!target.isRefreshing()) {
+            target.refresh();
+        }
+    }
+
+}
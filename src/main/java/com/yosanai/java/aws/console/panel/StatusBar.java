@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker.StateValue;
+
+/**
+ * Shows what the tasks of a {@link TaskExecutor} are doing: the title and
+ * note of the most recent one still running, its progress, and a button
+ * cancelling all of them. Once they are done it shows how the last one ended.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+@SuppressWarnings("serial")
+public class StatusBar extends JPanel implements PropertyChangeListener {
+
+    public static final String READY = "Ready";
+
+    protected TaskExecutor taskExecutor;
+
+    protected JLabel lblStatus = new JLabel(READY);
+
+    protected JProgressBar prgTask = new JProgressBar(0, 100);
+
+    protected JButton btnCancel = new JButton("Cancel");
+
+    public StatusBar() {
+        super(new BorderLayout(5, 0));
+        setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        JPanel pnlTask = new JPanel(new BorderLayout(5, 0));
+        pnlTask.add(prgTask, BorderLayout.CENTER);
+        pnlTask.add(btnCancel, BorderLayout.EAST);
+        add(lblStatus, BorderLayout.CENTER);
+        add(pnlTask, BorderLayout.EAST);
+        btnCancel.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (null != taskExecutor) {
+                    taskExecutor.cancelAll();
+                }
+            }
+        });
+        prgTask.setVisible(false);
+        btnCancel.setVisible(false);
+    }
+
+    /**
+     * @return the taskExecutor
+     */
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * @param taskExecutor
+     *            the executor whose tasks are shown
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        if (null != this.taskExecutor) {
+            this.taskExecutor.removePropertyChangeListener(this);
+        }
+        this.taskExecutor = taskExecutor;
+        if (null != taskExecutor) {
+            taskExecutor.addPropertyChangeListener(this);
+        }
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see
+     * java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent
+     * )
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        List<BackgroundTask<?, ?>> active = taskExecutor.getActive();
+        BackgroundTask<?, ?> current = null;
+        for (BackgroundTask<?, ?> task : active) {
+            if (StateValue.STARTED == task.getState()) {
+                current = task;
+            }
+        }
+        if (null != current) {
+            String text = current.getTitle();
+            if (null != current.getNote()) {
+                text += ": " + current.getNote();
+            }
+            lblStatus.setText(text);
+            prgTask.setIndeterminate(0 == current.getProgress());
+            prgTask.setValue(current.getProgress());
+            prgTask.setVisible(true);
+            btnCancel.setVisible(true);
+        } else {
+            if (evt.getSource() instanceof BackgroundTask<?, ?> && StateValue.DONE == evt.getNewValue()) {
+                lblStatus.setText(getOutcome((BackgroundTask<?, ?>) evt.getSource()));
+            }
+            prgTask.setVisible(!active.isEmpty());
+            prgTask.setIndeterminate(true);
+            btnCancel.setVisible(!active.isEmpty());
+        }
+    }
+
+    /**
+     * @param task
+     *            a finished task
+     * @return how it ended
+     */
+    protected String getOutcome(BackgroundTask<?, ?> task) {
+        String ret = task.getTitle();
+        if (task.isCancelled()) {
+            ret += ": cancelled";
+        } else {
+            try {
+                task.get();
+                ret = READY;
+            } catch (InterruptedException ex) {
+                ret += ": interrupted";
+            } catch (ExecutionException ex) {
+                ret += " failed: " + ex.getCause().getLocalizedMessage();
+            }
+        }
+        return ret;
+    }
+
+}
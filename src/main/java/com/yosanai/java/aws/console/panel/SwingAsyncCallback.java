@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.yosanai.java.aws.console.panel;
+
+import javax.swing.SwingUtilities;
+
+import com.yosanai.java.aws.console.AsyncCallback;
+
+/**
+ * {@link AsyncCallback} that hands the outcome of the call over to the EDT so
+ * it can update Swing components directly
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public abstract class SwingAsyncCallback<T> implements AsyncCallback<T> {
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see com.yosanai.java.aws.console.AsyncCallback#completed(java.lang.Object)
+     */
+    @Override
+    public void completed(final T result) {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                onCompleted(result);
+            }
+        });
+    }
+
+    /*
+     * (non-Jsdoc)
+     * 
+     * @see com.yosanai.java.aws.console.AsyncCallback#failed(java.lang.Exception)
+     */
+    @Override
+    public void failed(final Exception ex) {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                onFailed(ex);
+            }
+        });
+    }
+
+    protected abstract void onCompleted(T result);
+
+    protected abstract void onFailed(Exception ex);
+
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingWorker.StateValue;
+
+import com.yosanai.java.aws.console.NamedThreadFactory;
+
+/**
+ * Runs the {@link BackgroundTask}s of the panels on a small named pool with a
+ * bounded queue instead of one thread per task. Tasks submitted under a key
+ * replace the one still running under it, which is cancelled and whose
+ * results are dropped, so only the latest refresh ever reaches the models.
+ * Listeners added here, such as the {@link StatusBar}, get the property
+ * changes of every task submitted afterwards, on the EDT.
+ * 
+ * @author Saravana Perumal Shanmugam
+ */
+public class TaskExecutor {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    protected final ThreadPoolExecutor executor;
+
+    protected final ConcurrentHashMap<String, BackgroundTask<?, ?>> latest = new ConcurrentHashMap<String, BackgroundTask<?, ?>>();
+
+    protected final List<BackgroundTask<?, ?>> active = new CopyOnWriteArrayList<BackgroundTask<?, ?>>();
+
+    protected final List<PropertyChangeListener> listeners = new CopyOnWriteArrayList<PropertyChangeListener>();
+
+    public TaskExecutor() {
+        this("aws-ui", DEFAULT_PARALLELISM, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param name
+     *            the prefix of the pool's thread names
+     * @param parallelism
+     *            the number of tasks run at the same time
+     * @param queueCapacity
+     *            the number of tasks waiting to run beyond which submissions
+     *            are rejected
+     */
+    public TaskExecutor(String name, int parallelism, int queueCapacity) {
+        super();
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs the task alongside the others
+     * 
+     * @param task
+     * @return the task
+     */
+    public <T extends BackgroundTask<?, ?>> T submit(T task) {
+        return submit(null, task);
+    }
+
+    /**
+     * Runs the task, cancelling the one last submitted under the same key if
+     * it is still running. A task the queue has no room for is cancelled.
+     * 
+     * @param key
+     *            what the task produces, null if it supersedes nothing
+     * @param task
+     * @return the task
+     */
+    public <T extends BackgroundTask<?, ?>> T submit(final String key, final T task) {
+        active.add(task);
+        task.addPropertyChangeListener(new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("state".equals(evt.getPropertyName()) && StateValue.DONE == evt.getNewValue()) {
+                    active.remove(task);
+                    if (null != key) {
+                        latest.remove(key, task);
+                    }
+                }
+            }
+        });
+        for (PropertyChangeListener listener : listeners) {
+            task.addPropertyChangeListener(listener);
+        }
+        if (null != key) {
+            BackgroundTask<?, ?> previous = latest.put(key, task);
+            if (null != previous) {
+                previous.cancel(true);
+            }
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            Logger.getLogger(TaskExecutor.class.getName()).log(Level.WARNING, "Too many tasks, dropped " + task.getTitle(),
+                    ex);
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    /**
+     * @param key
+     * @return the task last submitted under the key if it has not finished
+     */
+    public BackgroundTask<?, ?> getLatest(String key) {
+        return latest.get(key);
+    }
+
+    /**
+     * @return the tasks submitted and not finished yet, oldest first
+     */
+    public List<BackgroundTask<?, ?>> getActive() {
+        return active;
+    }
+
+    /**
+     * Cancels every task submitted and not finished yet
+     */
+    public void cancelAll() {
+        for (BackgroundTask<?, ?> task : active) {
+            task.cancel(true);
+        }
+    }
+
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,220 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkAction;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkItem;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.BulkListener;
+import com.yosanai.java.aws.console.ec2.BulkActionPipeline.Status;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class BulkActionPipelineTest {
+
+    /**
+     * Records the chunks it is called with and fails the ones holding a bad
+     * instance
+     */
+    protected static class RecordingPipeline extends BulkActionPipeline {
+
+        protected final List<List<String>> calls = new ArrayList<List<String>>();
+
+        protected final Set<String> bad = new HashSet<String>();
+
+        protected RuntimeException badFailure;
+
+        protected Error error;
+
+        public RecordingPipeline() {
+            super(null, new Executor() {
+
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+        }
+
+        @Override
+        protected void call(BulkAction action, List<BulkItem> chunk) {
+            List<String> instanceIds = new ArrayList<String>();
+            for (BulkItem item : chunk) {
+                instanceIds.add(item.getInstanceId());
+            }
+            calls.add(instanceIds);
+            if (null != error) {
+                throw error;
+            }
+            for (String instanceId : instanceIds) {
+                if (bad.contains(instanceId)) {
+                    throw badFailure;
+                }
+            }
+            for (BulkItem item : chunk) {
+                item.status = Status.SUCCEEDED;
+            }
+        }
+    }
+
+    protected RecordingPipeline pipeline;
+
+    protected static AmazonServiceException serviceException(String errorCode) {
+        AmazonServiceException ret = new AmazonServiceException(errorCode);
+        ret.setErrorType(ErrorType.Client);
+        ret.setErrorCode(errorCode);
+        return ret;
+    }
+
+    protected static List<BulkItem> items(String region, int count) {
+        List<String> instanceIds = new ArrayList<String>();
+        for (int index = 0; index < count; index++) {
+            instanceIds.add("i-" + index);
+        }
+        List<BulkItem> ret = BulkActionPipeline.toItems(instanceIds);
+        for (BulkItem item : ret) {
+            item.setRegion(region);
+        }
+        return ret;
+    }
+
+    protected static int count(List<BulkItem> items, Status status) {
+        int ret = 0;
+        for (BulkItem item : items) {
+            if (status == item.getStatus()) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    @Before
+    public void setUp() {
+        pipeline = new RecordingPipeline();
+        pipeline.setChunkSize(4);
+    }
+
+    @Test
+    public void planChunksEachRegion() {
+        List<BulkItem> items = items("us-east-1", 6);
+        items.addAll(items("eu-west-1", 3));
+        List<List<BulkItem>> chunks = pipeline.plan(BulkAction.STOP, items);
+        assertEquals(3, chunks.size());
+        assertEquals(4, chunks.get(0).size());
+        assertEquals(2, chunks.get(1).size());
+        assertEquals(3, chunks.get(2).size());
+        assertEquals("eu-west-1", chunks.get(2).get(0).getRegion());
+    }
+
+    @Test
+    public void planSendsAttributesOneAtATime() {
+        assertEquals(5, pipeline.plan(BulkAction.DISABLE_API_TERMINATION, items("us-east-1", 5)).size());
+    }
+
+    @Test
+    public void chunkSizeIsCapped() {
+        pipeline.setChunkSize(5000);
+        assertEquals(BulkActionPipeline.MAX_CHUNK_SIZE, pipeline.chunkSize);
+        pipeline.setChunkSize(0);
+        assertEquals(1, pipeline.chunkSize);
+    }
+
+    @Test
+    public void rejectedChunkIsHalvedDownToTheBadInstance() throws InterruptedException {
+        pipeline.setChunkSize(8);
+        pipeline.bad.add("i-0");
+        pipeline.badFailure = serviceException("InvalidInstanceID.NotFound");
+        final List<BulkItem> reported = new ArrayList<BulkItem>();
+        List<BulkItem> items = pipeline.run(BulkAction.START, items("us-east-1", 8), new BulkListener() {
+
+            @Override
+            public void itemsDone(List<BulkItem> items) {
+                reported.addAll(items);
+            }
+        });
+        assertEquals(Arrays.asList(8, 4, 2, 1, 1, 2, 4), getSizes(pipeline.calls));
+        assertEquals(Status.FAILED, items.get(0).getStatus());
+        assertSame(pipeline.badFailure, items.get(0).getFailure());
+        assertEquals(7, count(items, Status.SUCCEEDED));
+        assertEquals(8, reported.size());
+    }
+
+    @Test
+    public void throttledChunkIsNotSplit() throws InterruptedException {
+        pipeline.bad.add("i-1");
+        pipeline.badFailure = serviceException("RequestLimitExceeded");
+        List<BulkItem> items = pipeline.run(BulkAction.STOP, items("us-east-1", 4), null);
+        assertEquals(1, pipeline.calls.size());
+        assertEquals(4, count(items, Status.FAILED));
+    }
+
+    @Test
+    public void retryRunsOnlyTheFailedItems() throws InterruptedException {
+        pipeline.bad.add("i-5");
+        pipeline.badFailure = new IllegalStateException("unreachable");
+        List<BulkItem> items = pipeline.run(BulkAction.TERMINATE, items("us-east-1", 8), null);
+        assertEquals(4, count(items, Status.FAILED));
+        pipeline.bad.clear();
+        pipeline.calls.clear();
+        pipeline.run(BulkAction.TERMINATE, items, null);
+        assertEquals(Collections.singletonList(Arrays.asList("i-4", "i-5", "i-6", "i-7")), pipeline.calls);
+        assertEquals(8, count(items, Status.SUCCEEDED));
+        assertNull(items.get(5).getFailure());
+    }
+
+    @Test
+    public void chunkDyingWithAnErrorFailsItsItems() throws InterruptedException {
+        pipeline.error = new AssertionError("boom");
+        List<BulkItem> items = pipeline.run(BulkAction.START, items("us-east-1", 6), null);
+        assertEquals(6, count(items, Status.FAILED));
+        assertSame(pipeline.error, items.get(0).getFailure().getCause());
+    }
+
+    protected static List<Integer> getSizes(List<List<String>> calls) {
+        List<Integer> ret = new ArrayList<Integer>();
+        for (List<String> call : calls) {
+            ret.add(call.size());
+        }
+        return ret;
+    }
+}
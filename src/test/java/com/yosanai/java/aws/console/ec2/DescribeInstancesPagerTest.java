@@ -0,0 +1,169 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class DescribeInstancesPagerTest {
+
+    protected final List<DescribeInstancesRequest> requests = new ArrayList<DescribeInstancesRequest>();
+
+    protected AmazonEC2 amazonEC2;
+
+    @Before
+    public void setUp() {
+        amazonEC2 = (AmazonEC2) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AmazonEC2.class },
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!"describeInstances".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        requests.add((DescribeInstancesRequest) args[0]);
+                        return new DescribeInstancesResult();
+                    }
+                });
+    }
+
+    protected void readAll(DescribeInstancesPager pager) {
+        while (pager.hasNext()) {
+            assertTrue(pager.next().isEmpty());
+        }
+    }
+
+    protected static String randomId(Random random, boolean longId) {
+        StringBuilder ret = new StringBuilder("i-");
+        for (int digit = 0; digit < (longId ? 17 : 8); digit++) {
+            ret.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @return the number of requests whose instance-id prefixes match the id
+     */
+    protected int countMatches(String instanceId) {
+        int ret = 0;
+        for (DescribeInstancesRequest request : requests) {
+            for (Filter filter : request.getFilters()) {
+                if ("instance-id".equals(filter.getName())) {
+                    for (String value : filter.getValues()) {
+                        if (instanceId.startsWith(value.substring(0, value.length() - 1))) {
+                            ret++;
+                        }
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void countsShortAndLongIds() {
+        assertArrayEquals(new int[] { 2, 1 }, DescribeInstancesPager.countIds(Arrays.asList("i-12345678",
+                "i-0123456789abcdef0", "i-0abcdef1")));
+    }
+
+    @Test
+    public void byIdsPagesTheIds() {
+        List<String> instanceIds = new ArrayList<String>();
+        for (int index = 0; index < 7; index++) {
+            instanceIds.add("i-1000000" + index);
+        }
+        readAll(DescribeInstancesPager.byIds(amazonEC2, "us-east-1", instanceIds, 3));
+        assertEquals(3, requests.size());
+        assertEquals(instanceIds.subList(6, 7), requests.get(2).getFilters().get(0).getValues());
+    }
+
+    @Test
+    public void smallRegionIsOneCallWithTheFilters() {
+        List<Filter> filters = Collections.singletonList(new Filter("instance-state-name").withValues("running"));
+        readAll(DescribeInstancesPager.byPrefix(amazonEC2, "us-east-1", 200, 300, 500, filters));
+        assertEquals(1, requests.size());
+        assertEquals(filters, requests.get(0).getFilters());
+    }
+
+    @Test
+    public void shortIdsSplitAfterTheDash() {
+        readAll(DescribeInstancesPager.byPrefix(amazonEC2, "us-east-1", 10000, 0, 500, Collections
+                .<Filter> emptyList()));
+        assertEquals(22, requests.size());
+        List<String> values = requests.get(0).getFilters().get(0).getValues();
+        assertEquals(12, values.size());
+        assertEquals("i-00*", values.get(0));
+        assertEquals("i-0b*", values.get(11));
+    }
+
+    @Test
+    public void everyIdIsInExactlyOnePage() {
+        Random random = new Random(11);
+        readAll(DescribeInstancesPager.byPrefix(amazonEC2, "us-east-1", 5000, 100000, 500, Collections
+                .<Filter> emptyList()));
+        assertTrue(String.valueOf(requests.size()), 200 <= requests.size() && 300 >= requests.size());
+        for (DescribeInstancesRequest request : requests) {
+            assertTrue(DescribeInstancesPager.MAX_FILTER_VALUES >= request.getFilters().get(0).getValues().size());
+        }
+        for (int index = 0; index < 2000; index++) {
+            String instanceId = randomId(random, 0 == index % 10);
+            assertEquals(instanceId, 1, countMatches(instanceId));
+        }
+    }
+
+    @Test
+    public void longIdsSplitAfterTheLeadingZero() {
+        readAll(DescribeInstancesPager.byPrefix(amazonEC2, "us-east-1", 0, 100000, 500, Collections
+                .<Filter> emptyList()));
+        for (DescribeInstancesRequest request : requests) {
+            for (String value : request.getFilters().get(0).getValues()) {
+                assertTrue(value, value.startsWith("i-0") && 6 == value.length() || "i-1*".compareTo(value) <= 0
+                        && 4 == value.length());
+            }
+        }
+    }
+}
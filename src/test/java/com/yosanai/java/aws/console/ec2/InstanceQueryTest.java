@@ -0,0 +1,128 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Tag;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceQueryTest {
+
+    protected static InstanceRecord record(String state, String type, String zone, String region, Tag... tags) {
+        Instance instance = new Instance().withInstanceId("i-12345678").withState(new InstanceState().withName(state))
+                .withInstanceType(type).withPlacement(new Placement(zone)).withTags(tags);
+        return new InstanceRecord(instance, null, region, 1);
+    }
+
+    @Test
+    public void blankMatchesEverything() {
+        InstanceQuery query = InstanceQuery.parse("  ");
+        assertTrue(query.isEmpty());
+        assertTrue(query.getFilters().isEmpty());
+        assertTrue(query.matchesAll(record("running", "m1.small", "us-east-1a", "us-east-1")));
+    }
+
+    @Test
+    public void positiveTermsBecomeFilters() {
+        List<Filter> filters = InstanceQuery.parse("state=running AND tag:env=prod,\"pre prod\" AND az = us-east-1*")
+                .getFilters();
+        assertEquals(3, filters.size());
+        assertEquals("instance-state-name", filters.get(0).getName());
+        assertEquals(Arrays.asList("running"), filters.get(0).getValues());
+        assertEquals("tag:env", filters.get(1).getName());
+        assertEquals(Arrays.asList("prod", "pre prod"), filters.get(1).getValues());
+        assertEquals("availability-zone", filters.get(2).getName());
+        assertEquals(Arrays.asList("us-east-1*"), filters.get(2).getValues());
+    }
+
+    @Test
+    public void filterNamesAreAliased() {
+        InstanceQuery query = InstanceQuery.parse("instance-type=m1.small and STATE=stopped");
+        assertEquals("instance-type", query.getFilters().get(0).getName());
+        assertEquals("instance-state-name", query.getFilters().get(1).getName());
+        assertTrue(query.getEqualityTerms().containsKey("type"));
+    }
+
+    @Test
+    public void negationsAndRegionAreLocal() {
+        InstanceQuery query = InstanceQuery.parse("state=running AND type!=t1.micro AND region=us-*");
+        assertEquals(1, query.getFilters().size());
+        assertTrue(query.isLocal());
+        assertTrue(query.acceptsRegion("us-west-2"));
+        assertFalse(query.acceptsRegion("eu-west-1"));
+        assertTrue(query.matches(record("running", "m1.small", "us-east-1a", "us-east-1")));
+        assertFalse(query.matches(record("running", "t1.micro", "us-east-1a", "us-east-1")));
+        assertFalse(query.matches(record("running", "m1.small", "eu-west-1a", "eu-west-1")));
+    }
+
+    @Test
+    public void matchesAllAppliesServerTermsWithWildcards() {
+        InstanceQuery query = InstanceQuery.parse("az=us-east-1? AND tag:env=\"pre prod\"");
+        assertTrue(query.matchesAll(record("running", "m1.small", "us-east-1a", "us-east-1", new Tag("env",
+                "pre prod"))));
+        assertFalse(query.matchesAll(record("running", "m1.small", "us-east-1a", "us-east-1", new Tag("env",
+                "prod"))));
+        assertFalse(query.matchesAll(record("running", "m1.small", "us-east-1ab", "us-east-1", new Tag("env",
+                "pre prod"))));
+        assertTrue(query.getEqualityTerms().containsKey("tag:env"));
+        assertFalse(query.getEqualityTerms().containsKey("az"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void danglingAndIsRejected() {
+        InstanceQuery.parse("state=running AND");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void termWithoutValueIsRejected() {
+        InstanceQuery.parse("state=");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void termWithoutKeyIsRejected() {
+        InstanceQuery.parse("=running");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negatedFilterEc2AloneKnowsIsRejected() {
+        InstanceQuery.parse("vpc-id!=vpc-1");
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.RunInstancesRequest;
+import com.amazonaws.services.ec2.model.RunInstancesResult;
+import com.amazonaws.services.ec2.model.Tag;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchChunk;
+import com.yosanai.java.aws.console.ec2.LaunchPipeline.LaunchListener;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class LaunchPipelineTest {
+
+    protected final List<RunInstancesRequest> runs = new ArrayList<RunInstancesRequest>();
+
+    protected final List<CreateTagsRequest> tagged = new ArrayList<CreateTagsRequest>();
+
+    /**
+     * Launches this many instances fewer than asked in every call
+     */
+    protected int shortBy;
+
+    protected LaunchPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        AmazonEC2 amazonEC2 = (AmazonEC2) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { AmazonEC2.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object ret = null;
+                        if ("runInstances".equals(method.getName())) {
+                            RunInstancesRequest request = (RunInstancesRequest) args[0];
+                            List<Instance> instances = new ArrayList<Instance>();
+                            synchronized (runs) {
+                                runs.add(request);
+                                for (int index = shortBy; index < request.getMaxCount(); index++) {
+                                    instances.add(new Instance().withInstanceId(request.getClientToken() + "/"
+                                            + index));
+                                }
+                            }
+                            ret = new RunInstancesResult().withReservation(new Reservation()
+                                    .withInstances(instances));
+                        } else if ("createTags".equals(method.getName())) {
+                            synchronized (tagged) {
+                                tagged.add((CreateTagsRequest) args[0]);
+                            }
+                        } else {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        return ret;
+                    }
+                });
+        pipeline = new LaunchPipeline(amazonEC2, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @Test
+    public void planSplitsTheCountIntoTokenedChunks() {
+        pipeline.setChunkSize(50);
+        List<LaunchChunk> chunks = pipeline.plan(120, "launch");
+        assertEquals(3, chunks.size());
+        assertEquals(50, chunks.get(0).getCount());
+        assertEquals(50, chunks.get(1).getCount());
+        assertEquals(20, chunks.get(2).getCount());
+        assertEquals("launch-2", chunks.get(2).getClientToken());
+        assertEquals(2, chunks.get(2).getIndex());
+    }
+
+    @Test
+    public void planOfExactMultipleHasNoEmptyChunk() {
+        pipeline.setChunkSize(10);
+        assertEquals(3, pipeline.plan(30, "launch").size());
+        assertTrue(pipeline.plan(0, "launch").isEmpty());
+    }
+
+    @Test
+    public void launchAsksForExactlyEachChunk() throws InterruptedException {
+        pipeline.setChunkSize(4);
+        RunInstancesRequest template = new RunInstancesRequest("ami-12345678", 1, 1).withKeyName("key")
+                .withClientToken("ignored");
+        List<Tag> tags = Collections.singletonList(new Tag("Name", "web"));
+        List<LaunchChunk> chunks = pipeline.launch(template, 10, "launch", tags, null);
+        assertEquals(3, runs.size());
+        for (int index = 0; index < runs.size(); index++) {
+            RunInstancesRequest request = runs.get(index);
+            assertEquals(chunks.get(index).getCount(), request.getMinCount().intValue());
+            assertEquals(chunks.get(index).getCount(), request.getMaxCount().intValue());
+            assertEquals("launch-" + index, request.getClientToken());
+            assertEquals("ami-12345678", request.getImageId());
+            assertEquals("key", request.getKeyName());
+            assertNull(chunks.get(index).getFailure());
+        }
+        assertEquals(Arrays.asList("launch-2/0", "launch-2/1"), chunks.get(2).getInstanceIds());
+        assertEquals(3, tagged.size());
+        assertEquals(chunks.get(0).getInstanceIds(), tagged.get(0).getResources());
+        assertEquals(tags, tagged.get(0).getTags());
+    }
+
+    @Test
+    public void shortChunkIsReportedAsFailed() throws InterruptedException {
+        pipeline.setChunkSize(5);
+        shortBy = 1;
+        final List<LaunchChunk> failed = new ArrayList<LaunchChunk>();
+        List<LaunchChunk> chunks = pipeline.launch(new RunInstancesRequest("ami-12345678", 1, 1), 10, "launch",
+                null, new LaunchListener() {
+
+                    @Override
+                    public void chunkLaunched(LaunchChunk chunk) {
+                    }
+
+                    @Override
+                    public void chunkFailed(LaunchChunk chunk, Exception ex) {
+                        failed.add(chunk);
+                    }
+                });
+        assertEquals(chunks, failed);
+        assertNotNull(chunks.get(0).getFailure());
+        assertEquals(4, chunks.get(0).getInstanceIds().size());
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.ec2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class TokenBucketTest {
+
+    protected static final double DELTA = 1e-9;
+
+    @Test
+    public void startsWithABurstOfOneSecond() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        for (int call = 0; call < 10; call++) {
+            assertEquals(0, bucket.reserve());
+        }
+        long wait = bucket.reserve();
+        assertTrue(String.valueOf(wait), 0 < wait && TimeUnit.MILLISECONDS.toNanos(100) >= wait);
+        assertTrue(bucket.reserve() > wait);
+    }
+
+    @Test
+    public void throttleHalvesDownToTheMinimum() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        bucket.onThrottle();
+        assertEquals(5, bucket.getRate(), DELTA);
+        bucket.onThrottle();
+        assertEquals(2.5, bucket.getRate(), DELTA);
+        bucket.onThrottle();
+        assertEquals(2, bucket.getRate(), DELTA);
+    }
+
+    @Test
+    public void successGrowsAdditivelyUpToTheMaximum() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        bucket.onThrottle();
+        bucket.onSuccess();
+        assertEquals(5.5, bucket.getRate(), DELTA);
+        for (int call = 0; call < 100; call++) {
+            bucket.onSuccess();
+        }
+        assertEquals(10, bucket.getRate(), DELTA);
+    }
+
+    @Test
+    public void minimumAboveTheRateIsClamped() {
+        TokenBucket bucket = new TokenBucket(1, 5);
+        bucket.onThrottle();
+        assertEquals(1, bucket.getRate(), DELTA);
+    }
+
+    @Test
+    public void loweringTheMaximumClampsTheRate() {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        bucket.setMaxRate(8);
+        assertEquals(8, bucket.getMaxRate(), DELTA);
+        assertEquals(8, bucket.getRate(), DELTA);
+    }
+
+    @Test
+    public void raisingTheMaximumKeepsAThrottledRate() {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        bucket.onThrottle();
+        bucket.setMaxRate(40);
+        assertEquals(10, bucket.getRate(), DELTA);
+        bucket.onSuccess();
+        assertEquals(12, bucket.getRate(), DELTA);
+    }
+}
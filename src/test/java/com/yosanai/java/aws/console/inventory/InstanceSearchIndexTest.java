@@ -0,0 +1,113 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yosanai.java.aws.console.inventory.InstanceSearchIndex.Result;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstanceSearchIndexTest {
+
+    protected InstanceSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new InstanceSearchIndex();
+        index.put("i-00000001", "i-00000001", "54.1.2.3", "Name=web-1, env=prod");
+        index.put("i-00000002", "i-00000002", "54.1.2.4", "Name=worker-1, env=prod");
+        index.put("i-00000003", "i-00000003", null, "Name=db-1, env=test");
+    }
+
+    @Test
+    public void blankQueryMatchesNothing() {
+        assertNull(index.search("  ", null));
+        assertNull(index.search(null, null));
+    }
+
+    @Test
+    public void findsSubstringsIgnoringCase() {
+        assertEquals(Arrays.asList("i-00000001"), index.search("WEB", null).getIds());
+        assertEquals(Arrays.asList("i-00000001", "i-00000002"), index.search("54.1.2", null).getIds());
+        assertEquals(Arrays.asList("i-00000003"), index.search("=t", null).getIds());
+    }
+
+    @Test
+    public void toleratesTyposInLongQueriesOnly() {
+        Result result = index.search("wrker-1", null);
+        assertEquals(Arrays.asList("i-00000002"), result.getIds());
+        assertEquals(1, result.getMaxEdits());
+        result = index.search("wbe", null);
+        assertTrue(result.getIds().isEmpty());
+        assertEquals(0, result.getMaxEdits());
+        assertEquals(0, InstanceSearchIndex.getMaxEdits("abcde"));
+        assertEquals(2, InstanceSearchIndex.getMaxEdits("abcdefghijkl"));
+    }
+
+    @Test
+    public void narrowingMatchesAFreshSearch() {
+        Result previous = null;
+        for (String query : new String[] { "e", "en", "env", "env=", "env=p", "env=pr", "env=prd", "env=prdo" }) {
+            previous = index.search(query, previous);
+            assertEquals(query, index.search(query, null).getIds(), previous.getIds());
+        }
+    }
+
+    @Test
+    public void changesInvalidateThePreviousResult() {
+        Result previous = index.search("web", null);
+        index.put("i-00000004", "i-00000004", "Name=web-2");
+        assertEquals(Arrays.asList("i-00000001", "i-00000004"), index.search("web-", previous).getIds());
+        index.put("i-00000001", "i-00000001", "Name=api-1");
+        index.remove("i-00000004");
+        assertEquals(Collections.emptyList(), index.search("web", null).getIds());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void staysCorrectAfterCommonTrigramsAndCompaction() {
+        for (int instance = 0; instance < 3000; instance++) {
+            index.put("i-1" + instance, "i-1" + instance, "Name=batch-" + instance + ", env=prod");
+        }
+        assertEquals(3002, index.search("env=prod", null).getIds().size());
+        for (int instance = 0; instance < 2900; instance++) {
+            index.remove("i-1" + instance);
+        }
+        assertEquals(103, index.size());
+        assertEquals(Arrays.asList("i-12950"), index.search("batch-2950", null).getIds());
+        assertEquals(102, index.search("env=prod", null).getIds().size());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ * This is the MIT License
+ * http://www.opensource.org/licenses/mit-license.php
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package com.yosanai.java.aws.console.inventory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Tag;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InventoryStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected static InstanceRecord record(int index) {
+        Instance instance = new Instance().withInstanceId("i-" + (10000000 + index))
+                .withState(new InstanceState().withName("running").withCode(16)).withInstanceType("m1.large")
+                .withPlacement(new Placement("us-east-1a")).withLaunchTime(new Date(1300000000000L + index))
+                .withPublicDnsName("ec2-" + index + ".compute-1.amazonaws.com").withPrivateIpAddress("10.0.0." + index)
+                .withImageId("ami-12345678").withKeyName("key").withTags(new Tag("Name", "n" + index),
+                        new Tag("env", "prod"));
+        return new InstanceRecord(instance, Arrays.asList("default", "web"), "us-east-1", 1);
+    }
+
+    @Test
+    public void savedRecordsLoadBack() throws IOException {
+        List<InstanceRecord> records = new ArrayList<InstanceRecord>();
+        Map<String, Boolean> apiTermination = new HashMap<String, Boolean>();
+        for (int index = 0; index < 100; index++) {
+            records.add(record(index));
+            if (0 == index % 2) {
+                apiTermination.put(records.get(index).getInstanceId(), 0 == index % 4);
+            }
+        }
+        records.get(1).getInstance().setLaunchTime(null);
+        records.get(2).getInstance().setTags(new ArrayList<Tag>());
+        InventoryStore store = new InventoryStore(folder.newFile("inventory.bin"));
+        long before = System.currentTimeMillis();
+        store.save(records, apiTermination);
+        Map<String, Boolean> loadedApiTermination = new HashMap<String, Boolean>();
+        List<InstanceRecord> loaded = store.load(loadedApiTermination);
+        assertEquals(records.size(), loaded.size());
+        for (int index = 0; index < records.size(); index++) {
+            InstanceRecord record = loaded.get(index);
+            assertTrue(record.getInstanceId(), InstanceSnapshot.isSame(records.get(index), record));
+            assertEquals("us-east-1", record.getRegion());
+            assertEquals(records.get(index).getGroupNames(), record.getGroupNames());
+            assertTrue(before <= record.getLoadedAt());
+        }
+        assertNull(loaded.get(1).getInstance().getLaunchTime());
+        assertEquals("n3", loaded.get(3).getTag("Name"));
+        assertEquals(apiTermination, loadedApiTermination);
+    }
+
+    @Test
+    public void saveReplacesThePreviousSnapshot() throws IOException {
+        InventoryStore store = new InventoryStore(new File(folder.getRoot(), "inventory.bin"));
+        store.save(Arrays.asList(record(1), record(2)), null);
+        store.load(null);
+        store.save(Collections.singletonList(record(3)), null);
+        List<InstanceRecord> loaded = store.load(null);
+        assertEquals(1, loaded.size());
+        assertEquals(record(3).getInstanceId(), loaded.get(0).getInstanceId());
+    }
+
+    @Test
+    public void missingFileLoadsNothing() throws IOException {
+        assertTrue(new InventoryStore(new File(folder.getRoot(), "none.bin")).load(null).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileFails() throws IOException {
+        File file = new File(folder.getRoot(), "inventory.bin");
+        InventoryStore store = new InventoryStore(file);
+        store.save(Arrays.asList(record(1), record(2)), null);
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(file.length() - 10);
+        } finally {
+            truncated.close();
+        }
+        store.load(null);
+    }
+}
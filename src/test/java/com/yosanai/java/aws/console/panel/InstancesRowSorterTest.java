@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.yosanai.java.aws.console.panel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.RowFilter;
+import javax.swing.RowSorter.SortKey;
+import javax.swing.SortOrder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Tag;
+import com.yosanai.java.aws.console.inventory.InstanceRecord;
+import com.yosanai.java.aws.console.inventory.InstanceStore;
+
+/**
+ * @author Saravana Perumal Shanmugam
+ * 
+ */
+public class InstancesRowSorterTest {
+
+    protected InstanceStore store;
+
+    protected InstancesTableModel model;
+
+    protected InstancesRowSorter sorter;
+
+    protected static InstanceRecord record(String instanceId, String state, int code, String publicIp, String name) {
+        Instance instance = new Instance().withInstanceId(instanceId)
+                .withState(new InstanceState().withName(state).withCode(code)).withPublicIpAddress(publicIp);
+        if (null != name) {
+            instance.setTags(Collections.singletonList(new Tag("Name", name)));
+        }
+        return new InstanceRecord(instance, null, "us-east-1", 1);
+    }
+
+    @Before
+    public void setUp() {
+        store = new InstanceStore();
+        store.put(record("i-00000001", "stopped", 80, "10.0.0.10", "web"));
+        store.put(record("i-00000002", "running", 16, "10.0.0.9", "Db"));
+        store.put(record("i-00000003", "terminated", 48, null, null));
+        store.put(record("i-00000004", "pending", 0, "9.255.0.1", "app"));
+        store.put(record("i-00000005", "running", 16, "::1", "Web"));
+        model = new InstancesTableModel(store);
+        sorter = new InstancesRowSorter(model);
+    }
+
+    protected List<String> getViewIds() {
+        List<String> ret = new ArrayList<String>();
+        for (int index = 0; index < sorter.getViewRowCount(); index++) {
+            ret.add(store.getId(sorter.convertRowIndexToModel(index)));
+        }
+        return ret;
+    }
+
+    protected void sortBy(int column, SortOrder sortOrder) {
+        sorter.setSortKeys(Collections.singletonList(new SortKey(column, sortOrder)));
+    }
+
+    @Test
+    public void unsortedKeepsModelOrder() {
+        assertEquals(Arrays.asList("i-00000001", "i-00000002", "i-00000003", "i-00000004", "i-00000005"),
+                getViewIds());
+    }
+
+    @Test
+    public void sortsTextCaseInsensitivelyNullsFirstAndTiesInRowOrder() {
+        sortBy(InstancesTableModel.COLUMN_TAGS, SortOrder.ASCENDING);
+        assertEquals(Arrays.asList("i-00000003", "i-00000004", "i-00000002", "i-00000001", "i-00000005"),
+                getViewIds());
+        sortBy(InstancesTableModel.COLUMN_TAGS, SortOrder.DESCENDING);
+        assertEquals(Arrays.asList("i-00000001", "i-00000005", "i-00000002", "i-00000004", "i-00000003"),
+                getViewIds());
+    }
+
+    @Test
+    public void sortsAddressesNumerically() {
+        sortBy(InstancesTableModel.COLUMN_PUBLIC_IP, SortOrder.ASCENDING);
+        assertEquals(Arrays.asList("i-00000003", "i-00000004", "i-00000002", "i-00000001", "i-00000005"),
+                getViewIds());
+    }
+
+    @Test
+    public void sortsStatesByLifecycle() {
+        sortBy(InstancesTableModel.COLUMN_STATE, SortOrder.ASCENDING);
+        assertEquals(Arrays.asList("i-00000004", "i-00000002", "i-00000005", "i-00000001", "i-00000003"),
+                getViewIds());
+    }
+
+    @Test
+    public void toggleSwitchesOrder() {
+        sorter.toggleSortOrder(InstancesTableModel.COLUMN_ID);
+        assertEquals(SortOrder.ASCENDING, sorter.getSortKeys().get(0).getSortOrder());
+        sorter.toggleSortOrder(InstancesTableModel.COLUMN_ID);
+        assertEquals(SortOrder.DESCENDING, sorter.getSortKeys().get(0).getSortOrder());
+        assertEquals("i-00000005", getViewIds().get(0));
+    }
+
+    @Test
+    public void keepsSortAndFilterAcrossInsertsAndDeletes() {
+        sorter.setRowFilter(new RowFilter<InstancesTableModel, Integer>() {
+
+            @Override
+            public boolean include(Entry<? extends InstancesTableModel, ? extends Integer> entry) {
+                return !"terminated".equals(entry.getValue(InstancesTableModel.COLUMN_STATE));
+            }
+        });
+        sortBy(InstancesTableModel.COLUMN_ID, SortOrder.DESCENDING);
+        int firstRow = store.size();
+        store.put(record("i-00000000", "running", 16, null, null));
+        store.put(record("i-00000009", "terminated", 48, null, null));
+        store.put(record("i-00000006", "running", 16, null, null));
+        sorter.rowsInserted(firstRow, store.size() - 1);
+        assertEquals(Arrays.asList("i-00000006", "i-00000005", "i-00000004", "i-00000002", "i-00000001",
+                "i-00000000"), getViewIds());
+        int[] removed = store.removeAll(Arrays.asList("i-00000004", "i-00000005"));
+        assertArrayEquals(new int[] { 3, 4 }, removed);
+        sorter.rowsDeleted(removed[0], removed[1]);
+        assertEquals(Arrays.asList("i-00000006", "i-00000002", "i-00000001", "i-00000000"), getViewIds());
+        for (int index = 0; index < sorter.getViewRowCount(); index++) {
+            assertEquals(index, sorter.convertRowIndexToView(sorter.convertRowIndexToModel(index)));
+        }
+        assertEquals(-1, sorter.convertRowIndexToView(store.getRow("i-00000009")));
+    }
+
+    @Test
+    public void toAddressOrdersIpv4BeforeOthers() {
+        assertEquals(0, InstancesRowSorter.toAddress(null));
+        assertEquals(1, InstancesRowSorter.toAddress("0.0.0.0"));
+        assertEquals((10L << 24 | 9) + 1, InstancesRowSorter.toAddress("10.0.0.9"));
+        assertTrue(InstancesRowSorter.toAddress("10.0.0.9") < InstancesRowSorter.toAddress("10.0.0.10"));
+        assertEquals(InstancesRowSorter.OTHER_ADDRESS, InstancesRowSorter.toAddress("256.0.0.1"));
+        assertEquals(InstancesRowSorter.OTHER_ADDRESS, InstancesRowSorter.toAddress("10.0.0"));
+        assertEquals(InstancesRowSorter.OTHER_ADDRESS, InstancesRowSorter.toAddress("fe80::1"));
+    }
+
+    @Test
+    public void mergeJoinsSortedRuns() {
+        long[] keys = { 1, 5, 9, 2, 3, 10, 0, 4, 4 };
+        InstancesRowSorter.merge(keys, new int[] { 0, 3, 6, 9 });
+        assertArrayEquals(new long[] { 0, 1, 2, 3, 4, 4, 5, 9, 10 }, keys);
+    }
+
+    @Test
+    public void parallelSortMatchesArraysSort() throws Exception {
+        Random random = new Random(7);
+        long[] keys = new long[InstancesRowSorter.MIN_CHUNK * 5 + 3];
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = random.nextLong();
+        }
+        long[] expected = keys.clone();
+        Arrays.sort(expected);
+        InstancesRowSorter.sort(keys);
+        assertArrayEquals(expected, keys);
+    }
+
+    @Test
+    public void sortsLargeTextColumnsLikeCaseInsensitiveOrder() throws Exception {
+        Random random = new Random(3);
+        String[] texts = new String[20000];
+        for (int index = 0; index < texts.length; index++) {
+            texts[index] = 0 == index % 50 ? null : Long.toString(random.nextLong() & 0xffffff, 36)
+                    + (random.nextBoolean() ? "A" : "a") + (char) (0x100 + random.nextInt(0x300));
+        }
+        long[] ranks = InstancesRowSorter.toRanks(texts);
+        for (int index = 0; index < texts.length; index++) {
+            for (int other = index + 1; other < Math.min(texts.length, index + 20); other++) {
+                int expected = null == texts[index] ? (null == texts[other] ? 0 : -1) : (null == texts[other] ? 1
+                        : Integer.signum(String.CASE_INSENSITIVE_ORDER.compare(texts[index], texts[other])));
+                assertEquals(texts[index] + " " + texts[other], expected,
+                        Long.signum(ranks[index] - ranks[other]));
+            }
+        }
+    }
+}